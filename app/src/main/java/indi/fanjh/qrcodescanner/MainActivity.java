@@ -16,8 +16,11 @@ import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.Toast;
 
+import java.util.List;
+
 import indi.fanjh.qrscanlib.core.CaptureActivityDelegate;
-import indi.fanjh.qrscanlib.core.OnStatusListener;
+import indi.fanjh.qrscanlib.core.OnFramesSkippedListener;
+import indi.fanjh.qrscanlib.core.OnMultiScanListener;
 
 public class MainActivity extends AppCompatActivity {
     private static final int CODE_PERMISSION_CAMERA = 1;
@@ -43,20 +46,7 @@ public class MainActivity extends AppCompatActivity {
             }
         });
         captureActivityDelegate.onPostSetContentView(surfaceView);
-        captureActivityDelegate.setOnStatusListener(new OnStatusListener() {
-            @Override
-            public void onCameraOpenError() {
-                Toast.makeText(getApplicationContext(), "当前相机启动失败，可能是没有权限导致！", Toast.LENGTH_SHORT).show();
-            }
-
-            @Override
-            public void onScanSuccess(String result) {
-                Toast.makeText(getApplicationContext(), result, Toast.LENGTH_SHORT).show();
-                //自动会停止扫描
-                //这里手动开启
-                captureActivityDelegate.restartDecode();
-            }
-        });
+        captureActivityDelegate.setOnStatusListener(new StatusListener());
     }
 
     @Override
@@ -103,4 +93,29 @@ public class MainActivity extends AppCompatActivity {
                 break;
         }
     }
+
+    private class StatusListener implements OnMultiScanListener, OnFramesSkippedListener {
+        @Override
+        public void onCameraOpenError() {
+            Toast.makeText(getApplicationContext(), "当前相机启动失败，可能是没有权限导致！", Toast.LENGTH_SHORT).show();
+        }
+
+        @Override
+        public void onScanSuccess(String result) {
+            Toast.makeText(getApplicationContext(), result, Toast.LENGTH_SHORT).show();
+            //自动会停止扫描
+            //这里手动开启
+            captureActivityDelegate.restartDecode();
+        }
+
+        @Override
+        public void onMultiScanSuccess(List<String> results) {
+            Toast.makeText(MainActivity.this, results.toString(), Toast.LENGTH_SHORT).show();
+        }
+
+        @Override
+        public void onFramesSkipped(int reason, int skippedFrames, int totalFrames) {
+            Log.d("MainActivity", "skipped " + skippedFrames + "/" + totalFrames + " frames, reason " + reason);
+        }
+    }
 }
@@ -0,0 +1,50 @@
+package indi.fanjh.qrscanlib;
+
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import indi.fanjh.qrscanlib.benchmark.SyntheticFrames;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 图片解码的性能测试
+ * @note 对应{@link ZxingHelper#decodeForPicture(String)}和{@link ZxingHelper#decodeForBitmap}中从ARGB像素开始的部分
+ * 包括RGBLuminanceSource的灰度转换、光照检查和二值化解码，不包括图片文件的解码和Bitmap.getPixels
+ * 边长200对应decodeForPicture降采样之后的尺寸，更大的尺寸对应decodeForBitmap直接传入的图片
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PictureDecodeBenchmark {
+
+    @Param({"200", "600", "1200"})
+    public int size;
+
+    private int[] pixels;
+    private PictureDecoder decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pixels = SyntheticFrames.argb(size, size, size * 3 / 5);
+        decoder = new PictureDecoder();
+    }
+
+    @Benchmark
+    public Result decodeArgb() throws ReaderException {
+        return decoder.decodeArgb(pixels, size, size);
+    }
+
+}
@@ -0,0 +1,96 @@
+package indi.fanjh.qrscanlib.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.util.Random;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 性能测试使用的画面
+ * @note 每次运行时生成，随机数种子固定，同样的参数生成的画面完全一样，不同版本之间的结果可以直接对比
+ * 画面为带有横向渐变和噪声的浅色背景，中间是一个深色的二维码，接近相机拍摄打印二维码的亮度分布
+ **/
+public final class SyntheticFrames {
+    public static final String CONTENT = "https://github.com/dda135/QRScanner";
+    private static final long SEED = 20261018L;
+
+    private SyntheticFrames() {
+    }
+
+    /**
+     * 生成NV21格式的一帧，前width*height字节为亮度平面，后面的色度数据为中性值
+     *
+     * @param width    宽度
+     * @param height   高度
+     * @param codeSize 二维码的边长，0表示不绘制二维码
+     * @return NV21数据
+     */
+    public static byte[] nv21(int width, int height, int codeSize) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        int[] luminance = luminance(width, height, codeSize);
+        for (int i = 0; i < luminance.length; ++i) {
+            frame[i] = (byte) luminance[i];
+        }
+        for (int i = width * height; i < frame.length; ++i) {
+            frame[i] = (byte) 128;
+        }
+        return frame;
+    }
+
+    /**
+     * 生成ARGB像素，和Bitmap.getPixels的输出格式一致
+     *
+     * @param width    宽度
+     * @param height   高度
+     * @param codeSize 二维码的边长，0表示不绘制二维码
+     * @return 像素，行跨度等于宽度
+     */
+    public static int[] argb(int width, int height, int codeSize) {
+        int[] pixels = luminance(width, height, codeSize);
+        for (int i = 0; i < pixels.length; ++i) {
+            int gray = pixels[i];
+            pixels[i] = 0xff000000 | gray << 16 | gray << 8 | gray;
+        }
+        return pixels;
+    }
+
+    /**
+     * 生成二维码矩阵
+     *
+     * @param size 边长
+     * @return 矩阵
+     */
+    public static BitMatrix matrix(int size) {
+        try {
+            return new QRCodeWriter().encode(CONTENT, BarcodeFormat.QR_CODE, size, size);
+        } catch (WriterException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int[] luminance(int width, int height, int codeSize) {
+        BitMatrix code = codeSize > 0 ? matrix(codeSize) : null;
+        int left = (width - codeSize) / 2;
+        int top = (height - codeSize) / 2;
+        Random random = new Random(SEED);
+        int[] luminance = new int[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int value = 150 + x * 80 / width + random.nextInt(16);
+                int codeX = x - left;
+                int codeY = y - top;
+                if (null != code && codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()
+                        && code.get(codeX, codeY)) {
+                    value = 30 + random.nextInt(16);
+                }
+                luminance[y * width + x] = value;
+            }
+        }
+        return luminance;
+    }
+
+}
@@ -0,0 +1,140 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import indi.fanjh.qrscanlib.benchmark.SyntheticFrames;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 预览帧解码的性能测试
+ * @note 使用常见的预览分辨率，二维码边长为画面短边的40%，裁剪区域为居中、边长为短边70%的正方形，和默认的取景框接近
+ * 1.decodeFrame：解码线程中完整的单帧流程，包括画面静止和清晰度检查、降采样、区域跟踪
+ * 二维码一直在画面中，测量的是区域跟踪收缩之后的稳定状态
+ * 2.binarizeAndDecode：只有二值化和QRCodeReader，不经过任何检查，用于区分流程本身和zxing的耗时
+ * 3.binarizeAndDecodeMiss：画面中没有二维码，扫码时大部分帧都是这种情况
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameDecodeBenchmark {
+    private static final long FRAME_INTERVAL_NANOS = 33333333L;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String previewSize;
+
+    @Param({"false", "true"})
+    public boolean crop;
+
+    private int width;
+    private int height;
+    private byte[] frame;
+    private byte[] blankFrame;
+    private final int[] scanRect = new int[4];
+    private ScanDispatcher dispatcher;
+    private FrameDecoder decoder;
+    private final FrameBinarizer frameBinarizer = new FrameBinarizer();
+    private final QRCodeReader reader = new QRCodeReader();
+    private long timestampNanos;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = previewSize.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        int shortSide = Math.min(width, height);
+        frame = SyntheticFrames.nv21(width, height, shortSide * 2 / 5);
+        blankFrame = SyntheticFrames.nv21(width, height, 0);
+        int side = shortSide * 7 / 10;
+        if (crop) {
+            scanRect[0] = (width - side) / 2;
+            scanRect[1] = (height - side) / 2;
+            scanRect[2] = scanRect[0] + side;
+            scanRect[3] = scanRect[1] + side;
+        } else {
+            scanRect[0] = 0;
+            scanRect[1] = 0;
+            scanRect[2] = width;
+            scanRect[3] = height;
+        }
+        dispatcher = new ScanDispatcher(null, new ScanCallback() {
+            @Override
+            public void decodeSuccess(Result rawResult, long timestampNanos) {
+            }
+
+            @Override
+            public void decodeBatchSuccess() {
+            }
+
+            @Override
+            public void framesSkipped(int reason, int skippedFrames, int totalFrames) {
+            }
+        }, 1, new ScanWorker.Factory() {
+            @Override
+            public ScanWorker create(ScanDispatcher dispatcher, int index) {
+                // 直接在测试线程中调用FrameDecoder，不需要解码线程
+                return new ScanWorker() {
+                    @Override
+                    public void decode(byte[] data, int width, int height, int stride, int[] scanRect,
+                                       long timestampNanos, long sequence, long generation) {
+                    }
+
+                    @Override
+                    public void quit() {
+                    }
+                };
+            }
+        });
+        decoder = new FrameDecoder(dispatcher);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetGates() {
+        dispatcher.start();
+    }
+
+    @Benchmark
+    public Result decodeFrame() {
+        // 每一次都是新的一帧
+        timestampNanos += FRAME_INTERVAL_NANOS;
+        return decoder.decode(frame, width, height, width, crop ? scanRect : null, timestampNanos, 0);
+    }
+
+    @Benchmark
+    public Result binarizeAndDecode() {
+        return binarizeAndDecode(frame);
+    }
+
+    @Benchmark
+    public Result binarizeAndDecodeMiss() {
+        return binarizeAndDecode(blankFrame);
+    }
+
+    private Result binarizeAndDecode(byte[] data) {
+        try {
+            BinaryBitmap bitmap = frameBinarizer.binarize(data, width, height, scanRect[0], scanRect[1],
+                    scanRect[2] - scanRect[0], scanRect[3] - scanRect[1], DecodeMetrics.BINARIZER_HYBRID);
+            return reader.decode(bitmap);
+        } catch (ReaderException e) {
+            return null;
+        } finally {
+            reader.reset();
+        }
+    }
+
+}
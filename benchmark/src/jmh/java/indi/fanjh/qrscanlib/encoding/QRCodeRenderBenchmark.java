@@ -0,0 +1,54 @@
+package indi.fanjh.qrscanlib.encoding;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import indi.fanjh.qrscanlib.benchmark.SyntheticFrames;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 生成二维码的性能测试
+ * @note 对应{@link EncodingUtils#createQRCode}中不依赖Bitmap的部分，编码参数通过QRCodeRenderer.encode和createQRCode共用
+ * 1.render：只有矩阵转换为像素
+ * 2.encodeAndRender：编码加上转换，不包括Bitmap.setPixels和添加logo
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QRCodeRenderBenchmark {
+
+    @Param({"200", "500", "1000"})
+    public int size;
+
+    private BitMatrix matrix;
+
+    @Setup(Level.Trial)
+    public void setUp() throws WriterException {
+        matrix = QRCodeRenderer.encode(SyntheticFrames.CONTENT, size, size);
+    }
+
+    @Benchmark
+    public int[] render() {
+        return QRCodeRenderer.render(matrix, size, size);
+    }
+
+    @Benchmark
+    public int[] encodeAndRender() throws WriterException {
+        BitMatrix bitMatrix = QRCodeRenderer.encode(SyntheticFrames.CONTENT, size, size);
+        return QRCodeRenderer.render(bitMatrix, size, size);
+    }
+
+}
@@ -0,0 +1,332 @@
+package indi.fanjh.qrscanlib.encoding;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.PerspectiveTransform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 合成的预览帧样本
+ * @note 使用和{@link EncodingUtils#createQRCode}相同的编码参数生成二维码，再按照相机拍摄的效果绘制成NV21的预览帧
+ * 每一类失真单独生成，同一类中的样本按照顺序从轻微到严重，每个样本都带有二维码的内容用于校验
+ * 1.perspective：透视变形，相当于倾斜着拍摄
+ * 2.rotation：任意角度的旋转
+ * 3.scale：二维码在画面中越来越小，最小时每个模块不到2个像素
+ * 4.blur：没有对焦或者手抖造成的模糊
+ * 5.noise：暗光下的传感器噪声
+ * 6.glare：反光，局部亮度饱和
+ * 7.low_contrast：打印褪色、屏幕亮度低
+ * 所有的样本都带有少量的噪声、位置偏移和小角度旋转，clean类只有这些
+ * 随机数种子相同的时候生成的样本完全一样，可以用于对比不同版本的识别率和耗时
+ **/
+public final class SyntheticCorpus {
+    public static final int CLEAN = 0;
+    public static final int PERSPECTIVE = 1;
+    public static final int ROTATION = 2;
+    public static final int SCALE = 3;
+    public static final int BLUR = 4;
+    public static final int NOISE = 5;
+    public static final int GLARE = 6;
+    public static final int LOW_CONTRAST = 7;
+    public static final int DISTORTION_COUNT = 8;
+
+    private static final String[] NAMES = {
+            "clean", "perspective", "rotation", "scale", "blur", "noise", "glare", "low_contrast"
+    };
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    /**
+     * 没有失真的时候二维码边长占画面短边的比例
+     */
+    private static final float BASE_CODE_RATIO = 0.6f;
+    /**
+     * 二维码外面白纸的宽度，模块数
+     */
+    private static final int PAPER_MODULES = 3;
+    /**
+     * 每个像素在每个方向上的采样数，用于抗锯齿
+     */
+    private static final int SUPER_SAMPLING = 2;
+    private static final int PAPER = 205;
+    private static final int INK = 40;
+
+    /**
+     * 一帧样本
+     */
+    public static final class Sample {
+        public final int distortion;
+        /**
+         * 失真程度，0到1
+         */
+        public final float severity;
+        public final String payload;
+        public final int width;
+        public final int height;
+        public final byte[] nv21;
+
+        Sample(int distortion, float severity, String payload, int width, int height, byte[] nv21) {
+            this.distortion = distortion;
+            this.severity = severity;
+            this.payload = payload;
+            this.width = width;
+            this.height = height;
+            this.nv21 = nv21;
+        }
+    }
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * @param distortion 失真类型
+     * @return 名称，用于报告和基线文件
+     */
+    public static String name(int distortion) {
+        return NAMES[distortion];
+    }
+
+    /**
+     * 生成一类失真的样本，失真程度从0均匀增加到1
+     *
+     * @param distortion 失真类型
+     * @param count      样本数
+     * @param width      帧宽度
+     * @param height     帧高度
+     * @param seed       随机数种子
+     * @return 样本
+     */
+    public static List<Sample> generate(int distortion, int count, int width, int height, long seed) {
+        Random random = new Random(seed * 31 + distortion);
+        List<Sample> samples = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            float severity = count == 1 ? 1f : i / (float) (count - 1);
+            samples.add(render(distortion, severity, randomPayload(random), width, height, random));
+        }
+        return samples;
+    }
+
+    /**
+     * 生成一帧样本
+     *
+     * @param distortion 失真类型
+     * @param severity   失真程度，0到1
+     * @param payload    二维码内容
+     * @param width      帧宽度
+     * @param height     帧高度
+     * @param random     随机数
+     * @return 样本
+     */
+    public static Sample render(int distortion, float severity, String payload, int width, int height,
+                                Random random) {
+        BitMatrix matrix;
+        try {
+            matrix = QRCodeRenderer.encode(payload, 0, 0);
+        } catch (WriterException e) {
+            throw new IllegalArgumentException("payload too long", e);
+        }
+        int modules = matrix.getWidth();
+        int shortSide = Math.min(width, height);
+
+        float side = shortSide * BASE_CODE_RATIO;
+        float angle = (random.nextFloat() - 0.5f) * 10f;
+        float keystone = 0;
+        int ink = INK;
+        int paper = PAPER;
+        int blurRadius = 0;
+        float noiseSigma = 3f;
+        float glare = 0;
+        switch (distortion) {
+            case PERSPECTIVE:
+                keystone = 0.05f + severity * 0.4f;
+                break;
+            case ROTATION:
+                angle = 10f + severity * 170f;
+                break;
+            case SCALE:
+                // 从默认大小缩小到每个模块1.6个像素
+                side = side + (modules * 1.6f - side) * severity;
+                break;
+            case BLUR:
+                blurRadius = 1 + Math.round(severity * 3);
+                break;
+            case NOISE:
+                noiseSigma = 4f + severity * 20f;
+                break;
+            case GLARE:
+                glare = 80f + severity * 200f;
+                break;
+            case LOW_CONTRAST:
+                int contrast = Math.round(80 - severity * 70);
+                ink = 128 - contrast / 2;
+                paper = ink + contrast;
+                break;
+            default:
+                break;
+        }
+
+        // 二维码四个角在画面中的位置，顺序为左上、右上、右下、左下
+        float[] corners = new float[8];
+        float half = side / 2;
+        corners[0] = -half;
+        corners[1] = -half;
+        corners[2] = half;
+        corners[3] = -half;
+        corners[4] = half;
+        corners[5] = half;
+        corners[6] = -half;
+        corners[7] = half;
+        if (keystone > 0) {
+            // 远处的一边变短，随机选择倾斜的方向
+            int far = random.nextInt(4);
+            int a = far * 2;
+            int b = (far * 2 + 2) % 8;
+            float shrink = keystone / 2;
+            float ax = corners[a];
+            float ay = corners[a + 1];
+            corners[a] += (corners[b] - ax) * shrink;
+            corners[a + 1] += (corners[b + 1] - ay) * shrink;
+            corners[b] += (ax - corners[b]) * shrink;
+            corners[b + 1] += (ay - corners[b + 1]) * shrink;
+        }
+        double radians = Math.toRadians(angle);
+        float cos = (float) Math.cos(radians);
+        float sin = (float) Math.sin(radians);
+        float extent = 0;
+        for (int i = 0; i < 8; i += 2) {
+            float x = corners[i] * cos - corners[i + 1] * sin;
+            float y = corners[i] * sin + corners[i + 1] * cos;
+            corners[i] = x;
+            corners[i + 1] = y;
+            extent = Math.max(extent, Math.max(Math.abs(x), Math.abs(y)));
+        }
+        // 在画面中随机偏移，保证白纸不会超出画面
+        float paperExtent = extent * (modules + PAPER_MODULES * 2f) / modules;
+        float centerX = width / 2f + (random.nextFloat() - 0.5f) * Math.max(0, width - paperExtent * 2) * 0.5f;
+        float centerY = height / 2f + (random.nextFloat() - 0.5f) * Math.max(0, height - paperExtent * 2) * 0.5f;
+        for (int i = 0; i < 8; i += 2) {
+            corners[i] += centerX;
+            corners[i + 1] += centerY;
+        }
+
+        int[] luminance = new int[width * height];
+        drawScene(luminance, width, height, matrix, corners, ink, paper);
+        if (glare > 0) {
+            float glareX = centerX + (random.nextFloat() - 0.5f) * side * 0.5f;
+            float glareY = centerY + (random.nextFloat() - 0.5f) * side * 0.5f;
+            addGlare(luminance, width, height, glareX, glareY, side * (0.2f + random.nextFloat() * 0.2f), glare);
+        }
+        for (int i = 0; i < 3 && blurRadius > 0; ++i) {
+            // 三次方框模糊近似高斯模糊
+            boxBlur(luminance, width, height, blurRadius);
+        }
+        byte[] nv21 = new byte[width * height * 3 / 2];
+        for (int i = 0; i < luminance.length; ++i) {
+            int value = Math.round(luminance[i] + (float) random.nextGaussian() * noiseSigma);
+            nv21[i] = (byte) Math.max(0, Math.min(255, value));
+        }
+        for (int i = luminance.length; i < nv21.length; ++i) {
+            nv21[i] = (byte) 128;
+        }
+        return new Sample(distortion, severity, payload, width, height, nv21);
+    }
+
+    /**
+     * 绘制背景、白纸和二维码，每个像素超采样之后取平均
+     */
+    private static void drawScene(int[] luminance, int width, int height, BitMatrix matrix, float[] corners,
+                                  int ink, int paper) {
+        int modules = matrix.getWidth();
+        PerspectiveTransform toCode = PerspectiveTransform.quadrilateralToQuadrilateral(
+                corners[0], corners[1], corners[2], corners[3], corners[4], corners[5], corners[6], corners[7],
+                0, 0, modules, 0, modules, modules, 0, modules);
+        float[] points = new float[width * SUPER_SAMPLING * 2];
+        int samples = SUPER_SAMPLING * SUPER_SAMPLING;
+        for (int y = 0; y < height; ++y) {
+            int rowOffset = y * width;
+            for (int sy = 0; sy < SUPER_SAMPLING; ++sy) {
+                float sampleY = y + (sy + 0.5f) / SUPER_SAMPLING;
+                for (int i = 0; i < width * SUPER_SAMPLING; ++i) {
+                    points[i * 2] = (i + 0.5f) / SUPER_SAMPLING;
+                    points[i * 2 + 1] = sampleY;
+                }
+                toCode.transformPoints(points);
+                for (int i = 0; i < width * SUPER_SAMPLING; ++i) {
+                    int x = i / SUPER_SAMPLING;
+                    float codeX = points[i * 2];
+                    float codeY = points[i * 2 + 1];
+                    int value;
+                    if (codeX >= 0 && codeY >= 0 && codeX < modules && codeY < modules) {
+                        value = matrix.get((int) codeX, (int) codeY) ? ink : paper;
+                    } else if (codeX >= -PAPER_MODULES && codeY >= -PAPER_MODULES
+                            && codeX < modules + PAPER_MODULES && codeY < modules + PAPER_MODULES) {
+                        value = paper;
+                    } else {
+                        // 白纸以外是有明暗变化的桌面
+                        value = 70 + x * 60 / width + (((x / 24) + (y / 24)) % 2) * 12;
+                    }
+                    luminance[rowOffset + x] += value;
+                }
+            }
+            for (int x = 0; x < width; ++x) {
+                luminance[rowOffset + x] /= samples;
+            }
+        }
+    }
+
+    private static void addGlare(int[] luminance, int width, int height, float centerX, float centerY,
+                                 float radius, float amplitude) {
+        float denominator = 2 * radius * radius;
+        for (int y = 0; y < height; ++y) {
+            float dy = y - centerY;
+            for (int x = 0; x < width; ++x) {
+                float dx = x - centerX;
+                float boost = amplitude * (float) Math.exp(-(dx * dx + dy * dy) / denominator);
+                luminance[y * width + x] = Math.min(255, luminance[y * width + x] + Math.round(boost));
+            }
+        }
+    }
+
+    private static void boxBlur(int[] luminance, int width, int height, int radius) {
+        int[] temp = new int[luminance.length];
+        int window = radius * 2 + 1;
+        for (int y = 0; y < height; ++y) {
+            int row = y * width;
+            int sum = 0;
+            for (int x = -radius; x <= radius; ++x) {
+                sum += luminance[row + clamp(x, width)];
+            }
+            for (int x = 0; x < width; ++x) {
+                temp[row + x] = sum / window;
+                sum += luminance[row + clamp(x + radius + 1, width)] - luminance[row + clamp(x - radius, width)];
+            }
+        }
+        for (int x = 0; x < width; ++x) {
+            int sum = 0;
+            for (int y = -radius; y <= radius; ++y) {
+                sum += temp[clamp(y, height) * width + x];
+            }
+            for (int y = 0; y < height; ++y) {
+                luminance[y * width + x] = sum / window;
+                sum += temp[clamp(y + radius + 1, height) * width + x] - temp[clamp(y - radius, height) * width + x];
+            }
+        }
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : value >= size ? size - 1 : value;
+    }
+
+    private static String randomPayload(Random random) {
+        StringBuilder builder = new StringBuilder("https://github.com/dda135/QRScanner?id=");
+        int length = 4 + random.nextInt(20);
+        for (int i = 0; i < length; ++i) {
+            builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return builder.toString();
+    }
+
+}
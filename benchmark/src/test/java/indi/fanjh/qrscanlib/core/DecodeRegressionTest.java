@@ -0,0 +1,283 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.Result;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import indi.fanjh.qrscanlib.encoding.SyntheticCorpus;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 识别率的回归测试，同时输出解码耗时
+ * 使用{@link SyntheticCorpus}生成每一类失真的样本，每一帧都作为一次新扫描的第一帧交给{@link FrameDecoder}
+ * 每一类的识别率和基线文件对比，下降超过容差的时候失败，识别出的内容和样本不一致的时候算作没有识别出
+ * 耗时只和运行的机器有关，不写入基线，保存在每台机器各自的校准文件中
+ * 校准文件存在的时候，每一类的p50、p99和校准结果对比，增加超过容差的时候同样算作回归
+ * 校准：先用修改前的代码运行一次-PcalibrateLatency，在同一台机器上保存校准结果，之后的运行会输出相对的变化并检查耗时
+ * 更新基线：./gradlew :benchmark:test -PupdateBaseline
+ */
+public class DecodeRegressionTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    /**
+     * 每一类的样本数，每一类的p99至少对应2个样本，避免只由最慢的一帧决定
+     */
+    private static final int SAMPLES_PER_CLASS = 200;
+    private static final long SEED = 20261018L;
+    /**
+     * 每一帧解码的次数，取最短的耗时，减少GC和调度的干扰
+     */
+    private static final int REPEATS = 5;
+    private static final long FRAME_INTERVAL_NANOS = 33333333L;
+    /**
+     * 识别率允许下降的绝对值
+     */
+    private static final double RATE_TOLERANCE = Double.parseDouble(
+            System.getProperty("decode.rateTolerance", "0.05"));
+    /**
+     * p50允许增加的比例
+     */
+    private static final double LATENCY_TOLERANCE = Double.parseDouble(
+            System.getProperty("decode.latencyTolerance", "0.5"));
+    /**
+     * p99允许增加的比例，尾部耗时受调度的影响更大
+     */
+    private static final double TAIL_LATENCY_TOLERANCE = Double.parseDouble(
+            System.getProperty("decode.tailLatencyTolerance", "1.0"));
+    /**
+     * 耗时允许增加的绝对值，避免耗时很短的类别因为计时精度失败
+     */
+    private static final long LATENCY_SLACK_MICROS = 200;
+    private static final String[] GATED_LATENCIES = {".p50Micros", ".p99Micros"};
+    /**
+     * 全部样本合在一起计算的耗时，用于报告
+     */
+    private static final String ALL = "all";
+
+    private ScanDispatcher dispatcher;
+    private FrameDecoder decoder;
+    private long timestampNanos;
+
+    @Test
+    public void decodeRate_doesNotRegress() throws IOException {
+        dispatcher = new ScanDispatcher(null, new NoOpCallback(), 1, new ScanWorker.Factory() {
+            @Override
+            public ScanWorker create(ScanDispatcher dispatcher, int index) {
+                return new NoOpWorker();
+            }
+        });
+        decoder = new FrameDecoder(dispatcher);
+        Properties rates = new Properties();
+        Properties latencies = new Properties();
+        long[] allMicros = new long[SyntheticCorpus.DISTORTION_COUNT * SAMPLES_PER_CLASS];
+        for (int i = 0; i < SyntheticCorpus.DISTORTION_COUNT; ++i) {
+            // 每次只生成一类样本，避免同时占用几百兆内存
+            List<SyntheticCorpus.Sample> samples = SyntheticCorpus.generate(i, SAMPLES_PER_CLASS, WIDTH, HEIGHT, SEED);
+            // 预热，让耗时不包含JIT编译
+            for (SyntheticCorpus.Sample sample : samples) {
+                decode(sample);
+            }
+            long[] micros = new long[samples.size()];
+            int decoded = 0;
+            for (int j = 0; j < samples.size(); ++j) {
+                SyntheticCorpus.Sample sample = samples.get(j);
+                long best = Long.MAX_VALUE;
+                boolean success = false;
+                for (int k = 0; k < REPEATS; ++k) {
+                    long start = System.nanoTime();
+                    Result result = decode(sample);
+                    best = Math.min(best, System.nanoTime() - start);
+                    success = null != result && sample.payload.equals(result.getText());
+                }
+                micros[j] = best / 1000;
+                if (success) {
+                    decoded++;
+                }
+            }
+            System.arraycopy(micros, 0, allMicros, i * SAMPLES_PER_CLASS, micros.length);
+            String name = SyntheticCorpus.name(i);
+            rates.setProperty(name + ".rate", String.format(Locale.US, "%.3f", decoded / (double) samples.size()));
+            putLatencies(latencies, name, micros);
+        }
+        putLatencies(latencies, ALL, allMicros);
+
+        File calibrationFile = new File(System.getProperty("decode.latencyCalibration",
+                "build/decode-latency.properties"));
+        if (Boolean.getBoolean("decode.calibrateLatency")) {
+            storeLatencies(calibrationFile, latencies);
+            System.out.println("latency calibration saved: " + calibrationFile);
+        }
+        boolean calibrated = calibrationFile.isFile();
+        Properties calibration = calibrated ? load(calibrationFile) : new Properties();
+        System.out.print(report(rates, latencies, calibration));
+        List<String> regressions = new ArrayList<>();
+        if (calibrated) {
+            checkLatencies(latencies, calibration, regressions);
+        }
+
+        File baselineFile = new File(System.getProperty("decode.baseline", "decode-baseline.properties"));
+        if (Boolean.getBoolean("decode.updateBaseline")) {
+            // 按照失真类型的顺序写入，不使用Properties.store，基线文件的改动在diff中更容易对比
+            Writer out = new OutputStreamWriter(new FileOutputStream(baselineFile), "ISO-8859-1");
+            try {
+                out.write("# decode rate baseline, " + WIDTH + "x" + HEIGHT + ", "
+                        + SAMPLES_PER_CLASS + " samples per distortion\n");
+                for (int i = 0; i < SyntheticCorpus.DISTORTION_COUNT; ++i) {
+                    String key = SyntheticCorpus.name(i) + ".rate";
+                    out.write(key + "=" + rates.getProperty(key) + "\n");
+                }
+            } finally {
+                out.close();
+            }
+            System.out.println("baseline updated: " + baselineFile);
+            return;
+        }
+        Properties baseline = load(baselineFile);
+        for (int i = 0; i < SyntheticCorpus.DISTORTION_COUNT; ++i) {
+            String key = SyntheticCorpus.name(i) + ".rate";
+            double rate = Double.parseDouble(rates.getProperty(key));
+            String base = baseline.getProperty(key);
+            if (null == base) {
+                // 新增的失真类型必须先更新基线，否则识别率再低也不会失败
+                regressions.add(key + " missing from baseline " + baselineFile);
+                continue;
+            }
+            double baseRate = Double.parseDouble(base);
+            if (rate < baseRate - RATE_TOLERANCE) {
+                regressions.add(key + " " + rate + " < baseline " + baseRate);
+            }
+        }
+        assertTrue("decode regressions: " + regressions, regressions.isEmpty());
+    }
+
+    /**
+     * 每一类的p50、p99和校准结果对比，校准文件中缺少的类别说明校准结果已经过期，同样算作失败
+     */
+    private static void checkLatencies(Properties latencies, Properties calibration, List<String> regressions) {
+        for (int i = 0; i < SyntheticCorpus.DISTORTION_COUNT; ++i) {
+            String name = SyntheticCorpus.name(i);
+            for (String suffix : GATED_LATENCIES) {
+                String key = name + suffix;
+                String base = calibration.getProperty(key);
+                if (null == base) {
+                    regressions.add(key + " missing from latency calibration");
+                    continue;
+                }
+                long value = Long.parseLong(latencies.getProperty(key));
+                long baseValue = Long.parseLong(base);
+                double tolerance = ".p99Micros".equals(suffix) ? TAIL_LATENCY_TOLERANCE : LATENCY_TOLERANCE;
+                long limit = (long) (baseValue * (1 + tolerance)) + LATENCY_SLACK_MICROS;
+                if (value > limit) {
+                    regressions.add(key + " " + value + "us > calibration " + baseValue + "us");
+                }
+            }
+        }
+    }
+
+    private static void putLatencies(Properties latencies, String name, long[] micros) {
+        long[] sorted = micros.clone();
+        Arrays.sort(sorted);
+        latencies.setProperty(name + ".p50Micros", String.valueOf(percentile(sorted, 50)));
+        latencies.setProperty(name + ".p90Micros", String.valueOf(percentile(sorted, 90)));
+        latencies.setProperty(name + ".p99Micros", String.valueOf(percentile(sorted, 99)));
+    }
+
+    private static String report(Properties rates, Properties latencies, Properties calibration) {
+        StringBuilder report = new StringBuilder(String.format(Locale.US, "%-14s %6s %16s %16s %16s%n",
+                "distortion", "rate", "p50(us)", "p90(us)", "p99(us)"));
+        for (int i = 0; i <= SyntheticCorpus.DISTORTION_COUNT; ++i) {
+            String name = i == SyntheticCorpus.DISTORTION_COUNT ? ALL : SyntheticCorpus.name(i);
+            String rate = rates.getProperty(name + ".rate", "");
+            report.append(String.format(Locale.US, "%-14s %6s", name, rate));
+            for (String suffix : new String[]{".p50Micros", ".p90Micros", ".p99Micros"}) {
+                long value = Long.parseLong(latencies.getProperty(name + suffix));
+                String base = calibration.getProperty(name + suffix);
+                String change = null == base ? "" : String.format(Locale.US, " %+4.0f%%",
+                        (value - Long.parseLong(base)) * 100.0 / Math.max(1, Long.parseLong(base)));
+                report.append(String.format(Locale.US, " %16s", value + change));
+            }
+            report.append(String.format("%n"));
+        }
+        return report.toString();
+    }
+
+    private static void storeLatencies(File file, Properties latencies) throws IOException {
+        File parent = file.getParentFile();
+        if (null != parent && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("can not create " + parent);
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            latencies.store(out, "decode latency calibration, only valid on the machine that wrote it");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        } finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    /**
+     * 每一帧都作为一次新扫描的第一帧，不受上一帧的区域跟踪和画面静止检查影响
+     */
+    private Result decode(SyntheticCorpus.Sample sample) {
+        dispatcher.start();
+        dispatcher.getRoiTracker().reset();
+        timestampNanos += FRAME_INTERVAL_NANOS;
+        return decoder.decode(sample.nv21, sample.width, sample.height, sample.width, null, timestampNanos, 0);
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static final class NoOpCallback implements ScanCallback {
+        @Override
+        public void decodeSuccess(Result rawResult, long timestampNanos) {
+        }
+
+        @Override
+        public void decodeBatchSuccess() {
+        }
+
+        @Override
+        public void framesSkipped(int reason, int skippedFrames, int totalFrames) {
+        }
+    }
+
+    private static final class NoOpWorker implements ScanWorker {
+        @Override
+        public void decode(byte[] data, int width, int height, int stride, int[] scanRect, long timestampNanos,
+                           long sequence, long generation) {
+        }
+
+        @Override
+        public void quit() {
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package indi.fanjh.qrscanlib;
+
+import android.graphics.Bitmap;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 从Bitmap中直接读取亮度数据
+ * @note 不需要通过getPixels把整张图片复制到int[]，每次只读取固定大小的一段像素，转换之后写入调用者提供的缓冲区
+ * 中间的int[]每个线程只有一份
+ * 亮度的计算方式和RGBLuminanceSource一致，识别结果不变
+ **/
+final class BitmapLuminance {
+    /**
+     * 每次读取的像素数，64KB
+     */
+    static final int STRIP_PIXELS = 16 * 1024;
+    private static final ThreadLocal<int[]> STRIP = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[STRIP_PIXELS];
+        }
+    };
+
+    private BitmapLuminance() {
+    }
+
+    /**
+     * 读取亮度数据
+     *
+     * @param bitmap 图片
+     * @param out    亮度数据，行跨度等于图片的宽度，长度至少是宽乘高
+     */
+    static void copyLuminance(Bitmap bitmap, byte[] out) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] strip = STRIP.get();
+        // 一行放不下的时候按列分段读取
+        int columns = Math.min(width, STRIP_PIXELS);
+        int rows = Math.max(1, STRIP_PIXELS / width);
+        for (int y = 0; y < height; y += rows) {
+            int stripRows = Math.min(rows, height - y);
+            for (int x = 0; x < width; x += columns) {
+                int stripColumns = Math.min(columns, width - x);
+                bitmap.getPixels(strip, 0, stripColumns, x, y, stripColumns, stripRows);
+                for (int row = 0; row < stripRows; ++row) {
+                    toLuminance(strip, row * stripColumns, out, (y + row) * width + x, stripColumns);
+                }
+            }
+        }
+    }
+
+    private static void toLuminance(int[] argb, int argbOffset, byte[] out, int outOffset, int count) {
+        for (int i = 0; i < count; ++i) {
+            int pixel = argb[argbOffset + i];
+            int r = (pixel >> 16) & 0xff;
+            int g2 = (pixel >> 7) & 0x1fe;
+            int b = pixel & 0xff;
+            out[outOffset + i] = (byte) ((r + g2 + b) / 4);
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package indi.fanjh.qrscanlib;
+
+import com.google.zxing.ReaderException;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 一批图片的识别任务
+ * @note 由{@link ZxingHelper}创建，调用者通过它取消整批任务或者查询进度
+ * 1.不会为每张图片提交一个任务，而是只提交parallelism个执行者，执行者识别完一张之后再取下一张
+ * 线程池的队列中每批最多只有parallelism个任务，同时解码的图片数也不超过parallelism，图片再多占用的内存也不会增加
+ * 2.每个执行者持有自己的{@link PictureDecoder}，执行者之间不共享解码状态
+ * 3.取消之后执行者不再取新的图片，正在识别的图片完成之后结果直接丢弃
+ * 不依赖Android，结果通过传入的Executor转到主线程
+ **/
+public final class DecodeBatch {
+
+    /**
+     * 识别一张图片
+     */
+    interface ItemDecoder {
+
+        /**
+         * 在线程池中调用
+         *
+         * @param decoder 当前执行者的解码器
+         * @param index   图片的位置
+         * @return 识别出的文本，没有识别出的时候返回null
+         * @throws ReaderException 没有识别出二维码，和返回null相同
+         */
+        String decode(PictureDecoder decoder, int index) throws ReaderException;
+    }
+
+    private final int total;
+    private final ItemDecoder itemDecoder;
+    private final OnBatchResultCallback callback;
+    private final Executor callbackExecutor;
+    /**
+     * 下一张需要识别的图片
+     */
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicInteger finishedCount = new AtomicInteger();
+    private final AtomicInteger activeRunners = new AtomicInteger();
+    private volatile boolean cancelled;
+
+    DecodeBatch(int total, ItemDecoder itemDecoder, OnBatchResultCallback callback, Executor callbackExecutor) {
+        this.total = total;
+        this.itemDecoder = itemDecoder;
+        this.callback = callback;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * 开始识别
+     *
+     * @param executor    线程池
+     * @param parallelism 同时识别的图片数上限
+     */
+    void start(Executor executor, int parallelism) {
+        int runnerCount = Math.max(0, Math.min(parallelism, total));
+        if (runnerCount == 0) {
+            postFinished();
+            return;
+        }
+        activeRunners.set(runnerCount);
+        for (int i = 0; i < runnerCount; ++i) {
+            executor.execute(new Runner());
+        }
+    }
+
+    /**
+     * 取消整批任务，已经开始识别的图片会识别完，但是不会再回调结果
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return 图片总数
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * @return 已经完成的图片数，取消之后完成的也会计入
+     */
+    public int getFinishedCount() {
+        return finishedCount.get();
+    }
+
+    /**
+     * 执行者，循环取图片识别，直到全部取完或者被取消
+     */
+    private final class Runner implements Runnable {
+        private final PictureDecoder decoder = new PictureDecoder();
+
+        @Override
+        public void run() {
+            try {
+                int index;
+                while (!cancelled && (index = nextIndex.getAndIncrement()) < total) {
+                    String text = decodeItem(index);
+                    postResult(index, text, finishedCount.incrementAndGet());
+                }
+            } finally {
+                if (activeRunners.decrementAndGet() == 0) {
+                    postFinished();
+                }
+            }
+        }
+
+        private String decodeItem(int index) {
+            try {
+                return itemDecoder.decode(decoder, index);
+            } catch (ReaderException e) {
+                return null;
+            } catch (RuntimeException e) {
+                // 一张图片损坏或者无法读取，不影响其他图片
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    private void postResult(final int index, final String text, final int finished) {
+        if (null == callback) {
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (cancelled) {
+                    return;
+                }
+                callback.onItemResult(index, text);
+                callback.onProgress(finished, total);
+            }
+        });
+    }
+
+    private void postFinished() {
+        if (null == callback) {
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onBatchFinished(cancelled);
+            }
+        });
+    }
+
+}
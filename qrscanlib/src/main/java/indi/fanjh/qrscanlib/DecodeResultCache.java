@@ -0,0 +1,376 @@
+package indi.fanjh.qrscanlib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 图片识别结果的缓存
+ * @note 同一张图片反复识别的时候直接返回上一次的结果，通过{@link ZxingHelper#setResultCache(DecodeResultCache)}使用
+ * 1.图片文件的键是路径、文件大小和修改时间，文件被修改之后自然失效；Bitmap的键是亮度数据的哈希
+ * 2.内存中按照最近使用的顺序保留{@link #memoryCapacity}个结果
+ * 3.磁盘中只有一个文件，新的结果追加在末尾，内存中只保存每个键在文件中的位置
+ * 文件超过上限之后重写一次，只保留最近使用的结果，直到大小不超过上限的一半
+ * 4.没有识别出二维码也会缓存，再次识别同一张图片的时候直接失败，图片无法读取的时候由调用者跳过，不会缓存
+ * 5.文件头中记录识别逻辑的版本{@link #DECODER_VERSION}，和当前版本不一致的时候丢弃旧的结果
+ * 文件中间的记录损坏的时候从这条记录开始截断，前面的结果继续使用
+ * 磁盘读写失败之后只使用内存缓存
+ * 线程安全
+ **/
+public final class DecodeResultCache {
+    public static final int DEFAULT_MEMORY_CAPACITY = 256;
+    public static final long DEFAULT_MAX_DISK_BYTES = 1024 * 1024;
+    /**
+     * 识别逻辑的版本，同一张图片的识别结果可能因为识别逻辑的修改而不同时需要加一
+     */
+    static final int DECODER_VERSION = 1;
+    /**
+     * 文件头，"QRC2"，后面是识别逻辑的版本
+     */
+    private static final int FILE_MAGIC = 0x51524332;
+    private static final int HEADER_BYTES = 8;
+    private static final String[] EMPTY = new String[0];
+
+    private final int memoryCapacity;
+    private final LinkedHashMap<String, String[]> memory;
+    private final File file;
+    private final long maxDiskBytes;
+    private final int decoderVersion;
+    /**
+     * 磁盘中每个键对应的位置和长度，按照最近使用的顺序
+     */
+    private final LinkedHashMap<String, long[]> diskIndex = new LinkedHashMap<>(16, 0.75f, true);
+    private RandomAccessFile disk;
+    private boolean diskLoaded;
+    private int hitCount;
+    private int missCount;
+
+    /**
+     * @param memoryCapacity 内存中保留的结果数
+     * @param file           磁盘缓存文件，null表示只使用内存缓存
+     * @param maxDiskBytes   磁盘缓存文件的大小上限
+     */
+    public DecodeResultCache(int memoryCapacity, File file, long maxDiskBytes) {
+        this(memoryCapacity, file, maxDiskBytes, DECODER_VERSION);
+    }
+
+    DecodeResultCache(int memoryCapacity, File file, long maxDiskBytes, int decoderVersion) {
+        if (memoryCapacity <= 0) {
+            throw new IllegalArgumentException("memoryCapacity must be positive");
+        }
+        this.memoryCapacity = memoryCapacity;
+        this.memory = new LinkedHashMap<>(memoryCapacity * 4 / 3 + 1, 0.75f, true);
+        this.file = file;
+        this.maxDiskBytes = maxDiskBytes;
+        this.decoderVersion = decoderVersion;
+    }
+
+    /**
+     * 查询结果，第一次查询的时候读取磁盘索引，不能在主线程中调用
+     *
+     * @param key 键
+     * @return 识别出的文本，长度为0表示之前没有识别出二维码，null表示没有缓存
+     */
+    synchronized String[] get(String key) {
+        String[] results = memory.get(key);
+        if (null == results) {
+            results = readDisk(key);
+            if (null != results) {
+                putMemory(key, results);
+            }
+        }
+        if (null == results) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return results;
+    }
+
+    /**
+     * 保存结果
+     *
+     * @param key     键
+     * @param results 识别出的文本，长度为0表示没有识别出二维码
+     */
+    synchronized void put(String key, String[] results) {
+        if (null == results) {
+            results = EMPTY;
+        }
+        putMemory(key, results);
+        writeDisk(key, results);
+    }
+
+    /**
+     * 清空内存和磁盘中的结果，不能在主线程中调用
+     */
+    public synchronized void clear() {
+        memory.clear();
+        loadDisk();
+        diskIndex.clear();
+        if (null != disk) {
+            try {
+                disk.setLength(HEADER_BYTES);
+            } catch (IOException e) {
+                closeDisk(e);
+            }
+        }
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    synchronized int getDiskEntryCount() {
+        loadDisk();
+        return diskIndex.size();
+    }
+
+    synchronized long getDiskBytes() {
+        loadDisk();
+        try {
+            return null == disk ? 0 : disk.length();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 图片文件的键
+     *
+     * @param file 图片文件
+     * @param mode 识别方式，不同的识别方式结果不同
+     * @return 键，文件不存在的时候返回null
+     */
+    static String fileKey(File file, String mode) {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        if (length <= 0 || lastModified <= 0) {
+            return null;
+        }
+        return mode + ":f:" + length + ":" + lastModified + ":" + file.getAbsolutePath();
+    }
+
+    /**
+     * 亮度数据的键
+     *
+     * @param luminances 亮度数据，行跨度等于宽度
+     * @param width      宽度
+     * @param height     高度
+     * @param mode       识别方式
+     * @return 键
+     */
+    static String contentKey(byte[] luminances, int width, int height, String mode) {
+        return mode + ":c:" + width + "x" + height + ":" + Long.toHexString(hash(luminances, width * height));
+    }
+
+    /**
+     * 64位哈希，每次处理8个字节
+     */
+    static long hash(byte[] data, int length) {
+        long hash = 0xcbf29ce484222325L ^ length;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            long word = (data[i] & 0xffL)
+                    | (data[i + 1] & 0xffL) << 8
+                    | (data[i + 2] & 0xffL) << 16
+                    | (data[i + 3] & 0xffL) << 24
+                    | (data[i + 4] & 0xffL) << 32
+                    | (data[i + 5] & 0xffL) << 40
+                    | (data[i + 6] & 0xffL) << 48
+                    | (data[i + 7] & 0xffL) << 56;
+            hash = (hash ^ word) * 0x9e3779b97f4a7c15L;
+            hash ^= hash >>> 32;
+        }
+        for (; i < length; ++i) {
+            hash = (hash ^ (data[i] & 0xff)) * 0x100000001b3L;
+        }
+        return hash ^ (hash >>> 29);
+    }
+
+    private void putMemory(String key, String[] results) {
+        memory.put(key, results);
+        if (memory.size() > memoryCapacity) {
+            Iterator<String> iterator = memory.keySet().iterator();
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private String[] readDisk(String key) {
+        loadDisk();
+        long[] position = diskIndex.get(key);
+        if (null == disk || null == position) {
+            return null;
+        }
+        try {
+            return readRecord(disk, position, key);
+        } catch (IOException e) {
+            closeDisk(e);
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, String[] results) {
+        loadDisk();
+        if (null == disk) {
+            return;
+        }
+        try {
+            byte[] record = encode(key, results);
+            long offset = disk.length();
+            disk.seek(offset);
+            disk.write(record);
+            diskIndex.put(key, new long[]{offset, record.length});
+            if (disk.length() > maxDiskBytes) {
+                compact();
+            }
+        } catch (IOException e) {
+            closeDisk(e);
+        }
+    }
+
+    /**
+     * 读取磁盘索引，从第一条无法解析的记录开始截断，文件末尾写入一半的记录也是这样处理
+     */
+    private void loadDisk() {
+        if (diskLoaded) {
+            return;
+        }
+        diskLoaded = true;
+        if (null == file) {
+            return;
+        }
+        try {
+            File parent = file.getParentFile();
+            if (null != parent && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("can not create " + parent);
+            }
+            disk = new RandomAccessFile(file, "rw");
+            if (disk.length() < HEADER_BYTES || disk.length() > maxDiskBytes * 2 || disk.readInt() != FILE_MAGIC
+                    || disk.readInt() != decoderVersion) {
+                // 新文件、格式不对或者识别逻辑已经修改，重新开始
+                disk.setLength(0);
+                disk.writeInt(FILE_MAGIC);
+                disk.writeInt(decoderVersion);
+                return;
+            }
+            byte[] content = new byte[(int) disk.length() - HEADER_BYTES];
+            disk.seek(HEADER_BYTES);
+            disk.readFully(content);
+            ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+            DataInputStream input = new DataInputStream(bytes);
+            long offset = HEADER_BYTES;
+            while (bytes.available() > 0) {
+                String key;
+                try {
+                    key = input.readUTF();
+                    int count = input.readUnsignedShort();
+                    for (int i = 0; i < count; ++i) {
+                        input.readUTF();
+                    }
+                } catch (IOException e) {
+                    // 不完整或者损坏的记录，后面的内容也无法定位
+                    disk.setLength(offset);
+                    break;
+                }
+                long end = HEADER_BYTES + content.length - bytes.available();
+                diskIndex.put(key, new long[]{offset, end - offset});
+                offset = end;
+            }
+        } catch (IOException e) {
+            closeDisk(e);
+        }
+    }
+
+    /**
+     * 重写磁盘文件，只保留最近使用的结果，直到大小不超过上限的一半
+     */
+    private void compact() throws IOException {
+        List<String> keys = new ArrayList<>(diskIndex.keySet());
+        List<byte[]> kept = new ArrayList<>();
+        List<String> keptKeys = new ArrayList<>();
+        long size = HEADER_BYTES;
+        for (int i = keys.size() - 1; i >= 0; --i) {
+            long[] position = diskIndex.get(keys.get(i));
+            if (size + position[1] > maxDiskBytes / 2) {
+                break;
+            }
+            byte[] record = new byte[(int) position[1]];
+            disk.seek(position[0]);
+            disk.readFully(record);
+            kept.add(record);
+            keptKeys.add(keys.get(i));
+            size += position[1];
+        }
+        diskIndex.clear();
+        disk.setLength(HEADER_BYTES);
+        disk.seek(HEADER_BYTES);
+        long offset = HEADER_BYTES;
+        // 从最久之前使用的开始写入，索引中的顺序保持不变
+        for (int i = kept.size() - 1; i >= 0; --i) {
+            byte[] record = kept.get(i);
+            disk.write(record);
+            diskIndex.put(keptKeys.get(i), new long[]{offset, record.length});
+            offset += record.length;
+        }
+    }
+
+    private void closeDisk(IOException e) {
+        e.printStackTrace();
+        diskIndex.clear();
+        if (null != disk) {
+            try {
+                disk.close();
+            } catch (IOException ignored) {
+                // ignore
+            }
+            disk = null;
+        }
+    }
+
+    private static byte[] encode(String key, String[] results) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeUTF(key);
+        output.writeShort(results.length);
+        for (String result : results) {
+            output.writeUTF(result);
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return 结果，记录中的键和索引不一致的时候返回null
+     */
+    private static String[] readRecord(RandomAccessFile disk, long[] position, String key) throws IOException {
+        byte[] record = new byte[(int) position[1]];
+        disk.seek(position[0]);
+        disk.readFully(record);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+        if (!key.equals(input.readUTF())) {
+            return null;
+        }
+        String[] results = new String[input.readUnsignedShort()];
+        for (int i = 0; i < results.length; ++i) {
+            results[i] = input.readUTF();
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,106 @@
+package indi.fanjh.qrscanlib;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import java.io.IOException;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 图片文件的读取
+ * @note 用于{@link MultiScaleDecoder}
+ * 整张图片通过BitmapFactory按照采样率读取，部分区域通过BitmapRegionDecoder读取，不需要把原图完整读入内存
+ * BitmapRegionDecoder只支持JPEG、PNG等格式，不支持的格式只能整张读取
+ * 通过{@link BitmapLuminance}直接读取亮度数据，缓冲区从{@link LuminanceBufferPool}中取出
+ * 返回的亮度数据在下一次读取或者{@link #release()}之前有效，用完之后需要调用{@link #release()}
+ **/
+final class FileImageSource implements MultiScaleDecoder.ImageSource {
+    private final String path;
+    private final LuminanceBufferPool bufferPool;
+    private final int width;
+    private final int height;
+    private BitmapRegionDecoder regionDecoder;
+    private boolean regionDecoderFailed;
+    private byte[] buffer;
+
+    FileImageSource(String path, LuminanceBufferPool bufferPool) {
+        this.path = path;
+        this.bufferPool = bufferPool;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        width = options.outWidth;
+        height = options.outHeight;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public LuminanceSource load(int left, int top, int right, int bottom, int sampleSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap;
+        if (left == 0 && top == 0 && right == width && bottom == height) {
+            bitmap = BitmapFactory.decodeFile(path, options);
+        } else {
+            BitmapRegionDecoder decoder = getRegionDecoder();
+            if (null == decoder) {
+                return null;
+            }
+            bitmap = decoder.decodeRegion(new Rect(left, top, right, bottom), options);
+        }
+        if (null == bitmap) {
+            return null;
+        }
+        int bitmapWidth = bitmap.getWidth();
+        int bitmapHeight = bitmap.getHeight();
+        int size = bitmapWidth * bitmapHeight;
+        if (null == buffer || buffer.length < size) {
+            bufferPool.release(buffer);
+            buffer = bufferPool.acquire(size);
+        }
+        BitmapLuminance.copyLuminance(bitmap, buffer);
+        bitmap.recycle();
+        return new PlanarYUVLuminanceSource(buffer, bitmapWidth, bitmapHeight, 0, 0, bitmapWidth, bitmapHeight,
+                false);
+    }
+
+    private BitmapRegionDecoder getRegionDecoder() {
+        if (null == regionDecoder && !regionDecoderFailed) {
+            try {
+                regionDecoder = BitmapRegionDecoder.newInstance(path, false);
+                regionDecoderFailed = null == regionDecoder;
+            } catch (IOException e) {
+                // 不支持的格式，不再重试
+                regionDecoderFailed = true;
+            }
+        }
+        return regionDecoder;
+    }
+
+    @Override
+    public void release() {
+        bufferPool.release(buffer);
+        buffer = null;
+        if (null != regionDecoder) {
+            regionDecoder.recycle();
+            regionDecoder = null;
+        }
+    }
+
+}
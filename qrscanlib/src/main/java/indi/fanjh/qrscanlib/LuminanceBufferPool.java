@@ -0,0 +1,98 @@
+package indi.fanjh.qrscanlib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 亮度数据缓冲区的复用池
+ * @note 识别图片时每张图片需要一块和图片同样大小的亮度数据，批量识别的时候反复分配会造成大量GC
+ * 1.取出的时候优先使用能放下的最小的缓冲区，没有的话按照{@link #ALIGNMENT}向上取整分配新的，便于之后复用
+ * 2.归还的时候超过数量或者总大小上限，先丢弃最小的缓冲区，大的缓冲区可以满足更多的图片
+ * 取出的缓冲区可能比需要的大，使用的时候不能依赖数组的长度
+ * 线程安全
+ **/
+final class LuminanceBufferPool {
+    /**
+     * 分配的大小按照64KB对齐
+     */
+    static final int ALIGNMENT = 64 * 1024;
+
+    private final int maxCount;
+    private final long maxBytes;
+    private final List<byte[]> buffers = new ArrayList<>();
+    private long pooledBytes;
+    private int allocatedCount;
+
+    /**
+     * @param maxCount 最多保留的缓冲区数，一般和同时识别的图片数一致
+     * @param maxBytes 最多保留的总字节数
+     */
+    LuminanceBufferPool(int maxCount, long maxBytes) {
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 取出缓冲区
+     *
+     * @param size 需要的字节数
+     * @return 长度不小于size的缓冲区，内容是之前使用时留下的
+     */
+    synchronized byte[] acquire(int size) {
+        int best = -1;
+        for (int i = 0; i < buffers.size(); ++i) {
+            int length = buffers.get(i).length;
+            if (length >= size && (best < 0 || length < buffers.get(best).length)) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            byte[] buffer = buffers.remove(best);
+            pooledBytes -= buffer.length;
+            return buffer;
+        }
+        allocatedCount++;
+        long aligned = ((long) size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        return new byte[(int) Math.min(aligned, Integer.MAX_VALUE - 8)];
+    }
+
+    /**
+     * 归还缓冲区，归还之后不能再使用
+     *
+     * @param buffer 缓冲区
+     */
+    synchronized void release(byte[] buffer) {
+        if (null == buffer || buffer.length > maxBytes) {
+            return;
+        }
+        buffers.add(buffer);
+        pooledBytes += buffer.length;
+        while (buffers.size() > maxCount || pooledBytes > maxBytes) {
+            int smallest = 0;
+            for (int i = 1; i < buffers.size(); ++i) {
+                if (buffers.get(i).length < buffers.get(smallest).length) {
+                    smallest = i;
+                }
+            }
+            pooledBytes -= buffers.remove(smallest).length;
+        }
+    }
+
+    synchronized int getPooledCount() {
+        return buffers.size();
+    }
+
+    synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * @return 池中没有合适的缓冲区而新分配的次数
+     */
+    synchronized int getAllocatedCount() {
+        return allocatedCount;
+    }
+
+}
@@ -0,0 +1,321 @@
+package indi.fanjh.qrscanlib;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.qrcode.detector.FinderPattern;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import indi.fanjh.qrscanlib.core.ScanTrace;
+import indi.fanjh.qrscanlib.core.ScanTracer;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 静态图片的多尺度识别
+ * @note 只采样到200像素左右识别的话，大图中的小二维码采样之后模块不到一个像素，无法识别
+ * 1.先采样到长边{@link #BASE_SIDE}左右识别，大部分图片在这一步就成功了
+ * 2.失败之后每次把分辨率提高一倍重新识别，直到长边超过{@link #MAX_LEVEL_SIDE}或者已经是原图
+ * 3.还是失败的话，把前面各级中发现的二维码定位图案按照位置聚合，在原图分辨率下裁剪这些区域再识别
+ * 每一级只保留当前一张图片的像素，裁剪区域的边长也有上限，超大的图片也不会一次性读入内存
+ * 不依赖Android，图片的读取通过{@link ImageSource}实现
+ **/
+final class MultiScaleDecoder {
+    /**
+     * 第一级的长边，和原来的采样保持一致
+     */
+    static final int BASE_SIDE = 200;
+    /**
+     * 逐级提高分辨率时长边的上限，再大的话解码耗时过长，改为裁剪
+     */
+    static final int MAX_LEVEL_SIDE = 1600;
+    /**
+     * 裁剪区域的长边上限，超过的话裁剪区域也需要采样
+     */
+    static final int MAX_CROP_SIDE = 1024;
+    /**
+     * 最多裁剪的区域数
+     */
+    static final int MAX_CROPS = 3;
+    /**
+     * 同一个二维码的两个定位图案之间最多相隔多少个模块，version 20的二维码大约是90个模块
+     */
+    private static final int CLUSTER_MODULES = 100;
+    /**
+     * 裁剪时在定位图案外扩展多少个模块，只发现了一个定位图案的时候也能覆盖较小的二维码
+     */
+    private static final int CROP_MARGIN_MODULES = 30;
+    /**
+     * 裁剪时至少扩展的模块数，定位图案的中心到二维码边缘3.5个模块，再加上静区
+     */
+    private static final int MIN_CROP_MARGIN_MODULES = 8;
+
+    /**
+     * 图片的读取
+     */
+    interface ImageSource {
+
+        int getWidth();
+
+        int getHeight();
+
+        /**
+         * 读取部分区域的亮度数据
+         *
+         * @param left       原图中的左边界
+         * @param top        原图中的上边界
+         * @param right      原图中的右边界，不包含
+         * @param bottom     原图中的下边界，不包含
+         * @param sampleSize 采样率，2的幂
+         * @return 亮度数据，实际的尺寸可能和采样率计算出来的有少量差别，读取失败返回null
+         * 在下一次读取或者{@link #release()}之前有效
+         */
+        LuminanceSource load(int left, int top, int right, int bottom, int sampleSize);
+
+        /**
+         * 释放读取时占用的资源
+         */
+        void release();
+    }
+
+    private final PictureDecoder decoder;
+    private final List<FinderPattern> finderPatterns = new ArrayList<>();
+    /**
+     * 原图坐标系中的定位图案，每三个数分别是x、y、模块大小
+     */
+    private float[] candidates = new float[3 * 16];
+    private int candidateCount;
+    /**
+     * 上一次识别中图片可以读取，并且每个区域都读取成功
+     */
+    private boolean allLoaded;
+
+    MultiScaleDecoder(PictureDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * 识别图片
+     *
+     * @param source 图片
+     * @return 识别结果
+     * @throws ReaderException 没有识别出二维码或者图片无法读取
+     */
+    Result decode(ImageSource source) throws ReaderException {
+        candidateCount = 0;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        allLoaded = width > 0 && height > 0;
+        if (!allLoaded) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        int longSide = Math.max(width, height);
+        int sampleSize = Integer.highestOneBit(Math.max(1, longSide / BASE_SIDE));
+        while (true) {
+            Result result = decodeRegion(source, 0, 0, width, height, sampleSize);
+            if (null != result) {
+                return result;
+            }
+            if (sampleSize == 1 || longSide / (sampleSize / 2) > MAX_LEVEL_SIDE) {
+                break;
+            }
+            sampleSize /= 2;
+        }
+        if (sampleSize > 1) {
+            Result result = decodeCandidates(source, sampleSize);
+            if (null != result) {
+                return result;
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    /**
+     * 上一次{@link #decode(ImageSource)}没有识别出二维码的时候，用于判断这个结果是否可信
+     *
+     * @return true表示图片可以读取，并且每个区域都读取成功，图片中确实没有能识别的二维码
+     */
+    boolean isAllLoaded() {
+        return allLoaded;
+    }
+
+    /**
+     * 在原图分辨率下识别定位图案附近的区域
+     *
+     * @param source          图片
+     * @param levelSampleSize 最后一级的采样率，裁剪区域的采样率比它小才有意义
+     * @return 识别结果，失败返回null
+     */
+    private Result decodeCandidates(ImageSource source, int levelSampleSize) {
+        int[] clusters = clusterCandidates();
+        int clusterCount = clusters.length / 5;
+        for (int i = 0; i < clusterCount && i < MAX_CROPS; ++i) {
+            int offset = i * 5;
+            int moduleSize = clusters[offset + 4];
+            // 已经发现的定位图案跨度越大，二维码越可能已经在范围内，需要扩展的越少
+            int spanModules = Math.min(clusters[offset + 2] - clusters[offset],
+                    clusters[offset + 3] - clusters[offset + 1]) / moduleSize;
+            int margin = moduleSize * Math.max(MIN_CROP_MARGIN_MODULES, CROP_MARGIN_MODULES - spanModules);
+            int left = Math.max(0, clusters[offset] - margin);
+            int top = Math.max(0, clusters[offset + 1] - margin);
+            int right = Math.min(source.getWidth(), clusters[offset + 2] + margin);
+            int bottom = Math.min(source.getHeight(), clusters[offset + 3] + margin);
+            int cropSide = Math.max(right - left, bottom - top);
+            int cropSampleSize = 1;
+            while (cropSide / cropSampleSize > MAX_CROP_SIDE) {
+                cropSampleSize *= 2;
+            }
+            if (cropSampleSize >= levelSampleSize || right <= left || bottom <= top) {
+                continue;
+            }
+            Result result = decodeRegion(source, left, top, right, bottom, cropSampleSize);
+            if (null != result) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 识别一个区域，失败的时候把发现的定位图案换算到原图坐标系
+     *
+     * @return 识别结果，坐标相对于原图，失败返回null
+     */
+    private Result decodeRegion(ImageSource source, int left, int top, int right, int bottom, int sampleSize) {
+        ScanTracer tracer = ScanTrace.getTracer();
+        if (null != tracer) {
+            tracer.beginSection(ScanTrace.LOAD_PICTURE);
+        }
+        LuminanceSource luminance;
+        try {
+            luminance = source.load(left, top, right, bottom, sampleSize);
+        } finally {
+            if (null != tracer) {
+                tracer.endSection();
+            }
+        }
+        if (null == luminance) {
+            allLoaded = false;
+            return null;
+        }
+        float scaleX = (right - left) / (float) luminance.getWidth();
+        float scaleY = (bottom - top) / (float) luminance.getHeight();
+        finderPatterns.clear();
+        if (null != tracer) {
+            tracer.beginSection(ScanTrace.DECODE_PICTURE);
+        }
+        try {
+            Result result = decoder.decode(luminance, finderPatterns);
+            return toSourceCoordinates(result, left, top, scaleX, scaleY);
+        } catch (ReaderException e) {
+            for (FinderPattern pattern : finderPatterns) {
+                addCandidate(left + pattern.getX() * scaleX, top + pattern.getY() * scaleY,
+                        pattern.getEstimatedModuleSize() * Math.max(scaleX, scaleY));
+            }
+            return null;
+        } finally {
+            finderPatterns.clear();
+            if (null != tracer) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    private void addCandidate(float x, float y, float moduleSize) {
+        if (candidateCount * 3 == candidates.length) {
+            float[] newCandidates = new float[candidates.length * 2];
+            System.arraycopy(candidates, 0, newCandidates, 0, candidates.length);
+            candidates = newCandidates;
+        }
+        int offset = candidateCount * 3;
+        candidates[offset] = x;
+        candidates[offset + 1] = y;
+        candidates[offset + 2] = moduleSize;
+        candidateCount++;
+    }
+
+    /**
+     * 按照距离把定位图案分组，同一个定位图案在不同的级别中会重复发现，也会合并到同一组
+     *
+     * @return 每五个数表示一组：左、上、右、下、模块大小，按照组内的定位图案数从多到少排序
+     */
+    private int[] clusterCandidates() {
+        int[] owner = new int[candidateCount];
+        int[] memberCounts = new int[candidateCount];
+        int clusterCount = 0;
+        for (int i = 0; i < candidateCount; ++i) {
+            owner[i] = -1;
+            for (int j = 0; j < i; ++j) {
+                float distance = CLUSTER_MODULES * Math.max(candidates[i * 3 + 2], candidates[j * 3 + 2]);
+                float dx = candidates[i * 3] - candidates[j * 3];
+                float dy = candidates[i * 3 + 1] - candidates[j * 3 + 1];
+                if (dx * dx + dy * dy <= distance * distance) {
+                    owner[i] = owner[j];
+                    break;
+                }
+            }
+            if (owner[i] < 0) {
+                owner[i] = clusterCount++;
+            }
+            memberCounts[owner[i]]++;
+        }
+        int[] clusters = new int[clusterCount * 5];
+        for (int c = 0; c < clusterCount; ++c) {
+            clusters[c * 5] = Integer.MAX_VALUE;
+            clusters[c * 5 + 1] = Integer.MAX_VALUE;
+            clusters[c * 5 + 2] = Integer.MIN_VALUE;
+            clusters[c * 5 + 3] = Integer.MIN_VALUE;
+            clusters[c * 5 + 4] = 1;
+        }
+        for (int i = 0; i < candidateCount; ++i) {
+            int offset = owner[i] * 5;
+            int x = (int) candidates[i * 3];
+            int y = (int) candidates[i * 3 + 1];
+            clusters[offset] = Math.min(clusters[offset], x);
+            clusters[offset + 1] = Math.min(clusters[offset + 1], y);
+            clusters[offset + 2] = Math.max(clusters[offset + 2], x + 1);
+            clusters[offset + 3] = Math.max(clusters[offset + 3], y + 1);
+            clusters[offset + 4] = Math.max(clusters[offset + 4], (int) Math.ceil(candidates[i * 3 + 2]));
+        }
+        // 组数很少，插入排序即可
+        for (int i = 1; i < clusterCount; ++i) {
+            for (int j = i; j > 0 && memberCounts[j] > memberCounts[j - 1]; --j) {
+                swap(memberCounts, j, j - 1, 1);
+                swap(clusters, j, j - 1, 5);
+            }
+        }
+        return clusters;
+    }
+
+    private static void swap(int[] array, int i, int j, int stride) {
+        for (int k = 0; k < stride; ++k) {
+            int temp = array[i * stride + k];
+            array[i * stride + k] = array[j * stride + k];
+            array[j * stride + k] = temp;
+        }
+    }
+
+    /**
+     * 把结果中的点换算到原图坐标系
+     */
+    static Result toSourceCoordinates(Result result, int left, int top, float scaleX, float scaleY) {
+        ResultPoint[] points = result.getResultPoints();
+        if (null == points || (left == 0 && top == 0 && scaleX == 1f && scaleY == 1f)) {
+            return result;
+        }
+        ResultPoint[] mapped = new ResultPoint[points.length];
+        for (int i = 0; i < points.length; ++i) {
+            mapped[i] = null == points[i] ? null
+                    : new ResultPoint(left + points[i].getX() * scaleX, top + points[i].getY() * scaleY);
+        }
+        Result mappedResult = new Result(result.getText(), result.getRawBytes(), result.getNumBits(), mapped,
+                result.getBarcodeFormat(), result.getTimestamp());
+        mappedResult.putAllMetadata(result.getResultMetadata());
+        return mappedResult;
+    }
+
+}
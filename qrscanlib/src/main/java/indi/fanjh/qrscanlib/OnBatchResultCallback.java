@@ -0,0 +1,35 @@
+package indi.fanjh.qrscanlib;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 批量识别图片的回调
+ * @note 通过{@link ZxingHelper#decodeForPictures(java.util.List, OnBatchResultCallback)}等方法使用，都在主线程中回调
+ * 多张图片并行识别，完成的先后和传入的顺序无关，通过index对应到具体的图片
+ * 取消之后不会再回调结果和进度，只会在正在识别的图片全部结束之后回调一次{@link #onBatchFinished(boolean)}
+ **/
+public interface OnBatchResultCallback {
+
+    /**
+     * 一张图片识别完成
+     *
+     * @param index  图片在传入列表中的位置
+     * @param result 识别出的文本，没有识别出或者图片无法读取的时候为null
+     */
+    void onItemResult(int index, String result);
+
+    /**
+     * 识别进度，每完成一张回调一次，紧跟在对应的{@link #onItemResult(int, String)}之后
+     *
+     * @param finished 已经完成的数量
+     * @param total    总数
+     */
+    void onProgress(int finished, int total);
+
+    /**
+     * 整批结束
+     *
+     * @param cancelled true表示被取消，部分图片没有识别
+     */
+    void onBatchFinished(boolean cancelled);
+}
@@ -0,0 +1,152 @@
+package indi.fanjh.qrscanlib;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.RGBLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+import com.google.zxing.qrcode.detector.FinderPattern;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import indi.fanjh.qrscanlib.core.BinarizerSelector;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 图片解码
+ * @note 只处理像素数据，不依赖Android，可以在JVM中测量
+ * 光照均匀的时候优先使用计算量小的全局直方图，失败之后再使用HybridBinarizer
+ * 识别失败的时候可以顺便收集定位过程中发现的二维码定位图案，用于{@link MultiScaleDecoder}在更高的分辨率下重试
+ * 也可以一次识别出图中所有的二维码，用于{@link TiledDecoder}
+ * 内部的reader不是线程安全的，同一时间只能在一个线程中使用
+ **/
+final class PictureDecoder {
+    private final MultiFormatReader multiFormatReader;
+    private final QRCodeMultiReader multiReader = new QRCodeMultiReader();
+    /**
+     * 当前识别中收集定位图案的列表，不需要收集的时候为null
+     */
+    private List<FinderPattern> finderPatterns;
+
+    PictureDecoder() {
+        multiFormatReader = new MultiFormatReader();
+        //使用默认支持，实际上包括二维码、MaxiCode等
+        //虽然好像用不到
+        //定位图案通过回调获取，读取器和没有设置时一样
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, new ResultPointCallback() {
+            @Override
+            public void foundPossibleResultPoint(ResultPoint point) {
+                // 定位的时候每个可能的定位图案中心都会回调，校正图案等其他点不需要
+                if (null != finderPatterns && point instanceof FinderPattern) {
+                    finderPatterns.add((FinderPattern) point);
+                }
+            }
+        });
+        multiFormatReader.setHints(hints);
+    }
+
+    /**
+     * 解码ARGB像素
+     *
+     * @param pixels 像素，行跨度等于宽度
+     * @param width  宽度
+     * @param height 高度
+     * @return 解码结果
+     * @throws ReaderException 没有识别出二维码
+     */
+    Result decodeArgb(int[] pixels, int width, int height) throws ReaderException {
+        LuminanceSource source = new RGBLuminanceSource(width, height, pixels);
+        boolean evenlyLit = BinarizerSelector.isEvenlyLit(source.getMatrix(), width, 0, 0, width, height);
+        return decode(source, evenlyLit);
+    }
+
+    /**
+     * 解码亮度数据，失败的时候收集可能的二维码定位图案
+     *
+     * @param source         亮度数据
+     * @param finderPatterns 用于保存定位图案，坐标相对于source，可能有重复和误判
+     * @return 解码结果
+     * @throws ReaderException 没有识别出二维码
+     */
+    Result decode(LuminanceSource source, List<FinderPattern> finderPatterns) throws ReaderException {
+        int width = source.getWidth();
+        boolean evenlyLit = BinarizerSelector.isEvenlyLit(source.getMatrix(), width, 0, 0, width, source.getHeight());
+        this.finderPatterns = finderPatterns;
+        try {
+            return decode(source, evenlyLit);
+        } finally {
+            this.finderPatterns = null;
+        }
+    }
+
+    /**
+     * 识别亮度数据中所有的二维码
+     *
+     * @param source 亮度数据
+     * @return 解码结果，至少有一个
+     * @throws ReaderException 一个二维码都没有识别出
+     */
+    Result[] decodeMultiple(LuminanceSource source) throws ReaderException {
+        int width = source.getWidth();
+        boolean evenlyLit = BinarizerSelector.isEvenlyLit(source.getMatrix(), width, 0, 0, width, source.getHeight());
+        try {
+            if (evenlyLit) {
+                try {
+                    Result[] results = multiReader.decodeMultiple(new BinaryBitmap(new GlobalHistogramBinarizer(source)));
+                    if (results.length > 0) {
+                        return results;
+                    }
+                } catch (ReaderException re) {
+                    // continue
+                } finally {
+                    multiReader.reset();
+                }
+            }
+            Result[] results = multiReader.decodeMultiple(new BinaryBitmap(new HybridBinarizer(source)));
+            if (results.length == 0) {
+                throw NotFoundException.getNotFoundInstance();
+            }
+            return results;
+        } finally {
+            multiReader.reset();
+        }
+    }
+
+    /**
+     * 解码亮度数据
+     *
+     * @param source    亮度数据
+     * @param evenlyLit 是否光照均匀
+     * @return 解码结果
+     * @throws ReaderException 两种方式都失败
+     */
+    Result decode(LuminanceSource source, boolean evenlyLit) throws ReaderException {
+        try {
+            if (evenlyLit) {
+                try {
+                    return multiFormatReader.decodeWithState(new BinaryBitmap(new GlobalHistogramBinarizer(source)));
+                } catch (ReaderException re) {
+                    // continue
+                } finally {
+                    multiFormatReader.reset();
+                }
+            }
+            return multiFormatReader.decodeWithState(new BinaryBitmap(new HybridBinarizer(source)));
+        } finally {
+            multiFormatReader.reset();
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+package indi.fanjh.qrscanlib;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import indi.fanjh.qrscanlib.core.ScanTrace;
+import indi.fanjh.qrscanlib.core.ScanTracer;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 超大图片的分块识别
+ * @note A3扫描件、四千万像素以上的照片，完整读入内存会OOM，采样之后小二维码又无法识别
+ * 1.按照原图分辨率切成边长{@link #TILE_SIDE}的块，相邻的块重叠{@link #TILE_OVERLAP}，边长不超过重叠宽度的二维码一定完整落在某一块中
+ * 2.另外把整张图片采样到一块的大小识别一次，用于超过一块大小的二维码
+ * 3.多个线程各自读取、识别，每个线程同一时间只持有一块，内存占用只和块的大小以及线程数有关，和图片的尺寸无关
+ * 4.每一块都识别出其中所有的二维码，同一块中有多个二维码也不会遗漏
+ * 5.重叠区域中的二维码会被识别多次，内容相同并且位置重叠的结果只保留一个
+ * Android5.0之前没有ForkJoinPool，这里和{@link DecodeBatch}一样由固定数量的执行者依次领取分块
+ * 调用的线程也会参与识别，在线程池的线程中调用时，即使其他线程都在忙也不会一直等待
+ * 不依赖Android，图片的读取通过{@link MultiScaleDecoder.ImageSource}实现
+ **/
+final class TiledDecoder {
+    static final int TILE_SIDE = 1024;
+    static final int TILE_OVERLAP = 256;
+    private static final Result[] NO_RESULTS = new Result[0];
+
+    /**
+     * 打开图片，每个执行者使用各自的实例，可以并行读取
+     */
+    interface SourceFactory {
+
+        /**
+         * @return 图片，无法读取的时候宽高小于等于0
+         */
+        MultiScaleDecoder.ImageSource open();
+    }
+
+    private final SourceFactory factory;
+    private final PictureDecoder callerDecoder;
+    /**
+     * 每四个数表示一块：左、上、右、下，第一块是采样后的整张图片
+     */
+    private int[] tiles;
+    private int tileCount;
+    private int overviewSampleSize;
+    private final AtomicInteger nextTile = new AtomicInteger();
+    private int finishedTiles;
+    /**
+     * 读取失败的块数
+     */
+    private int failedTiles;
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * @param factory       图片
+     * @param callerDecoder 调用线程使用的解码器
+     */
+    TiledDecoder(SourceFactory factory, PictureDecoder callerDecoder) {
+        this.factory = factory;
+        this.callerDecoder = callerDecoder;
+    }
+
+    /**
+     * 识别图片中的所有二维码，识别完成之前阻塞当前线程
+     *
+     * @param executor    线程池
+     * @param parallelism 同时识别的块数上限，包括调用的线程
+     * @return 去重之后的结果，坐标相对于原图，按照从上到下、从左到右排序，没有识别出的时候为空
+     */
+    List<Result> decode(Executor executor, int parallelism) {
+        MultiScaleDecoder.ImageSource source = factory.open();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width <= 0 || height <= 0) {
+            source.release();
+            return Collections.emptyList();
+        }
+        createTiles(width, height);
+        int helpers = Math.max(0, Math.min(parallelism, tileCount) - 1);
+        for (int i = 0; i < helpers; ++i) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    decodeTiles(null, new PictureDecoder());
+                }
+            });
+        }
+        decodeTiles(source, callerDecoder);
+        synchronized (results) {
+            // 剩下的块已经被其他执行者领取，正在识别，等待完成即可
+            boolean interrupted = false;
+            while (finishedTiles < tileCount) {
+                try {
+                    results.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return merge(results);
+        }
+    }
+
+    /**
+     * 用于判断{@link #decode(Executor, int)}的结果是否完整
+     *
+     * @return true表示图片可以读取，并且每一块都读取成功
+     */
+    boolean isAllLoaded() {
+        synchronized (results) {
+            return tileCount > 0 && failedTiles == 0;
+        }
+    }
+
+    private void createTiles(int width, int height) {
+        overviewSampleSize = 1;
+        while (Math.max(width, height) / overviewSampleSize > TILE_SIDE) {
+            overviewSampleSize *= 2;
+        }
+        int step = TILE_SIDE - TILE_OVERLAP;
+        int columns = width <= TILE_SIDE ? 1 : (width - TILE_OVERLAP + step - 1) / step;
+        int rows = height <= TILE_SIDE ? 1 : (height - TILE_OVERLAP + step - 1) / step;
+        // 不超过一块大小的图片，整张识别一次就够了
+        tileCount = overviewSampleSize == 1 ? 1 : 1 + columns * rows;
+        tiles = new int[tileCount * 4];
+        tiles[2] = width;
+        tiles[3] = height;
+        if (tileCount == 1) {
+            return;
+        }
+        int offset = 4;
+        for (int row = 0; row < rows; ++row) {
+            for (int column = 0; column < columns; ++column) {
+                // 最后一列、最后一行向内对齐，保持完整的块大小
+                int left = Math.max(0, Math.min(column * step, width - TILE_SIDE));
+                int top = Math.max(0, Math.min(row * step, height - TILE_SIDE));
+                tiles[offset] = left;
+                tiles[offset + 1] = top;
+                tiles[offset + 2] = Math.min(width, left + TILE_SIDE);
+                tiles[offset + 3] = Math.min(height, top + TILE_SIDE);
+                offset += 4;
+            }
+        }
+    }
+
+    /**
+     * 依次领取分块识别，直到全部领取完
+     *
+     * @param source  已经打开的图片，null表示领取到分块之后再打开
+     * @param decoder 当前执行者的解码器
+     */
+    private void decodeTiles(MultiScaleDecoder.ImageSource source, PictureDecoder decoder) {
+        try {
+            int index;
+            while ((index = nextTile.getAndIncrement()) < tileCount) {
+                Result[] tileResults = null;
+                try {
+                    if (null == source) {
+                        source = factory.open();
+                    }
+                    tileResults = decodeTile(source, decoder, index);
+                } catch (RuntimeException e) {
+                    // 一块读取失败不影响其他块
+                    e.printStackTrace();
+                } finally {
+                    synchronized (results) {
+                        if (null == tileResults) {
+                            failedTiles++;
+                        } else {
+                            Collections.addAll(results, tileResults);
+                        }
+                        finishedTiles++;
+                        results.notifyAll();
+                    }
+                }
+            }
+        } finally {
+            if (null != source) {
+                source.release();
+            }
+        }
+    }
+
+    /**
+     * @return 这一块中识别出的所有二维码，坐标相对于原图，没有识别出的时候为空，读取失败的时候返回null
+     */
+    private Result[] decodeTile(MultiScaleDecoder.ImageSource source, PictureDecoder decoder, int index) {
+        int offset = index * 4;
+        int left = tiles[offset];
+        int top = tiles[offset + 1];
+        int right = tiles[offset + 2];
+        int bottom = tiles[offset + 3];
+        ScanTracer tracer = ScanTrace.getTracer();
+        if (null != tracer) {
+            tracer.beginSection(ScanTrace.LOAD_PICTURE);
+        }
+        LuminanceSource luminance;
+        try {
+            luminance = source.load(left, top, right, bottom, index == 0 ? overviewSampleSize : 1);
+        } finally {
+            if (null != tracer) {
+                tracer.endSection();
+            }
+        }
+        if (null == luminance) {
+            return null;
+        }
+        if (null != tracer) {
+            tracer.beginSection(ScanTrace.DECODE_PICTURE);
+        }
+        try {
+            Result[] tileResults = decoder.decodeMultiple(luminance);
+            float scaleX = (right - left) / (float) luminance.getWidth();
+            float scaleY = (bottom - top) / (float) luminance.getHeight();
+            for (int i = 0; i < tileResults.length; ++i) {
+                tileResults[i] = MultiScaleDecoder.toSourceCoordinates(tileResults[i], left, top, scaleX, scaleY);
+            }
+            return tileResults;
+        } catch (ReaderException e) {
+            return NO_RESULTS;
+        } finally {
+            if (null != tracer) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    /**
+     * 合并重叠区域中重复识别的结果，内容相同并且位置重叠的只保留一个
+     * 内容相同但是位置不同的是图片中的两个二维码，都需要保留
+     */
+    static List<Result> merge(List<Result> results) {
+        List<Result> merged = new ArrayList<>(results.size());
+        List<float[]> mergedBounds = new ArrayList<>(results.size());
+        for (Result result : results) {
+            float[] bounds = boundsOf(result);
+            boolean duplicate = false;
+            for (int i = 0; i < merged.size() && !duplicate; ++i) {
+                duplicate = merged.get(i).getText().equals(result.getText())
+                        && intersects(bounds, mergedBounds.get(i));
+            }
+            if (!duplicate) {
+                merged.add(result);
+                mergedBounds.add(bounds);
+            }
+        }
+        Collections.sort(merged, new Comparator<Result>() {
+            @Override
+            public int compare(Result lhs, Result rhs) {
+                float[] l = boundsOf(lhs);
+                float[] r = boundsOf(rhs);
+                if (l[1] != r[1]) {
+                    return l[1] < r[1] ? -1 : 1;
+                }
+                return l[0] < r[0] ? -1 : (l[0] == r[0] ? 0 : 1);
+            }
+        });
+        return merged;
+    }
+
+    /**
+     * @return 左、上、右、下，没有坐标的结果和任何位置都算作重叠
+     */
+    private static float[] boundsOf(Result result) {
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        ResultPoint[] points = result.getResultPoints();
+        if (null != points) {
+            for (ResultPoint point : points) {
+                if (null != point) {
+                    bounds[0] = Math.min(bounds[0], point.getX());
+                    bounds[1] = Math.min(bounds[1], point.getY());
+                    bounds[2] = Math.max(bounds[2], point.getX());
+                    bounds[3] = Math.max(bounds[3], point.getY());
+                }
+            }
+        }
+        if (bounds[0] > bounds[2]) {
+            return new float[]{-Float.MAX_VALUE, -Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        }
+        return bounds;
+    }
+
+    private static boolean intersects(float[] a, float[] b) {
+        return a[0] <= b[2] && b[0] <= a[2] && a[1] <= b[3] && b[1] <= a[3];
+    }
+
+}
@@ -1,33 +1,42 @@
 package indi.fanjh.qrscanlib;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Rect;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.NonNull;
 
-import com.google.zxing.BinaryBitmap;
 import com.google.zxing.LuminanceSource;
-import com.google.zxing.MultiFormatReader;
 import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.RGBLuminanceSource;
 import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import indi.fanjh.qrscanlib.core.BinarizerSelector;
+import indi.fanjh.qrscanlib.core.ScanTrace;
+import indi.fanjh.qrscanlib.core.ScanTracer;
 
 /**
  * @author fanjh
  * @date 2018/3/29 16:55
  * @description 基于Zxing库的扫描二维码帮助类
- * @note
+ * @note 只负责线程、回调和Android的图片读取，像素的解码在{@link PictureDecoder}中
+ * 1.图片文件通过{@link MultiScaleDecoder}按照逐步提高的分辨率识别，超大图片通过{@link TiledDecoder}分块识别其中所有的二维码
+ * 2.批量识别通过{@link DecodeBatch}在多个线程中并行进行，每个线程持有自己的{@link PictureDecoder}
+ * 3.图片直接转换成亮度数据，缓冲区通过{@link LuminanceBufferPool}复用
+ * 4.设置了{@link DecodeResultCache}的时候同一张图片直接返回上一次的结果
+ * 图片无法读取的时候回调失败，读取和解码写入{@link ScanTrace}的跟踪
  **/
 public class ZxingHelper {
     private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(1, 1,
@@ -41,7 +50,49 @@ public class ZxingHelper {
         }
     });
     private static final Handler HANDLER = new Handler(Looper.getMainLooper());
-    private final MultiFormatReader multiFormatReader;
+    private static final Executor MAIN_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            HANDLER.post(command);
+        }
+    };
+    /**
+     * 批量识别同时进行的图片数，识别是纯计算，和CPU核数一致
+     */
+    private static final int BATCH_PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+    /**
+     * 批量识别的线程池，每个批次最多提交{@link #BATCH_PARALLELISM}个任务，空闲之后线程自动退出
+     */
+    private static final ThreadPoolExecutor BATCH_EXECUTOR = new ThreadPoolExecutor(BATCH_PARALLELISM,
+            BATCH_PARALLELISM, 30L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setName("ZxingHelper-batch-" + count.incrementAndGet());
+            return thread;
+        }
+    });
+    /**
+     * 识别图片时亮度数据的缓冲区，单张和批量识别共用，同时使用的缓冲区不会超过同时识别的图片数
+     */
+    private static final LuminanceBufferPool BUFFER_POOL = new LuminanceBufferPool(BATCH_PARALLELISM + 1,
+            32L * 1024 * 1024);
+    /**
+     * 结果缓存中区分识别方式，同一张图片不同的识别方式结果不同
+     */
+    private static final String CACHE_MODE_PICTURE = "picture";
+    private static final String CACHE_MODE_TILED = "tiled";
+    private static final String CACHE_MODE_BITMAP = "bitmap";
+    private static volatile DecodeResultCache resultCache;
+
+    static {
+        BATCH_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final PictureDecoder pictureDecoder;
     private OnResultCallback onResultCallback;
 
     /**
@@ -70,11 +121,25 @@ public class ZxingHelper {
         void onFail();
     }
 
+    /**
+     * 识别多个二维码的结果回调
+     */
+    public interface OnMultiResultCallback {
+        /**
+         * 识别成功
+         *
+         * @param results 识别出的文本，按照在图片中从上到下、从左到右的顺序，至少有一个
+         */
+        void onSuccess(List<String> results);
+
+        /**
+         * 没有识别出二维码
+         */
+        void onFail();
+    }
+
     public ZxingHelper() {
-        multiFormatReader = new MultiFormatReader();
-        //使用默认支持，实际上包括二维码、MaxiCode等
-        //虽然好像用不到
-        multiFormatReader.setHints(null);
+        pictureDecoder = new PictureDecoder();
     }
 
     /**
@@ -90,9 +155,9 @@ public class ZxingHelper {
         Result rawResult = null;
         PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(data, width, height, rect.left, rect.top,
                 rect.width(), rect.height(), false);
-        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+        boolean evenlyLit = BinarizerSelector.isEvenlyLit(data, width, rect.left, rect.top, rect.right, rect.bottom);
         try {
-            rawResult = multiFormatReader.decodeWithState(bitmap);
+            rawResult = decode(source, evenlyLit);
             if (null != rawResult) {
                 if (null != onResultCallback) {
                     onResultCallback.onSuccess(rawResult.getText());
@@ -103,8 +168,6 @@ public class ZxingHelper {
             if (null != onResultCallback) {
                 onResultCallback.onFail();
             }
-        } finally {
-            multiFormatReader.reset();
         }
     }
 
@@ -117,64 +180,39 @@ public class ZxingHelper {
         EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inJustDecodeBounds = true;
-                Bitmap scanBitmap = BitmapFactory.decodeFile(path, options);
-                options.inJustDecodeBounds = false;
-                int sampleSize = Math.max((int) (options.outHeight / (float) 200), (int) (options.outWidth / (float) 200));
-                if (sampleSize <= 0) {
-                    sampleSize = 1;
-                }
-                options.inSampleSize = sampleSize;
-                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                scanBitmap = BitmapFactory.decodeFile(path, options);
-                final int width = scanBitmap.getWidth();
-                final int height = scanBitmap.getHeight();
-                final int[] pixels = new int[width * height];
-                scanBitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-                decodeForPicture(pixels, width, height);
+                postResult(decodePicture(pictureDecoder, path));
             }
         });
     }
 
     /**
-     * 基于图片进行解码
+     * 分块识别超大图片中的所有二维码，例如A3扫描件、四千万像素的照片
+     * 按照原图分辨率分块读取，多个线程同时识别，内存占用只和分块大小有关，不会因为图片过大OOM
+     * 耗时比{@link #decodeForPicture(String)}长，只在需要识别大图中的小二维码时使用
      *
-     * @param data   当前需要解码的图片像素数据
-     * @param width  当前图像的宽度
-     * @param height 当前图像的高度
-     * @return 目前只支持文本，因为方便转义成具体的业务操作
+     * @param path     图片路径
+     * @param callback 结果回调，在主线程中回调
      */
-    private void decodeForPicture(int[] data, int width, int height) {
-        Result rawResult = null;
-        LuminanceSource source = new RGBLuminanceSource(width, height, data);
-        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-        try {
-            rawResult = multiFormatReader.decode(bitmap);
-            if (null != rawResult) {
-                if (null != onResultCallback) {
-                    final Result finalRawResult = rawResult;
-                    HANDLER.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            onResultCallback.onSuccess(finalRawResult.getText());
-                        }
-                    });
+    public void decodeForLargePicture(final String path, final OnMultiResultCallback callback) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> results = decodeLargePicture(pictureDecoder, path);
+                if (null == callback) {
+                    return;
                 }
-            }
-        } catch (ReaderException re) {
-            // continue
-            if (null != onResultCallback) {
                 HANDLER.post(new Runnable() {
                     @Override
                     public void run() {
-                        onResultCallback.onFail();
+                        if (results.isEmpty()) {
+                            callback.onFail();
+                        } else {
+                            callback.onSuccess(results);
+                        }
                     }
                 });
             }
-        } finally {
-            multiFormatReader.reset();
-        }
+        });
     }
 
     /**
@@ -186,13 +224,219 @@ public class ZxingHelper {
         EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
-                final int width = scanBitmap.getWidth();
-                final int height = scanBitmap.getHeight();
-                final int[] pixels = new int[width * height];
-                scanBitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-                decodeForPicture(pixels, width, height);
+                postResult(decodeBitmap(pictureDecoder, scanBitmap));
             }
         });
     }
 
+    /**
+     * 批量识别静态图片
+     * 同时识别的图片数不超过CPU核数，图片再多也只有这么多张同时在内存中
+     *
+     * @param paths    图片路径
+     * @param callback 每张图片的结果和进度，在主线程中回调
+     * @return 当前批次，可以用于取消
+     */
+    public static DecodeBatch decodeForPictures(List<String> paths, OnBatchResultCallback callback) {
+        final List<String> items = new ArrayList<>(paths);
+        DecodeBatch batch = new DecodeBatch(items.size(), new DecodeBatch.ItemDecoder() {
+            @Override
+            public String decode(PictureDecoder decoder, int index) {
+                return decodePicture(decoder, items.get(index));
+            }
+        }, callback, MAIN_EXECUTOR);
+        batch.start(BATCH_EXECUTOR, BATCH_PARALLELISM);
+        return batch;
+    }
+
+    /**
+     * 批量识别静态图片
+     * 同时识别的图片数不超过CPU核数
+     *
+     * @param bitmaps  图片数据，识别结束之前不能回收
+     * @param callback 每张图片的结果和进度，在主线程中回调
+     * @return 当前批次，可以用于取消
+     */
+    public static DecodeBatch decodeForBitmaps(List<Bitmap> bitmaps, OnBatchResultCallback callback) {
+        final List<Bitmap> items = new ArrayList<>(bitmaps);
+        DecodeBatch batch = new DecodeBatch(items.size(), new DecodeBatch.ItemDecoder() {
+            @Override
+            public String decode(PictureDecoder decoder, int index) {
+                return decodeBitmap(decoder, items.get(index));
+            }
+        }, callback, MAIN_EXECUTOR);
+        batch.start(BATCH_EXECUTOR, BATCH_PARALLELISM);
+        return batch;
+    }
+
+    /**
+     * 设置识别图片时使用的结果缓存，默认不缓存
+     * 同一张图片再次识别的时候直接返回上一次的结果，包括没有识别出二维码的情况
+     *
+     * @param cache 结果缓存，null表示不缓存
+     */
+    public static void setResultCache(DecodeResultCache cache) {
+        resultCache = cache;
+    }
+
+    private void postResult(final String result) {
+        if (null == onResultCallback) {
+            return;
+        }
+        HANDLER.post(new Runnable() {
+            @Override
+            public void run() {
+                if (null != result) {
+                    onResultCallback.onSuccess(result);
+                } else {
+                    onResultCallback.onFail();
+                }
+            }
+        });
+    }
+
+    /**
+     * 读取并识别图片文件，先按照短边200左右采样，失败之后逐步提高分辨率
+     *
+     * @param decoder 当前线程使用的解码器
+     * @param path    图片路径
+     * @return 识别出的文本，没有识别出二维码或者图片无法读取的时候为null
+     */
+    private static String decodePicture(PictureDecoder decoder, String path) {
+        DecodeResultCache cache = resultCache;
+        String key = null == cache ? null : DecodeResultCache.fileKey(new File(path), CACHE_MODE_PICTURE);
+        if (null != key) {
+            String[] cached = cache.get(key);
+            if (null != cached) {
+                return cached.length == 0 ? null : cached[0];
+            }
+        }
+        String result;
+        boolean cacheable;
+        MultiScaleDecoder multiScaleDecoder = new MultiScaleDecoder(decoder);
+        FileImageSource source = new FileImageSource(path, BUFFER_POOL);
+        try {
+            result = multiScaleDecoder.decode(source).getText();
+            cacheable = true;
+        } catch (ReaderException re) {
+            result = null;
+            // 图片无法读取的时候不缓存，可能只是暂时的内存不足
+            cacheable = multiScaleDecoder.isAllLoaded();
+        } finally {
+            source.release();
+        }
+        if (null != key && cacheable) {
+            cache.put(key, toArray(result));
+        }
+        return result;
+    }
+
+    /**
+     * 分块识别图片文件中的所有二维码
+     *
+     * @param decoder 当前线程使用的解码器
+     * @param path    图片路径
+     * @return 识别出的文本，没有识别出的时候为空
+     */
+    private static List<String> decodeLargePicture(PictureDecoder decoder, final String path) {
+        DecodeResultCache cache = resultCache;
+        String key = null == cache ? null : DecodeResultCache.fileKey(new File(path), CACHE_MODE_TILED);
+        if (null != key) {
+            String[] cached = cache.get(key);
+            if (null != cached) {
+                return Arrays.asList(cached);
+            }
+        }
+        TiledDecoder tiledDecoder = new TiledDecoder(new TiledDecoder.SourceFactory() {
+            @Override
+            public MultiScaleDecoder.ImageSource open() {
+                return new FileImageSource(path, BUFFER_POOL);
+            }
+        }, decoder);
+        List<Result> rawResults = tiledDecoder.decode(BATCH_EXECUTOR, BATCH_PARALLELISM);
+        String[] results = new String[rawResults.size()];
+        for (int i = 0; i < results.length; ++i) {
+            results[i] = rawResults.get(i).getText();
+        }
+        // 有一块读取失败的时候结果不完整，不缓存
+        if (null != key && tiledDecoder.isAllLoaded()) {
+            cache.put(key, results);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 识别图片
+     *
+     * @param decoder    当前线程使用的解码器
+     * @param scanBitmap 图片数据
+     * @return 识别出的文本，没有识别出二维码的时候为null
+     */
+    private static String decodeBitmap(PictureDecoder decoder, Bitmap scanBitmap) {
+        ScanTracer tracer = ScanTrace.getTracer();
+        if (null != tracer) {
+            tracer.beginSection(ScanTrace.LOAD_PICTURE);
+        }
+        final int width = scanBitmap.getWidth();
+        final int height = scanBitmap.getHeight();
+        byte[] luminances = BUFFER_POOL.acquire(width * height);
+        try {
+            try {
+                BitmapLuminance.copyLuminance(scanBitmap, luminances);
+            } finally {
+                if (null != tracer) {
+                    tracer.endSection();
+                }
+            }
+            // Bitmap没有稳定的标识，按照亮度数据的哈希缓存，识别结果只和亮度有关
+            DecodeResultCache cache = resultCache;
+            String key = null == cache ? null
+                    : DecodeResultCache.contentKey(luminances, width, height, CACHE_MODE_BITMAP);
+            if (null != key) {
+                String[] cached = cache.get(key);
+                if (null != cached) {
+                    return cached.length == 0 ? null : cached[0];
+                }
+            }
+            LuminanceSource source = new PlanarYUVLuminanceSource(luminances, width, height, 0, 0, width, height,
+                    false);
+            String result;
+            if (null != tracer) {
+                tracer.beginSection(ScanTrace.DECODE_PICTURE);
+            }
+            try {
+                result = decoder.decode(source, null).getText();
+            } catch (ReaderException re) {
+                result = null;
+            } finally {
+                if (null != tracer) {
+                    tracer.endSection();
+                }
+            }
+            if (null != key) {
+                cache.put(key, toArray(result));
+            }
+            return result;
+        } finally {
+            BUFFER_POOL.release(luminances);
+        }
+    }
+
+    private static String[] toArray(String result) {
+        return null == result ? new String[0] : new String[]{result};
+    }
+
+    private Result decode(PlanarYUVLuminanceSource source, boolean evenlyLit) throws ReaderException {
+        ScanTracer tracer = ScanTrace.getTracer();
+        if (null == tracer) {
+            return pictureDecoder.decode(source, evenlyLit);
+        }
+        tracer.beginSection(ScanTrace.DECODE_PICTURE);
+        try {
+            return pictureDecoder.decode(source, evenlyLit);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
 }
@@ -31,6 +31,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * @description 处理自动聚焦
  * @note 优先使用FOCUS_MODE_CONTINUOUS_PICTURE，采用照相级别聚焦方案
  * 否则采用普通的聚焦模式
+ * 支持的聚焦模式从{@link CameraSettings}快照读取
  **/
 final class AutoFocusManager implements Camera.AutoFocusCallback {
     private static final int MSG_FOCUS = 1;
@@ -43,6 +44,7 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
     private static final int STATUS_CONTINUOUS_PICTURE = 3;
     private int focusMode;
     private final Camera camera;
+    private final CameraSettings settings;
     private boolean stopped;
     private AtomicBoolean focusing = new AtomicBoolean();
     private Handler handler = new Handler(Looper.getMainLooper()) {
@@ -59,16 +61,16 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
         }
     };
 
-    AutoFocusManager(Context context, Camera camera) {
+    AutoFocusManager(Context context, Camera camera, CameraSettings settings) {
         this.camera = camera;
-        List<String> supportMode = camera.getParameters().getSupportedFocusModes();
+        this.settings = settings;
+        List<String> supportMode = settings.supportedFocusModes;
         if (supportMode.size() == 0) {
             focusMode = STATUS_UNABLE_FOCUS;
         } else {
             for (String temp : supportMode) {
                 if (Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE.equals(temp)) {
                     focusMode = STATUS_CONTINUOUS_PICTURE;
-                    camera.getParameters().setFocusMode(temp);
                     break;
                 } else if (Camera.Parameters.FOCUS_MODE_AUTO.equals(temp) ||
                         Camera.Parameters.FOCUS_MODE_MACRO.equals(temp)) {
@@ -106,7 +108,7 @@ final class AutoFocusManager implements Camera.AutoFocusCallback {
                 } catch (RuntimeException re) {
                     try {
                         if (focusMode == STATUS_CONTINUOUS_PICTURE) {
-                            List<String> supportMode = camera.getParameters().getSupportedFocusModes();
+                            List<String> supportMode = settings.supportedFocusModes;
                             for (String temp : supportMode) {
                                 if (Camera.Parameters.FOCUS_MODE_AUTO.equals(temp) ||
                                         Camera.Parameters.FOCUS_MODE_MACRO.equals(temp)) {
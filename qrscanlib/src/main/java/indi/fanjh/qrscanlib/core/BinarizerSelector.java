@@ -0,0 +1,157 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 二值化方式选择
+ * @note HybridBinarizer对每个8x8的块都要计算阈值，光照均匀、对比度高的画面用全局直方图就足够了，而且快很多
+ * 1.先把区域分成4x4的格子，采样每个格子的最亮值作为局部的白色亮度，各个格子的白色亮度接近说明光照均匀
+ * 2.光照均匀的帧优先使用全局直方图，失败并且找到了疑似定位点的时候再用Hybrid重试
+ * 3.记录本次扫描中两种方式在光照均匀的帧上的成功率，全局直方图明显不如Hybrid的时候直接使用Hybrid
+ * 每隔一段时间使用一次当前不占优的方式，保证两种方式都有样本，场景变化之后也能切换回来
+ * 多个解码线程共享同一个实例，方法都是同步的
+ **/
+public final class BinarizerSelector {
+    private static final int GRID_SIZE = 4;
+    private static final int SAMPLE_STEP = 4;
+    /**
+     * 各个格子白色亮度的差异小于整体对比度的这个比例，认为光照均匀
+     */
+    private static final float EVEN_LIGHT_RATIO = 0.25f;
+    /**
+     * 整体对比度低于这个值的画面全局直方图基本无法处理
+     */
+    private static final int MIN_CONTRAST = 64;
+    /**
+     * 至少尝试这么多次之后才根据成功率做判断
+     */
+    private static final int MIN_SAMPLES = 20;
+    /**
+     * 光照均匀的帧中每隔多少帧尝试一次不占优的方式
+     */
+    private static final int EXPLORE_INTERVAL = 16;
+
+    private final DecodeMetrics metrics = new DecodeMetrics();
+    /**
+     * 光照均匀的帧上两种方式的尝试次数和成功次数
+     */
+    private final int[] evenAttempts = new int[DecodeMetrics.BINARIZER_COUNT];
+    private final int[] evenSuccesses = new int[DecodeMetrics.BINARIZER_COUNT];
+    private int evenFrames;
+
+    /**
+     * 判断指定区域的光照是否均匀
+     *
+     * @param luminances 亮度数据
+     * @param stride     行跨度
+     * @param left       区域左边
+     * @param top        区域上边
+     * @param right      区域右边
+     * @param bottom     区域下边
+     * @return true表示光照均匀并且对比度足够，适合使用全局直方图
+     */
+    public static boolean isEvenlyLit(byte[] luminances, int stride, int left, int top, int right, int bottom) {
+        int width = right - left;
+        int height = bottom - top;
+        if (width < GRID_SIZE * SAMPLE_STEP || height < GRID_SIZE * SAMPLE_STEP) {
+            return false;
+        }
+        int darkest = 0xFF;
+        int minWhite = 0xFF;
+        int maxWhite = 0;
+        for (int gridY = 0; gridY < GRID_SIZE; ++gridY) {
+            int cellTop = top + gridY * height / GRID_SIZE;
+            int cellBottom = top + (gridY + 1) * height / GRID_SIZE;
+            for (int gridX = 0; gridX < GRID_SIZE; ++gridX) {
+                int cellLeft = left + gridX * width / GRID_SIZE;
+                int cellRight = left + (gridX + 1) * width / GRID_SIZE;
+                int white = 0;
+                for (int y = cellTop; y < cellBottom; y += SAMPLE_STEP) {
+                    int offset = y * stride;
+                    for (int x = cellLeft; x < cellRight; x += SAMPLE_STEP) {
+                        int pixel = luminances[offset + x] & 0xFF;
+                        if (pixel > white) {
+                            white = pixel;
+                        }
+                        if (pixel < darkest) {
+                            darkest = pixel;
+                        }
+                    }
+                }
+                minWhite = Math.min(minWhite, white);
+                maxWhite = Math.max(maxWhite, white);
+            }
+        }
+        int contrast = maxWhite - darkest;
+        return contrast >= MIN_CONTRAST && maxWhite - minWhite <= contrast * EVEN_LIGHT_RATIO;
+    }
+
+    /**
+     * 选择当前帧首先使用的二值化方式
+     *
+     * @param evenlyLit 当前帧是否光照均匀
+     * @return 二值化方式
+     */
+    synchronized int choose(boolean evenlyLit) {
+        if (!evenlyLit) {
+            return DecodeMetrics.BINARIZER_HYBRID;
+        }
+        int preferred = DecodeMetrics.BINARIZER_GLOBAL_HISTOGRAM;
+        int globalAttempts = evenAttempts[DecodeMetrics.BINARIZER_GLOBAL_HISTOGRAM];
+        int hybridAttempts = evenAttempts[DecodeMetrics.BINARIZER_HYBRID];
+        if (globalAttempts >= MIN_SAMPLES && hybridAttempts >= MIN_SAMPLES) {
+            // 比较成功率，交叉相乘避免除法
+            long globalRate = (long) evenSuccesses[DecodeMetrics.BINARIZER_GLOBAL_HISTOGRAM] * hybridAttempts;
+            long hybridRate = (long) evenSuccesses[DecodeMetrics.BINARIZER_HYBRID] * globalAttempts;
+            if (globalRate * 2 < hybridRate) {
+                preferred = DecodeMetrics.BINARIZER_HYBRID;
+            }
+        }
+        if (++evenFrames % EXPLORE_INTERVAL == 0) {
+            return preferred == DecodeMetrics.BINARIZER_HYBRID
+                    ? DecodeMetrics.BINARIZER_GLOBAL_HISTOGRAM : DecodeMetrics.BINARIZER_HYBRID;
+        }
+        return preferred;
+    }
+
+    /**
+     * 记录一次二值化和解码的结果
+     *
+     * @param binarizer 二值化方式
+     * @param evenlyLit 当前帧是否光照均匀
+     * @param nanos     二值化耗时
+     * @param success   解码是否成功
+     */
+    synchronized void record(int binarizer, boolean evenlyLit, long nanos, boolean success) {
+        metrics.binarizeCounts[binarizer]++;
+        metrics.binarizeNanos[binarizer] += nanos;
+        metrics.lastBinarizer = binarizer;
+        metrics.lastBinarizeNanos = nanos;
+        if (success) {
+            metrics.successCounts[binarizer]++;
+        }
+        if (evenlyLit) {
+            evenAttempts[binarizer]++;
+            if (success) {
+                evenSuccesses[binarizer]++;
+            }
+        }
+    }
+
+    /**
+     * @param out 写入当前统计的快照
+     */
+    synchronized void snapshot(DecodeMetrics out) {
+        out.copyFrom(metrics);
+    }
+
+    synchronized void reset() {
+        metrics.reset();
+        for (int i = 0; i < DecodeMetrics.BINARIZER_COUNT; ++i) {
+            evenAttempts[i] = 0;
+            evenSuccesses[i] = 0;
+        }
+        evenFrames = 0;
+    }
+
+}
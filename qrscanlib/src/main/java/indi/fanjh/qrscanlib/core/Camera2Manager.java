@@ -0,0 +1,543 @@
+package indi.fanjh.qrscanlib.core;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.hardware.Camera;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraMetadata;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 基于camera2的相机实现
+ * @note 1.预览画面输出到SurfaceView，同时输出YUV_420_888格式的画面到ImageReader用于解码
+ * 2.每一帧只拷贝扫描区域内的亮度行，按照rowStride逐行读取Y平面的direct ByteBuffer，写入复用的byte[]，
+ * 拷贝完成立即关闭Image，ImageReader不会因为解码慢而阻塞相机，也不会为每一帧分配内存
+ * 3.ImageReader总是取最新的一帧，所有解码线程都忙碌并且没有空闲缓冲的时候直接丢弃
+ * 4.暂停分发的时候从重复请求中移除ImageReader，相机只输出预览画面
+ * 相机的打开和会话的创建都是异步的，回调在单独的相机线程中执行
+ **/
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class Camera2Manager implements CameraBackend, ImageReader.OnImageAvailableListener {
+    private static final String TAG = Camera2Manager.class.getSimpleName();
+    /**
+     * 解码用的画面分辨率上限，再大的话拷贝和解码的耗时都会明显增加
+     */
+    private static final int MAX_PREVIEW_PIXELS = 1920 * 1080;
+    /**
+     * ImageReader中同时持有的画面数量，Image拷贝之后立即关闭，acquireLatestImage至少需要2
+     */
+    private static final int MAX_IMAGES = 3;
+
+    private final Context context;
+    private final android.hardware.camera2.CameraManager systemCameraManager;
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
+    private CameraDevice cameraDevice;
+    private CameraCaptureSession captureSession;
+    private ImageReader imageReader;
+    private Surface previewSurface;
+    private volatile CameraSettings settings;
+    private boolean opened;
+    private boolean previewing;
+    private boolean torch;
+    private int focusMode = -1;
+    private FrameConsumer previewHandler;
+    /**
+     * 只拷贝扫描区域内的画面，依次为left、top、right、bottom，变化时整体替换，随拷贝的帧一起交给分发者
+     */
+    private int[] scanRect;
+    /**
+     * 亮度平面缓冲，大小为width*height，整个预览期间循环使用
+     */
+    private byte[][] previewBuffers;
+    private byte[][] idleBuffers;
+    private int idleCount;
+    /**
+     * 和previewBuffers一一对应，true表示已经交给分发者还没有归还
+     * 重新开始预览的时候这些缓冲不能放回空闲列表，否则归还之后同一个缓冲会在空闲列表中出现两次
+     */
+    private boolean[] inFlight;
+    private int previewBufferCount = 3;
+
+    Camera2Manager(Context context) {
+        this.context = context.getApplicationContext();
+        systemCameraManager = (android.hardware.camera2.CameraManager)
+                this.context.getSystemService(Context.CAMERA_SERVICE);
+    }
+
+    /**
+     * 判断当前设备是否适合使用camera2
+     * LEGACY级别的设备camera2只是对旧API的封装，帧率和拷贝都没有优势
+     *
+     * @param context 上下文
+     * @return true表示使用camera2
+     */
+    static boolean isSupported(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+        try {
+            android.hardware.camera2.CameraManager manager = (android.hardware.camera2.CameraManager)
+                    context.getSystemService(Context.CAMERA_SERVICE);
+            String cameraId = findBackCamera(manager);
+            if (null == cameraId) {
+                return false;
+            }
+            Integer level = manager.getCameraCharacteristics(cameraId)
+                    .get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+            return null != level && level != CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY;
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to query camera2 support", e);
+            return false;
+        }
+    }
+
+    private static String findBackCamera(android.hardware.camera2.CameraManager manager)
+            throws CameraAccessException {
+        String[] ids = manager.getCameraIdList();
+        for (String id : ids) {
+            Integer facing = manager.getCameraCharacteristics(id).get(CameraCharacteristics.LENS_FACING);
+            if (null != facing && facing == CameraMetadata.LENS_FACING_BACK) {
+                return id;
+            }
+        }
+        return ids.length > 0 ? ids[0] : null;
+    }
+
+    @Override
+    public synchronized void openDriver(SurfaceHolder holder) throws IOException {
+        if (opened) {
+            return;
+        }
+        try {
+            String cameraId = findBackCamera(systemCameraManager);
+            if (null == cameraId) {
+                throw new IOException("No camera available");
+            }
+            CameraCharacteristics characteristics = systemCameraManager.getCameraCharacteristics(cameraId);
+            Point size = chooseSize(characteristics);
+            settings = createSettings(characteristics, size);
+            Log.i(TAG, "Camera settings: " + settings);
+
+            cameraThread = new HandlerThread("camera2_thread");
+            cameraThread.start();
+            cameraHandler = new Handler(cameraThread.getLooper());
+            imageReader = ImageReader.newInstance(size.x, size.y, ImageFormat.YUV_420_888, MAX_IMAGES);
+            imageReader.setOnImageAvailableListener(this, cameraHandler);
+            // 预览画面的缓冲尺寸需要和输出尺寸一致，由系统按照传感器方向旋转显示
+            holder.setFixedSize(size.x, size.y);
+            previewSurface = holder.getSurface();
+
+            systemCameraManager.openCamera(cameraId, stateCallback, cameraHandler);
+            opened = true;
+        } catch (CameraAccessException e) {
+            release();
+            throw new IOException(e);
+        } catch (SecurityException e) {
+            release();
+            throw new IOException(e);
+        }
+    }
+
+    private Point chooseSize(CameraCharacteristics characteristics) {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Size[] outputSizes = null == map ? null : map.getOutputSizes(ImageFormat.YUV_420_888);
+        List<Point> supportedSizes = null;
+        Point defaultSize = null;
+        if (null != outputSizes) {
+            supportedSizes = new ArrayList<>(outputSizes.length);
+            for (Size size : outputSizes) {
+                if (size.getWidth() * size.getHeight() > MAX_PREVIEW_PIXELS) {
+                    continue;
+                }
+                Point point = new Point(size.getWidth(), size.getHeight());
+                supportedSizes.add(point);
+                if (null == defaultSize || point.x * point.y > defaultSize.x * defaultSize.y) {
+                    defaultSize = point;
+                }
+            }
+        }
+        Point screenResolution = CameraConfigurationManager.toLandscape(
+                CameraConfigurationManager.readScreenResolution(context));
+        return CameraConfigurationManager.findBestPreviewSizeValue(supportedSizes, defaultSize, screenResolution);
+    }
+
+    private CameraSettings createSettings(CameraCharacteristics characteristics, Point size) {
+        Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+        List<String> focusModes = new ArrayList<>(2);
+        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+        if (null != afModes) {
+            for (int mode : afModes) {
+                if (mode == CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE) {
+                    focusModes.add(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
+                    focusMode = mode;
+                } else if (mode == CameraMetadata.CONTROL_AF_MODE_AUTO) {
+                    focusModes.add(Camera.Parameters.FOCUS_MODE_AUTO);
+                    if (focusMode < 0) {
+                        focusMode = mode;
+                    }
+                }
+            }
+        }
+        Boolean flashAvailable = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+        List<String> flashModes = null != flashAvailable && flashAvailable
+                ? Arrays.asList(Camera.Parameters.FLASH_MODE_OFF, Camera.Parameters.FLASH_MODE_TORCH)
+                : null;
+        return new CameraSettings(size.x, size.y, null == orientation ? 90 : orientation,
+                Camera.Parameters.FLASH_MODE_OFF, CameraSettings.copyOf(focusModes), CameraSettings.copyOf(flashModes));
+    }
+
+    private final CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(CameraDevice camera) {
+            synchronized (Camera2Manager.this) {
+                if (!opened) {
+                    camera.close();
+                    return;
+                }
+                cameraDevice = camera;
+                if (previewing) {
+                    createSession();
+                }
+            }
+        }
+
+        @Override
+        public void onDisconnected(CameraDevice camera) {
+            Log.w(TAG, "Camera disconnected");
+            closeDevice(camera);
+        }
+
+        @Override
+        public void onError(CameraDevice camera, int error) {
+            Log.w(TAG, "Camera error: " + error);
+            closeDevice(camera);
+        }
+    };
+
+    private synchronized void closeDevice(CameraDevice camera) {
+        camera.close();
+        if (cameraDevice == camera) {
+            cameraDevice = null;
+            captureSession = null;
+        }
+    }
+
+    private void createSession() {
+        try {
+            cameraDevice.createCaptureSession(Arrays.asList(previewSurface, imageReader.getSurface()),
+                    sessionCallback, cameraHandler);
+        } catch (CameraAccessException e) {
+            Log.w(TAG, "Unable to create capture session", e);
+        } catch (IllegalArgumentException e) {
+            // surface已经被销毁
+            Log.w(TAG, "Unable to create capture session", e);
+        }
+    }
+
+    private final CameraCaptureSession.StateCallback sessionCallback = new CameraCaptureSession.StateCallback() {
+        @Override
+        public void onConfigured(CameraCaptureSession session) {
+            synchronized (Camera2Manager.this) {
+                if (!previewing || session.getDevice() != cameraDevice) {
+                    session.close();
+                    return;
+                }
+                captureSession = session;
+                updateRepeatingRequest();
+            }
+        }
+
+        @Override
+        public void onConfigureFailed(CameraCaptureSession session) {
+            Log.w(TAG, "Capture session configure failed");
+        }
+    };
+
+    /**
+     * 按照当前的闪光灯和分发状态更新重复请求
+     * 需要持有锁调用
+     */
+    private void updateRepeatingRequest() {
+        if (null == captureSession) {
+            return;
+        }
+        try {
+            CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            builder.addTarget(previewSurface);
+            if (null != previewHandler) {
+                builder.addTarget(imageReader.getSurface());
+            }
+            builder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+            if (focusMode >= 0) {
+                builder.set(CaptureRequest.CONTROL_AF_MODE, focusMode);
+            }
+            builder.set(CaptureRequest.FLASH_MODE, torch ? CameraMetadata.FLASH_MODE_TORCH : CameraMetadata.FLASH_MODE_OFF);
+            captureSession.setRepeatingRequest(builder.build(), null, cameraHandler);
+        } catch (CameraAccessException e) {
+            Log.w(TAG, "Unable to update repeating request", e);
+        } catch (IllegalStateException e) {
+            // 会话已经关闭
+            Log.w(TAG, "Unable to update repeating request", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return opened;
+    }
+
+    @Override
+    public synchronized void closeDriver() {
+        if (!opened) {
+            return;
+        }
+        stopPreview();
+        release();
+    }
+
+    private void release() {
+        opened = false;
+        if (null != cameraDevice) {
+            cameraDevice.close();
+            cameraDevice = null;
+        }
+        if (null != imageReader) {
+            imageReader.close();
+            imageReader = null;
+        }
+        if (null != cameraThread) {
+            cameraThread.quitSafely();
+            cameraThread = null;
+            cameraHandler = null;
+        }
+        previewSurface = null;
+        settings = null;
+    }
+
+    @Override
+    public synchronized void startPreview() {
+        if (!opened || previewing) {
+            return;
+        }
+        previewing = true;
+        allocatePreviewBuffers();
+        if (null != cameraDevice) {
+            createSession();
+        }
+    }
+
+    @Override
+    public synchronized void stopPreview() {
+        if (!previewing) {
+            return;
+        }
+        previewing = false;
+        previewHandler = null;
+        if (null != captureSession) {
+            captureSession.close();
+            captureSession = null;
+        }
+        idleCount = 0;
+    }
+
+    private void allocatePreviewBuffers() {
+        CameraSettings current = settings;
+        int bufferSize = current.previewWidth * current.previewHeight;
+        if (null == previewBuffers || previewBuffers.length != previewBufferCount
+                || previewBuffers[0].length != bufferSize) {
+            // 旧的缓冲归还的时候找不到对应的位置，直接丢弃
+            previewBuffers = new byte[previewBufferCount][bufferSize];
+            idleBuffers = new byte[previewBufferCount][];
+            inFlight = new boolean[previewBufferCount];
+        }
+        idleCount = 0;
+        for (int i = 0; i < previewBuffers.length; ++i) {
+            // 还在解码中的缓冲在归还的时候再放回空闲列表
+            if (!inFlight[i]) {
+                idleBuffers[idleCount++] = previewBuffers[i];
+            }
+        }
+    }
+
+    /**
+     * @return 缓冲在当前这组缓冲中的位置，不属于当前这组的时候返回-1
+     */
+    private int indexOfBuffer(byte[] data) {
+        if (null != previewBuffers) {
+            for (int i = 0; i < previewBuffers.length; ++i) {
+                if (previewBuffers[i] == data) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized void setPreviewBufferCount(int count) {
+        previewBufferCount = Math.max(2, Math.min(CameraManager.MAX_PREVIEW_BUFFER_COUNT, count));
+    }
+
+    @Override
+    public synchronized void setFrameConsumer(FrameConsumer handler) {
+        if (!previewing || previewHandler == handler) {
+            return;
+        }
+        boolean targetChanged = (null == previewHandler) != (null == handler);
+        previewHandler = handler;
+        if (targetChanged) {
+            updateRepeatingRequest();
+        }
+    }
+
+    @Override
+    public synchronized void releaseFrame(byte[] data) {
+        int index = indexOfBuffer(data);
+        if (index < 0 || !inFlight[index]) {
+            return;
+        }
+        inFlight[index] = false;
+        // 预览已经停止的时候不放回，重新开始的时候会连同其他缓冲一起放回
+        if (previewing) {
+            idleBuffers[idleCount++] = data;
+        }
+    }
+
+    @Override
+    public CameraSettings getCameraSettings() {
+        return settings;
+    }
+
+    @Override
+    public synchronized void setTorch(boolean newSetting) {
+        if (!opened || torch == newSetting) {
+            return;
+        }
+        torch = newSetting;
+        settings = settings.withFlashMode(newSetting ? Camera.Parameters.FLASH_MODE_TORCH
+                : Camera.Parameters.FLASH_MODE_OFF);
+        updateRepeatingRequest();
+    }
+
+    @Override
+    public synchronized void setScanRect(Rect rect) {
+        // 已经交出去的帧还持有旧的数组，这里不能修改，只能替换
+        scanRect = null == rect ? null : new int[]{rect.left, rect.top, rect.right, rect.bottom};
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        ScanTracer tracer = ScanTrace.getTracer();
+        if (null != tracer) {
+            tracer.beginSection(ScanTrace.FRAME_DELIVERY);
+        }
+        try {
+            deliverLatestImage(reader);
+        } finally {
+            if (null != tracer) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    /**
+     * 取出最新的一帧，拷贝亮度数据之后交给分发者
+     * 扫描区域在取缓冲的时候读取一次，拷贝和解码使用同一个区域
+     */
+    private void deliverLatestImage(ImageReader reader) {
+        Image image = reader.acquireLatestImage();
+        if (null == image) {
+            return;
+        }
+        FrameConsumer handler;
+        byte[] buffer = null;
+        int[] scanRect;
+        CameraSettings current = settings;
+        try {
+            synchronized (this) {
+                handler = previewHandler;
+                scanRect = this.scanRect;
+                if (null != handler && null != current && idleCount > 0) {
+                    buffer = idleBuffers[--idleCount];
+                    idleBuffers[idleCount] = null;
+                    inFlight[indexOfBuffer(buffer)] = true;
+                }
+            }
+            if (null == buffer) {
+                return;
+            }
+            copyLuminance(image, buffer, current.previewWidth, current.previewHeight, scanRect);
+        } finally {
+            image.close();
+        }
+        // 缓冲交给分发者，解码完成或者丢弃后通过releaseFrame归还
+        handler.onFrame(buffer, current.previewWidth, current.previewHeight, current.previewWidth, scanRect,
+                System.nanoTime());
+    }
+
+    /**
+     * 将Y平面中扫描区域内的像素拷贝到宽度等于行跨度的缓冲中，坐标保持不变
+     *
+     * @param image  画面
+     * @param dst    输出缓冲
+     * @param width  画面宽度
+     * @param height 画面高度
+     * @param rect   扫描区域，依次为left、top、right、bottom，null表示完整的画面
+     */
+    static void copyLuminance(Image image, byte[] dst, int width, int height, int[] rect) {
+        Image.Plane plane = image.getPlanes()[0];
+        copyLuminance(plane.getBuffer(), plane.getRowStride(), dst, width, height, rect);
+    }
+
+    static void copyLuminance(ByteBuffer src, int rowStride, byte[] dst, int width, int height, int[] rect) {
+        int left = 0;
+        int top = 0;
+        int right = width;
+        int bottom = height;
+        if (null != rect) {
+            left = Math.max(0, rect[0]);
+            top = Math.max(0, rect[1]);
+            right = Math.min(width, rect[2]);
+            bottom = Math.min(height, rect[3]);
+        }
+        int length = right - left;
+        if (length <= 0 || bottom <= top) {
+            return;
+        }
+        if (left == 0 && length == width && rowStride == width) {
+            src.position(top * width);
+            src.get(dst, top * width, (bottom - top) * width);
+            return;
+        }
+        for (int y = top; y < bottom; ++y) {
+            src.position(y * rowStride + left);
+            src.get(dst, y * width + left, length);
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package indi.fanjh.qrscanlib.core;
+
+import android.graphics.Rect;
+import android.view.SurfaceHolder;
+
+import java.io.IOException;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 相机实现
+ * @note 扫码流程只通过该接口访问相机，具体使用哪一套相机API由{@link CaptureActivityDelegate}根据系统版本选择
+ * 1.{@link CameraManager}使用android.hardware.Camera，支持所有版本
+ * 2.{@link Camera2Manager}使用android.hardware.camera2，Android5.0及以上并且不是LEGACY级别的设备使用
+ * 预览帧统一为宽度等于行跨度的亮度平面（NV21的前width*height字节就是亮度平面），通过{@link FrameSource}交给{@link ScanDispatcher}解码，
+ * 解码完成之后通过{@link #releaseFrame(byte[])}归还
+ **/
+interface CameraBackend extends FrameSource {
+
+    /**
+     * 打开相机并完成配置
+     *
+     * @param holder 预览的surface
+     * @throws IOException 相机打开失败
+     */
+    void openDriver(SurfaceHolder holder) throws IOException;
+
+    boolean isOpen();
+
+    void closeDriver();
+
+    void startPreview();
+
+    void stopPreview();
+
+    /**
+     * 设置预览帧缓冲数量，需要在开始预览之前调用
+     *
+     * @param count 缓冲数量
+     */
+    void setPreviewBufferCount(int count);
+
+    /**
+     * 获取当前相机配置的快照，不会访问相机，可以在解码线程中频繁调用
+     *
+     * @return 快照，相机还没有配置完成的时候为null
+     */
+    CameraSettings getCameraSettings();
+
+    void setTorch(boolean newSetting);
+
+    /**
+     * 设置扫描区域，解码只会读取区域内的画面
+     * 区域随之后输出的每一帧一起交给{@link FrameConsumer}，已经输出的帧继续使用输出时的区域
+     *
+     * @param rect 相机画面中的区域，null表示完整的画面
+     */
+    void setScanRect(Rect rect);
+
+}
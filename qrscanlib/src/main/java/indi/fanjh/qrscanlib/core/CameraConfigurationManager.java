@@ -20,7 +20,7 @@ import java.util.List;
 * @author fanjh
 * @date 2018/5/17 14:36
 * @description 用于配置相机的基础配置
-* @note
+* @note 配置完成之后保存一份{@link CameraSettings}快照，其它地方通过快照读取配置，不需要再调用getParameters()
 **/
 final class CameraConfigurationManager {
 
@@ -30,6 +30,10 @@ final class CameraConfigurationManager {
     private static final float MIN_EXPOSURE_COMPENSATION = 0.0f;
 
     private static final int MIN_PREVIEW_PIXELS = 480 * 320;
+    /**
+     * 预览竖屏显示，画面顺时针旋转90度
+     */
+    static final int DISPLAY_ORIENTATION = 90;
     private static final double MAX_ASPECT_DISTORTION = 0.15;
 
     private final Context context;
@@ -38,6 +42,10 @@ final class CameraConfigurationManager {
     private Point screenResolution;
     // 相机分辨率
     private Point cameraResolution;
+    // 最近一次设置给相机的参数，只有修改参数的时候使用
+    private Camera.Parameters cameraParameters;
+    // 当前配置的快照，可以在任意线程读取
+    private volatile CameraSettings settings;
 
     CameraConfigurationManager(Context context) {
         this.context = context;
@@ -45,15 +53,33 @@ final class CameraConfigurationManager {
 
     void initFromCameraParameters(Camera camera) {
         Camera.Parameters parameters = camera.getParameters();
+        screenResolution = readScreenResolution(context);
+        Log.i(TAG, "Screen resolution: " + screenResolution);
+
+        cameraResolution = findBestPreviewSizeValue(parameters, toLandscape(screenResolution));
+        Log.i(TAG, "Camera resolution x: " + cameraResolution.x);
+        Log.i(TAG, "Camera resolution y: " + cameraResolution.y);
+    }
+
+    /**
+     * 读取屏幕分辨率
+     *
+     * @param context 上下文
+     * @return 屏幕分辨率
+     */
+    static Point readScreenResolution(Context context) {
         WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         Display display = manager.getDefaultDisplay();
-        Point theScreenResolution = new Point();
-        theScreenResolution = getDisplaySize(display);
-
-        screenResolution = theScreenResolution;
-        Log.i(TAG, "Screen resolution: " + screenResolution);
+        return getDisplaySize(display);
+    }
 
-        /** 因为换成了竖屏显示，所以不替换屏幕宽高得出的预览图是变形的 */
+    /**
+     * 因为换成了竖屏显示，所以不替换屏幕宽高得出的预览图是变形的
+     *
+     * @param screenResolution 屏幕分辨率
+     * @return 宽大于高的分辨率
+     */
+    static Point toLandscape(Point screenResolution) {
         Point screenResolutionForCamera = new Point();
         screenResolutionForCamera.x = screenResolution.x;
         screenResolutionForCamera.y = screenResolution.y;
@@ -62,15 +88,12 @@ final class CameraConfigurationManager {
             screenResolutionForCamera.x = screenResolution.y;
             screenResolutionForCamera.y = screenResolution.x;
         }
-
-        cameraResolution = findBestPreviewSizeValue(parameters, screenResolutionForCamera);
-        Log.i(TAG, "Camera resolution x: " + cameraResolution.x);
-        Log.i(TAG, "Camera resolution y: " + cameraResolution.y);
+        return screenResolutionForCamera;
     }
 
     @SuppressWarnings("deprecation")
     @SuppressLint("NewApi")
-    private Point getDisplaySize(final Display display) {
+    private static Point getDisplaySize(final Display display) {
         final Point point = new Point();
         try {
             display.getSize(point);
@@ -110,8 +133,46 @@ final class CameraConfigurationManager {
         }
 
         /** 设置相机预览为竖屏 */
-        camera.setDisplayOrientation(90);
-        camera.getParameters().setSceneMode(Camera.Parameters.SCENE_MODE_BARCODE);
+        camera.setDisplayOrientation(DISPLAY_ORIENTATION);
+        updateSettings(afterParameters);
+    }
+
+    /**
+     * 参数修改成功之后刷新快照
+     *
+     * @param parameters 已经设置给相机的参数
+     */
+    private void updateSettings(Camera.Parameters parameters) {
+        cameraParameters = parameters;
+        settings = CameraSettings.from(parameters, DISPLAY_ORIENTATION);
+        Log.i(TAG, "Camera settings: " + settings);
+    }
+
+    /**
+     * 直接读取相机当前的参数作为快照，用于配置失败的情况
+     *
+     * @param camera 相机
+     */
+    void readSettings(Camera camera) {
+        Camera.Parameters parameters = camera.getParameters();
+        if (null != parameters) {
+            updateSettings(parameters);
+        }
+    }
+
+    /**
+     * 相机关闭之后之前的参数不再有效
+     */
+    void clearSettings() {
+        cameraParameters = null;
+        settings = null;
+    }
+
+    /**
+     * @return 当前配置的快照，相机还没有配置完成的时候为null
+     */
+    CameraSettings getSettings() {
+        return settings;
     }
 
     Point getCameraResolution() {
@@ -125,19 +186,39 @@ final class CameraConfigurationManager {
     public static Point findBestPreviewSizeValue(Camera.Parameters parameters, Point screenResolution) {
 
         List<Camera.Size> rawSupportedSizes = parameters.getSupportedPreviewSizes();
-        if (rawSupportedSizes == null) {
+        List<Point> supportedSizes = null;
+        if (rawSupportedSizes != null) {
+            supportedSizes = new ArrayList<>(rawSupportedSizes.size());
+            for (Camera.Size size : rawSupportedSizes) {
+                supportedSizes.add(new Point(size.width, size.height));
+            }
+        }
+        Camera.Size defaultSize = parameters.getPreviewSize();
+        return findBestPreviewSizeValue(supportedSizes,
+                defaultSize == null ? null : new Point(defaultSize.width, defaultSize.height), screenResolution);
+    }
+
+    /**
+     * 在支持的分辨率中选择和屏幕比例接近的最大分辨率
+     *
+     * @param supportedSizes   支持的分辨率，null表示无法获取
+     * @param defaultSize      相机当前的分辨率
+     * @param screenResolution 宽大于高的屏幕分辨率
+     * @return 选择的分辨率
+     */
+    static Point findBestPreviewSizeValue(List<Point> supportedSizes, Point defaultSize, Point screenResolution) {
+        if (supportedSizes == null) {
             Log.w(TAG, "Device returned no supported preview sizes; using default");
-            Camera.Size defaultSize = parameters.getPreviewSize();
             if (defaultSize == null) {
                 throw new IllegalStateException("Parameters contained no preview size!");
             }
-            return new Point(defaultSize.width, defaultSize.height);
+            return new Point(defaultSize.x, defaultSize.y);
         }
 
         if (Log.isLoggable(TAG, Log.INFO)) {
             StringBuilder previewSizesString = new StringBuilder();
-            for (Camera.Size size : rawSupportedSizes) {
-                previewSizesString.append(size.width).append('x').append(size.height).append(' ');
+            for (Point size : supportedSizes) {
+                previewSizesString.append(size.x).append('x').append(size.y).append(' ');
             }
             Log.i(TAG, "Supported preview sizes: " + previewSizesString);
         }
@@ -146,10 +227,10 @@ final class CameraConfigurationManager {
 
         // Find a suitable size, with max resolution
         int maxResolution = 0;
-        Camera.Size maxResPreviewSize = null;
-        for (Camera.Size size : rawSupportedSizes) {
-            int realWidth = size.width;
-            int realHeight = size.height;
+        Point maxResPreviewSize = null;
+        for (Point size : supportedSizes) {
+            int realWidth = size.x;
+            int realHeight = size.y;
             int resolution = realWidth * realHeight;
             if (resolution < MIN_PREVIEW_PIXELS) {
                 continue;
@@ -181,38 +262,33 @@ final class CameraConfigurationManager {
         // of the additional computation needed. We're likely to get here on newer Android 4+ devices, where
         // the CPU is much more powerful.
         if (maxResPreviewSize != null) {
-            Point largestSize = new Point(maxResPreviewSize.width, maxResPreviewSize.height);
+            Point largestSize = new Point(maxResPreviewSize.x, maxResPreviewSize.y);
             Log.i(TAG, "Using largest suitable preview size: " + largestSize);
             return largestSize;
         }
 
         // If there is nothing at all suitable, return current preview size
-        Camera.Size defaultPreview = parameters.getPreviewSize();
-        if (defaultPreview == null) {
+        if (defaultSize == null) {
             throw new IllegalStateException("Parameters contained no preview size!");
         }
-        Point defaultSize = new Point(defaultPreview.width, defaultPreview.height);
-        Log.i(TAG, "No suitable preview sizes, using default: " + defaultSize);
-        return defaultSize;
+        Point defaultPoint = new Point(defaultSize.x, defaultSize.y);
+        Log.i(TAG, "No suitable preview sizes, using default: " + defaultPoint);
+        return defaultPoint;
     }
 
-    boolean getTorchState(Camera camera) {
-        if (camera != null) {
-            Camera.Parameters parameters = camera.getParameters();
-            if (parameters != null) {
-                String flashMode = camera.getParameters().getFlashMode();
-                return flashMode != null &&
-                        (Camera.Parameters.FLASH_MODE_ON.equals(flashMode) ||
-                                Camera.Parameters.FLASH_MODE_TORCH.equals(flashMode));
-            }
-        }
-        return false;
+    boolean getTorchState() {
+        CameraSettings current = settings;
+        return null != current && current.isTorchOn();
     }
 
     void setTorch(Camera camera, boolean newSetting) {
-        Camera.Parameters parameters = camera.getParameters();
+        Camera.Parameters parameters = cameraParameters;
+        if (null == parameters) {
+            parameters = camera.getParameters();
+        }
         doSetTorch(parameters, newSetting, false);
         camera.setParameters(parameters);
+        updateSettings(parameters);
     }
 
     private void doSetTorch(Camera.Parameters parameters, boolean newSetting, boolean safeMode) {
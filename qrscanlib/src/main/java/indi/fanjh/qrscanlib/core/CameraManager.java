@@ -17,9 +17,10 @@
 package indi.fanjh.qrscanlib.core;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.hardware.Camera;
-import android.hardware.Camera.Size;
 import android.util.Log;
 import android.view.SurfaceHolder;
 
@@ -32,9 +33,13 @@ import java.io.IOException;
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
-final class CameraManager {
+final class CameraManager implements CameraBackend {
 
     private static final String TAG = CameraManager.class.getSimpleName();
+    /**
+     * 预分配的预览帧缓冲数量上限
+     */
+    static final int MAX_PREVIEW_BUFFER_COUNT = 8;
 
     private final Context context;
     private final CameraConfigurationManager configManager;
@@ -50,6 +55,15 @@ final class CameraManager {
     private boolean initialized;
     private boolean previewing;
     private int requestedCameraId = -1;
+    /**
+     * 预览帧缓冲，大小按照NV21格式和相机分辨率计算
+     * 整个预览期间循环使用，避免每一帧都由相机重新分配byte[]
+     */
+    private byte[][] previewBuffers;
+    /**
+     * 默认一帧在解码、一帧在相机中填充、一帧备用，足够保证相机不会因为没有缓冲而丢帧
+     */
+    private int previewBufferCount = 3;
 
     CameraManager(Context context) {
         this.context = context.getApplicationContext();
@@ -64,7 +78,8 @@ final class CameraManager {
      *               into.
      * @throws IOException Indicates the camera driver failed to open.
      */
-    synchronized void openDriver(SurfaceHolder holder) throws IOException {
+    @Override
+    public synchronized void openDriver(SurfaceHolder holder) throws IOException {
         Camera theCamera = camera;
         if (theCamera == null) {
 
@@ -109,6 +124,10 @@ final class CameraManager {
                 }
             }
         }
+        if (null == configManager.getSettings()) {
+            // 配置失败的时候按照相机当前的参数工作
+            configManager.readSettings(theCamera);
+        }
 
     }
 
@@ -121,17 +140,20 @@ final class CameraManager {
         return cameraManager;
     }
 
-    synchronized boolean isOpen() {
+    @Override
+    public synchronized boolean isOpen() {
         return camera != null;
     }
 
     /**
      * Closes the camera driver if still in use.
      */
-    synchronized void closeDriver() {
+    @Override
+    public synchronized void closeDriver() {
         if (camera != null) {
             camera.release();
             camera = null;
+            configManager.clearSettings();
             // Make sure to clear these each time we close the camera, so that
             // any scanning rect
             // requested by intent is forgotten.
@@ -141,36 +163,101 @@ final class CameraManager {
     /**
      * Asks the camera hardware to begin drawing preview frames to the screen.
      */
-    synchronized void startPreview() {
+    @Override
+    public synchronized void startPreview() {
         Camera theCamera = camera;
         if (theCamera != null && !previewing) {
+            allocatePreviewBuffers(theCamera);
+            theCamera.setPreviewCallbackWithBuffer(previewCallback);
             theCamera.startPreview();
             previewing = true;
-            autoFocusManager = new AutoFocusManager(context, camera);
+            CameraSettings settings = configManager.getSettings();
+            if (null != settings) {
+                autoFocusManager = new AutoFocusManager(context, camera, settings);
+            }
         }
     }
 
     /**
      * Tells the camera to stop drawing preview frames.
      */
-    synchronized void stopPreview() {
+    @Override
+    public synchronized void stopPreview() {
         if (autoFocusManager != null) {
             autoFocusManager.stopFocus();
             autoFocusManager = null;
         }
         if (camera != null && previewing) {
+            camera.setPreviewCallbackWithBuffer(null);
             camera.stopPreview();
-            previewCallback.setHandler(null);
+            previewCallback.setConsumer(null);
+            previewCallback.clearIdleBuffers();
             previewing = false;
         }
     }
 
-    synchronized void requestPreviewFrame(ScanHandler handler) {
+    /**
+     * 按照当前相机配置的预览分辨率准备预览帧缓冲，并交给相机
+     * 分辨率不变的情况下复用已有的缓冲，上一次预览中还在解码的缓冲在归还的时候再交给相机
+     *
+     * @param theCamera 当前相机
+     */
+    private void allocatePreviewBuffers(Camera theCamera) {
+        CameraSettings settings = configManager.getSettings();
+        if (null == settings) {
+            return;
+        }
+        int bufferSize = settings.previewWidth * settings.previewHeight
+                * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8;
+        if (null == previewBuffers || previewBuffers.length != previewBufferCount
+                || previewBuffers[0].length != bufferSize) {
+            previewBuffers = new byte[previewBufferCount][bufferSize];
+            previewCallback.clearInFlightBuffers();
+        }
+        for (byte[] buffer : previewBuffers) {
+            // 同一个缓冲在相机的队列中出现两次的话，两帧会写入同一个数组
+            if (!previewCallback.isInFlight(buffer)) {
+                theCamera.addCallbackBuffer(buffer);
+            }
+        }
+    }
+
+    /**
+     * 设置预览帧缓冲数量，需要在开始预览之前调用
+     * 一般为解码线程数加2，保证每个解码线程都有帧可用的同时相机还有缓冲可以填充
+     *
+     * @param count 缓冲数量
+     */
+    @Override
+    public synchronized void setPreviewBufferCount(int count) {
+        previewBufferCount = Math.max(2, Math.min(MAX_PREVIEW_BUFFER_COUNT, count));
+    }
+
+    @Override
+    public synchronized void setFrameConsumer(FrameConsumer consumer) {
         Camera theCamera = camera;
         if (theCamera != null && previewing) {
-            previewCallback.setHandler(handler);
-            theCamera.setOneShotPreviewCallback(previewCallback);
+            previewCallback.setConsumer(consumer);
+            if (null != consumer) {
+                // 空闲期间相机没有可用缓冲从而停止回调，这里把缓冲还给相机
+                previewCallback.requeueIdleBuffers(theCamera);
+            }
+        }
+    }
+
+    /**
+     * 解码完成后归还预览帧缓冲，可以在任意线程调用
+     *
+     * @param data 之前由相机回调出来的缓冲
+     */
+    @Override
+    public synchronized void releaseFrame(byte[] data) {
+        if (null == data) {
+            return;
         }
+        // 预览停止之后归还的缓冲也需要清除记录，重新开始预览的时候才会再交给相机
+        Camera theCamera = camera;
+        previewCallback.recycleBuffer(data, theCamera != null && previewing ? theCamera : null);
     }
 
     /**
@@ -193,13 +280,23 @@ final class CameraManager {
         return configManager.getCameraResolution();
     }
 
-    public Size getPreviewSize() {
-        if (null != camera) {
-            return camera.getParameters().getPreviewSize();
-        }
-        return null;
+    /**
+     * 获取当前相机配置的快照，不会访问相机，可以在解码线程中频繁调用
+     *
+     * @return 快照，相机还没有配置完成的时候为null
+     */
+    @Override
+    public CameraSettings getCameraSettings() {
+        return configManager.getSettings();
+    }
+
+    @Override
+    public void setScanRect(Rect rect) {
+        // 相机总是填充完整的缓冲，只需要随帧交给分发者，解码时只读取区域内的画面
+        previewCallback.setScanRect(null == rect ? null : new int[]{rect.left, rect.top, rect.right, rect.bottom});
     }
 
+    @Override
     public synchronized void setTorch(boolean newSetting) {
         if (camera != null) {
             configManager.setTorch(camera, newSetting);
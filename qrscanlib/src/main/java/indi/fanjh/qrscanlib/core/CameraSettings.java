@@ -0,0 +1,82 @@
+package indi.fanjh.qrscanlib.core;
+
+import android.hardware.Camera;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 相机配置快照
+ * @note Camera.getParameters()每次都是一次跨进程调用加上完整的参数字符串解析
+ * 所以在配置完成之后读取一次保存为不可变的快照，只有修改参数之后才重新生成
+ * 解码、裁剪区域计算、聚焦等高频路径只读取快照，不再访问相机
+ **/
+final class CameraSettings {
+    final int previewWidth;
+    final int previewHeight;
+    /**
+     * 预览显示时顺时针旋转的角度
+     */
+    final int displayOrientation;
+    final String flashMode;
+    final List<String> supportedFocusModes;
+    final List<String> supportedFlashModes;
+
+    CameraSettings(int previewWidth, int previewHeight, int displayOrientation, String flashMode,
+                           List<String> supportedFocusModes, List<String> supportedFlashModes) {
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+        this.displayOrientation = displayOrientation;
+        this.flashMode = flashMode;
+        this.supportedFocusModes = supportedFocusModes;
+        this.supportedFlashModes = supportedFlashModes;
+    }
+
+    /**
+     * 从相机参数生成快照
+     *
+     * @param parameters         相机参数
+     * @param displayOrientation 预览显示时顺时针旋转的角度
+     * @return 快照
+     */
+    static CameraSettings from(Camera.Parameters parameters, int displayOrientation) {
+        Camera.Size size = parameters.getPreviewSize();
+        return new CameraSettings(null == size ? 0 : size.width, null == size ? 0 : size.height, displayOrientation,
+                parameters.getFlashMode(),
+                copyOf(parameters.getSupportedFocusModes()),
+                copyOf(parameters.getSupportedFlashModes()));
+    }
+
+    /**
+     * 修改闪光灯之后生成新的快照
+     *
+     * @param flashMode 新的闪光灯模式
+     * @return 快照
+     */
+    CameraSettings withFlashMode(String flashMode) {
+        return new CameraSettings(previewWidth, previewHeight, displayOrientation, flashMode,
+                supportedFocusModes, supportedFlashModes);
+    }
+
+    boolean isTorchOn() {
+        return Camera.Parameters.FLASH_MODE_ON.equals(flashMode)
+                || Camera.Parameters.FLASH_MODE_TORCH.equals(flashMode);
+    }
+
+    static List<String> copyOf(List<String> values) {
+        if (null == values || values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(values));
+    }
+
+    @Override
+    public String toString() {
+        return "CameraSettings{preview=" + previewWidth + "x" + previewHeight + ", orientation=" + displayOrientation
+                + ", flash=" + flashMode + "}";
+    }
+
+}
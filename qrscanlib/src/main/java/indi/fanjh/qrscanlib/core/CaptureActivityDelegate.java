@@ -2,7 +2,6 @@ package indi.fanjh.qrscanlib.core;
 
 import android.app.Activity;
 import android.graphics.Rect;
-import android.hardware.Camera;
 import android.support.annotation.NonNull;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
@@ -12,7 +11,9 @@ import android.view.WindowManager;
 import com.google.zxing.Result;
 
 
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 import indi.fanjh.qrscanlib.utils.BeepManager;
 import indi.fanjh.qrscanlib.utils.InactivityTimer;
@@ -25,18 +26,34 @@ import indi.fanjh.qrscanlib.utils.InactivityTimer;
 **/
 public class CaptureActivityDelegate {
     private Activity activity;
-    private CameraManager cameraManager;
+    private CameraBackend cameraManager;
     private CaptureActivityHandler handler;
     private InactivityTimer inactivityTimer;
     private BeepManager beepManager;
     private SurfaceView scanPreview = null;
     private Rect mCropRect = null;
     private Rect mPreviewRect = null;
+    /**
+     * 按照相机分辨率换算之后的裁剪区域，只在裁剪区域或者相机配置变化的时候重新换算并整体替换，发布之后不再修改
+     */
+    private volatile Rect mScanRect = null;
+    /**
+     * 裁剪区域是否为预览视图中的坐标，需要按照预览的显示角度换算
+     */
+    private boolean mCropRectInView;
+    private final int[] mScanBounds = new int[4];
     private boolean isHasSurface = false;
     private OnStatusListener onStatusListener;
     private boolean shouldScan;
-    private int previewWidth;
-    private int previewHeight;
+    private int decodeThreadCount;
+    private boolean pyramidEnabled = true;
+    private boolean multiCodeEnabled;
+    private boolean continuousScan;
+    private long continuousCooldownMillis = RecentResultCache.DEFAULT_COOLDOWN_MS;
+    private boolean camera2Enabled = true;
+    private FrameRecorder frameRecorder;
+    private OnDecodeMetricsListener onDecodeMetricsListener;
+    private long metricsIntervalMillis;
 
     /**
      * 设置一些状态的监听
@@ -46,6 +63,32 @@ public class CaptureActivityDelegate {
         this.onStatusListener = onStatusListener;
     }
 
+    /**
+     * 设置解码统计的监听，默认不统计
+     * 开启之后记录帧间隔、排队等待、准备亮度数据、二值化、定位、解码以及结果到达主线程的耗时分布，
+     * 每隔intervalMillis在主线程中回调一次本次扫描开始以来的统计，页面暂停之前还会回调一次
+     * 没有开启的时候解码线程中不会额外计时，丢帧和跳帧的数量始终可以通过{@link #getDecodeMetrics()}获取
+     * @param listener 监听，null表示关闭统计
+     * @param intervalMillis 回调间隔，毫秒
+     */
+    public void setOnDecodeMetricsListener(OnDecodeMetricsListener listener, long intervalMillis) {
+        this.onDecodeMetricsListener = listener;
+        this.metricsIntervalMillis = null == listener ? 0 : Math.max(1, intervalMillis);
+        if(null != handler){
+            handler.setMetricsReporting(metricsIntervalMillis);
+        }
+    }
+
+    /**
+     * 设置是否把扫码的各个阶段写入系统跟踪（android.os.Trace），默认关闭，需要Android4.3及以上
+     * 开启之后抓取systrace或者Perfetto可以看到相机出帧、解码线程中的各个阶段、主线程的消息处理以及ZxingHelper的图片识别
+     * 对所有页面和ZxingHelper都生效，也可以通过{@link ScanTrace#setTracer(ScanTracer)}设置自定义的跟踪者
+     * @param enabled true表示开启
+     */
+    public static void setSystemTraceEnabled(boolean enabled) {
+        ScanTrace.setTracer(enabled ? SystemTracer.create() : null);
+    }
+
     private SurfaceHolder.Callback surfaceHolder = new SurfaceHolder.Callback() {
         @Override
         public void surfaceCreated(SurfaceHolder holder) {
@@ -91,16 +134,139 @@ public class CaptureActivityDelegate {
     /**
      * 自定义裁剪区域，一般来说就是优化一下速度
      * 不过实际测试中会发现，效果并不明显，一般来说可以采用全屏的操作
-     * @param rect 相对于surfaceView的区域
-     * @param previewRect surfaceView的区域
+     * 区域需要自己按照横屏坐标系翻转，参考{@link #setCropRect(Rect, int, int)}
+     * @param rect 相对于surfaceView的区域，坐标系为横屏
+     * @param previewRect surfaceView的区域，坐标系为横屏
      */
     public void setCropRect(Rect rect,Rect previewRect){
-        this.mCropRect = rect;
-        this.mPreviewRect = previewRect;
-        if(null != mPreviewRect){
-            previewHeight = mPreviewRect.height();
-            previewWidth = mPreviewRect.width();
+        synchronized (this) {
+            this.mCropRect = rect;
+            this.mPreviewRect = previewRect;
+            this.mCropRectInView = false;
+        }
+        updateScanRect();
+    }
+
+    /**
+     * 自定义裁剪区域，直接使用预览视图中的坐标
+     * 不需要自己按照横屏坐标系翻转，会根据相机预览的显示角度换算为相机画面中的区域
+     * @param rect 相对于surfaceView的区域，例如扫描框在surfaceView中的位置
+     * @param viewWidth surfaceView的宽度
+     * @param viewHeight surfaceView的高度
+     */
+    public void setCropRect(Rect rect, int viewWidth, int viewHeight){
+        synchronized (this) {
+            this.mCropRect = rect;
+            this.mPreviewRect = null == rect ? null : new Rect(0, 0, viewWidth, viewHeight);
+            this.mCropRectInView = true;
         }
+        updateScanRect();
+    }
+
+    /**
+     * 设置解码线程数量，在onResume之前调用生效
+     * 默认根据CPU核心数自动选择
+     * @param decodeThreadCount 解码线程数量，小于等于0表示自动选择
+     */
+    public void setDecodeThreadCount(int decodeThreadCount) {
+        this.decodeThreadCount = decodeThreadCount;
+    }
+
+    /**
+     * 设置是否开启降采样解码，默认开启
+     * 预览区域很大的时候先在2倍或者4倍降采样的画面上解码，失败之后再使用原始分辨率
+     * 大而近的二维码可以节省大部分的解码时间，小的二维码每一帧会多一次很小的降采样解码
+     * @param pyramidEnabled true表示开启
+     */
+    public void setPyramidEnabled(boolean pyramidEnabled) {
+        this.pyramidEnabled = pyramidEnabled;
+        if(null != handler){
+            handler.setPyramidEnabled(pyramidEnabled);
+        }
+    }
+
+    /**
+     * 设置是否同时识别画面中的多个二维码，默认关闭
+     * 开启之后识别成功不会暂停扫描，每一帧中第一次出现的内容通过{@link OnMultiScanListener#onMultiScanSuccess(List)}批量通知
+     * 同一次扫描中（onResume或者restartDecode之后）相同的内容只通知一次
+     * 多码模式需要在完整的扫描区域中寻找定位点，单帧的解码耗时会比单码模式高
+     * @param multiCodeEnabled true表示开启
+     */
+    public void setMultiCodeEnabled(boolean multiCodeEnabled) {
+        this.multiCodeEnabled = multiCodeEnabled;
+        if(null != handler){
+            handler.setMultiCodeEnabled(multiCodeEnabled);
+        }
+    }
+
+    /**
+     * 设置连续扫描模式，默认关闭
+     * 开启之后识别成功不会暂停扫描，不需要在回调中调用{@link #restartDecode()}
+     * 结果通过{@link OnMultiScanListener#onMultiScanSuccess(List)}批量通知，同一个内容在冷却时间内只通知一次
+     * 适用于自助终端、流水线等需要不间断扫描的场景
+     * @param continuousScan true表示开启
+     * @param cooldownMillis 同一个内容两次通知的最小间隔，毫秒
+     */
+    public void setContinuousScan(boolean continuousScan, long cooldownMillis) {
+        this.continuousScan = continuousScan;
+        this.continuousCooldownMillis = cooldownMillis;
+        if(null != handler){
+            handler.setContinuousScan(continuousScan, cooldownMillis);
+        }
+    }
+
+    /**
+     * 设置是否允许使用camera2，默认允许，需要在onResume之前调用
+     * 允许的时候Android5.0及以上并且相机不是LEGACY级别的设备使用camera2，其余使用android.hardware.Camera
+     * camera2可以输出更高的帧率，解码时只拷贝扫描区域内的亮度数据
+     * @param camera2Enabled true表示允许
+     */
+    public void setCamera2Enabled(boolean camera2Enabled) {
+        this.camera2Enabled = camera2Enabled;
+    }
+
+    /**
+     * 开始录制预览帧，默认不录制，用于重现特定设备上扫码慢、识别不出的问题
+     * 解码流程收到的每一帧的亮度平面连同尺寸、裁剪区域和到达时间写入文件，写入在单独的线程中进行，跟不上的时候丢弃新的帧
+     * 1080p的预览每一帧大约2MB，请设置合适的大小上限；页面暂停的时候自动停止
+     * @param file 录像文件，已经存在的时候会被覆盖
+     * @param maxBytes 文件大小上限，达到之后停止录制，小于等于0表示不限制
+     * @throws IOException 文件无法写入
+     */
+    public void startFrameRecording(File file, long maxBytes) throws IOException {
+        stopFrameRecording();
+        frameRecorder = FrameRecorder.open(file, maxBytes, FrameRecorder.DEFAULT_BUFFER_COUNT);
+        if(null != handler){
+            handler.setFrameRecorder(frameRecorder);
+        }
+    }
+
+    /**
+     * 停止录制预览帧，等待已经拷贝的帧写入完成之后关闭文件
+     * @return 写入文件的帧数，没有在录制的时候返回0
+     */
+    public int stopFrameRecording() {
+        FrameRecorder recorder = frameRecorder;
+        if(null == recorder){
+            return 0;
+        }
+        frameRecorder = null;
+        if(null != handler){
+            handler.setFrameRecorder(null);
+        }
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return recorder.getRecordedCount();
+    }
+
+    private CameraBackend createCameraBackend() {
+        if (camera2Enabled && Camera2Manager.isSupported(activity)) {
+            return new Camera2Manager(activity);
+        }
+        return new CameraManager(activity);
     }
 
     public void onResume(boolean shouldScan){
@@ -112,7 +278,7 @@ public class CaptureActivityDelegate {
         // first launch. That led to bugs where the scanning rectangle was the
         // wrong size and partially
         // off screen.
-        cameraManager = new CameraManager(activity);
+        cameraManager = createCameraBackend();
 
         handler = null;
 
@@ -131,6 +297,10 @@ public class CaptureActivityDelegate {
     }
 
     public void onPrePause(){
+        stopFrameRecording();
+        if (handler != null && null != onDecodeMetricsListener) {
+            reportDecodeMetrics(handler.getDecodeMetrics());
+        }
         if (handler != null) {
             handler.shutDown();
             handler = null;
@@ -157,9 +327,16 @@ public class CaptureActivityDelegate {
         try {
 
             cameraManager.openDriver(surfaceHolder);
+            // 打开之后才有相机配置，重新换算裁剪区域并通知给新的相机
+            updateScanRect();
 
             if (handler == null) {
-                handler = new CaptureActivityHandler(this, cameraManager,shouldScan);
+                handler = new CaptureActivityHandler(this, cameraManager,shouldScan,decodeThreadCount);
+                handler.setPyramidEnabled(pyramidEnabled);
+                handler.setMultiCodeEnabled(multiCodeEnabled);
+                handler.setContinuousScan(continuousScan, continuousCooldownMillis);
+                handler.setFrameRecorder(frameRecorder);
+                handler.setMetricsReporting(metricsIntervalMillis);
             }
         } catch (IOException ioe) {
             ioe.printStackTrace();
@@ -178,26 +355,50 @@ public class CaptureActivityDelegate {
         }
     }
 
+    /**
+     * 获取相机分辨率下的裁剪区域，直接返回换算好的结果，不加锁，可以在任意线程中频繁调用
+     * @return 裁剪区域，null表示使用完整的画面
+     */
     public Rect getCropRect() {
-        if(null == mPreviewRect){
-            return mCropRect;
-        }
-        Camera.Size size = cameraManager.getPreviewSize();
-        int width = size.width;
-        int height = size.height;
+        return mScanRect;
+    }
 
-        if(previewHeight != height || previewWidth != width) {
-            previewWidth = width;
-            previewHeight = height;
+    /**
+     * 裁剪区域或者相机配置变化之后重新换算，并通知给相机
+     * 只在设置裁剪区域和打开相机的时候调用，不在解码的路径上
+     */
+    private void updateScanRect() {
+        CameraBackend backend = cameraManager;
+        CameraSettings settings = null == backend ? null : backend.getCameraSettings();
+        Rect rect;
+        synchronized (this) {
+            if(null == mCropRect){
+                rect = null;
+            } else if(null == mPreviewRect){
+                // 复制一份，外部之后修改传入的区域不会影响已经发布的结果
+                rect = new Rect(mCropRect);
+            } else if (null == settings) {
+                rect = null;
+            } else {
+                rect = computeScanRect(settings);
+            }
+            mScanRect = rect;
+        }
+        if(null != backend){
+            // 相机只需要输出区域内的画面
+            backend.setScanRect(rect);
+        }
+    }
 
-            double widthRatio = width * 1.0 / mPreviewRect.width();
-            double heightRatio = height * 1.0 / mPreviewRect.height();
-            mCropRect.left = (int) (mCropRect.left * widthRatio);
-            mCropRect.right = (int) (mCropRect.right * widthRatio);
-            mCropRect.top = (int) (mCropRect.top * heightRatio);
-            mCropRect.bottom = (int) (mCropRect.bottom * heightRatio);
+    private Rect computeScanRect(CameraSettings settings) {
+        int orientation = mCropRectInView ? settings.displayOrientation : 0;
+        if(!CropTransform.map(mCropRect.left, mCropRect.top, mCropRect.right, mCropRect.bottom,
+                mPreviewRect.width(), mPreviewRect.height(), settings.previewWidth, settings.previewHeight,
+                orientation, mScanBounds)){
+            // 区域在画面之外，使用完整的画面
+            return null;
         }
-        return mCropRect;
+        return new Rect(mScanBounds[0], mScanBounds[1], mScanBounds[2], mScanBounds[3]);
     }
 
     /**
@@ -213,6 +414,41 @@ public class CaptureActivityDelegate {
         }
     }
 
+    /**
+     * 多码模式或者连续模式下识别出了新的二维码
+     * @param results 解析结果
+     */
+    void decodeBatchSuccess(List<String> results) {
+        inactivityTimer.onActivity();
+        beepManager.playBeepSoundAndVibrate();
+
+        if(onStatusListener instanceof OnMultiScanListener){
+            ((OnMultiScanListener) onStatusListener).onMultiScanSuccess(results);
+        }
+    }
+
+    /**
+     * 跳过了部分预览帧
+     * @param reason 跳过的原因
+     * @param skippedFrames 跳过的帧数
+     * @param totalFrames 收到的帧数
+     */
+    void framesSkipped(int reason, int skippedFrames, int totalFrames) {
+        if(onStatusListener instanceof OnFramesSkippedListener){
+            ((OnFramesSkippedListener) onStatusListener).onFramesSkipped(reason, skippedFrames, totalFrames);
+        }
+    }
+
+    /**
+     * 通知解码统计
+     * @param metrics 统计快照
+     */
+    void reportDecodeMetrics(DecodeMetrics metrics) {
+        if(null != onDecodeMetricsListener && null != metrics){
+            onDecodeMetricsListener.onDecodeMetrics(metrics);
+        }
+    }
+
     /**
      * 暂停解析任务
      */
@@ -231,6 +467,17 @@ public class CaptureActivityDelegate {
         }
     }
 
+    /**
+     * 获取本次扫描的解码统计，例如每种二值化方式的使用次数和耗时、丢帧和跳帧的数量
+     * @return 统计快照，相机没有启动的时候返回null
+     */
+    public DecodeMetrics getDecodeMetrics(){
+        if(null != handler) {
+            return handler.getDecodeMetrics();
+        }
+        return null;
+    }
+
     public void setTorch(boolean isTorch){
         if(null != cameraManager) {
             cameraManager.setTorch(isTorch);
@@ -16,20 +16,21 @@
 
 package indi.fanjh.qrscanlib.core;
 
-import android.graphics.Rect;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Message;
 
 import com.google.zxing.Result;
 
+import java.util.List;
+
 /**
  * @author fanjh
  * @date 2018/3/30 14:21
  * @description 扫描执行类
- * @note
+ * @note 开启耗时统计之后定时把统计快照交给代理，同时记录结果从解码线程到主线程的耗时
+ * 设置了{@link ScanTracer}的时候每一条消息的处理都会写入跟踪
  **/
-final class CaptureActivityHandler extends Handler {
+final class CaptureActivityHandler extends Handler implements ScanCallback {
     /**
      * 重新开始识别二维码
      */
@@ -38,30 +39,62 @@ final class CaptureActivityHandler extends Handler {
      * 图像解析成功
      */
     private static final int MSG_DECODE_SUCCESS = 2;
-    /**
-     * 图像解析失败
-     */
-    private static final int MSG_DECODE_FAIL = 3;
     /**
      * 暂停识别任务
      */
     private static final int MSG_PAUSE_DECODE = 4;
+    /**
+     * 跳帧统计
+     */
+    private static final int MSG_FRAMES_SKIPPED = 5;
+    /**
+     * 多码模式或者连续模式下识别出一批新的二维码
+     */
+    private static final int MSG_DECODE_BATCH = 6;
+    /**
+     * 定时通知解码统计
+     */
+    private static final int MSG_REPORT_METRICS = 7;
+    /**
+     * 按照消息编号排列的跟踪名称，提前拼接好，处理消息的时候不需要拼接字符串
+     */
+    private static final String[] TRACE_NAMES = {
+            ScanTrace.HANDLER_PREFIX + "unknown",
+            ScanTrace.HANDLER_PREFIX + "restartDecode",
+            ScanTrace.HANDLER_PREFIX + "decodeSuccess",
+            ScanTrace.HANDLER_PREFIX + "unknown",
+            ScanTrace.HANDLER_PREFIX + "pauseDecode",
+            ScanTrace.HANDLER_PREFIX + "framesSkipped",
+            ScanTrace.HANDLER_PREFIX + "decodeBatch",
+            ScanTrace.HANDLER_PREFIX + "reportMetrics"
+    };
 
-    private HandlerThread thread;
-    private ScanHandler scanHandler;
+    private ScanDispatcher dispatcher;
     private final CaptureActivityDelegate activity;
-    private final CameraManager cameraManager;
+    private final CameraBackend cameraManager;
+    private long metricsIntervalMillis;
+    /**
+     * 解码线程发出结果的时间，用于统计到达主线程的耗时，没有开启统计的时候为0
+     */
+    private volatile long successPostedNanos;
+    private volatile long batchPostedNanos;
 
-    CaptureActivityHandler(CaptureActivityDelegate activity, CameraManager cameraManager, boolean shouldScan) {
+    /**
+     * @param activity        扫码代理
+     * @param cameraManager   相机管理
+     * @param shouldScan      是否直接开始扫描
+     * @param decodeThreadCount 解码线程数量，小于等于0表示根据CPU核心数自动选择
+     */
+    CaptureActivityHandler(CaptureActivityDelegate activity, CameraBackend cameraManager, boolean shouldScan,
+                           int decodeThreadCount) {
         this.activity = activity;
         //启动子线程用于处理解码任务
-        thread = new HandlerThread("scan_thread");
-        thread.start();
-        scanHandler = new ScanHandler(thread.getLooper(), cameraManager, this);
+        dispatcher = new ScanDispatcher(cameraManager, this, decodeThreadCount, ScanHandler.FACTORY);
 
         // Start ourselves capturing previews and decoding.
         this.cameraManager = cameraManager;
 
+        cameraManager.setPreviewBufferCount(dispatcher.getWorkerCount() + 2);
         cameraManager.startPreview();
         if(shouldScan){
             sendMessageDelayed(Message.obtain(this, CaptureActivityHandler.MSG_RESTART_DECODE),100);
@@ -70,19 +103,52 @@ final class CaptureActivityHandler extends Handler {
 
     @Override
     public void handleMessage(Message message) {
-        if(null == thread){
+        if(null == dispatcher){
+            return;
+        }
+        ScanTracer tracer = ScanTrace.getTracer();
+        if(null == tracer){
+            handleScanMessage(message);
             return;
         }
+        tracer.beginSection(message.what >= 0 && message.what < TRACE_NAMES.length
+                ? TRACE_NAMES[message.what] : TRACE_NAMES[0]);
+        try {
+            handleScanMessage(message);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    private void handleScanMessage(Message message) {
         switch (message.what) {
             case MSG_DECODE_SUCCESS:
+                recordDeliver(successPostedNanos);
+                successPostedNanos = 0;
                 activity.decodeSuccess((Result) message.obj);
                 break;
-            case MSG_DECODE_FAIL:
             case MSG_RESTART_DECODE:
-                cameraManager.requestPreviewFrame(scanHandler);
+                dispatcher.start();
+                cameraManager.setFrameConsumer(dispatcher);
+                break;
+            case MSG_DECODE_BATCH:
+                recordDeliver(batchPostedNanos);
+                batchPostedNanos = 0;
+                List<String> results = dispatcher.takeResults();
+                if(null != results){
+                    activity.decodeBatchSuccess(results);
+                }
+                break;
+            case MSG_FRAMES_SKIPPED:
+                activity.framesSkipped((Integer) message.obj, message.arg1, message.arg2);
                 break;
             case MSG_PAUSE_DECODE:
-                cameraManager.requestPreviewFrame(null);
+                cameraManager.setFrameConsumer(null);
+                dispatcher.stop();
+                break;
+            case MSG_REPORT_METRICS:
+                activity.reportDecodeMetrics(getDecodeMetrics());
+                sendEmptyMessageDelayed(MSG_REPORT_METRICS, metricsIntervalMillis);
                 break;
             default:
                 break;
@@ -95,30 +161,38 @@ final class CaptureActivityHandler extends Handler {
     void shutDown() {
         cameraManager.stopPreview();
 
-        if(null != scanHandler) {
-            scanHandler.removeCallbacksAndMessages(null);
-            scanHandler = null;
+        if(null != dispatcher) {
+            dispatcher.quit();
+            dispatcher = null;
         }
 
         removeCallbacksAndMessages(null);
+    }
 
-        thread.quit();
-        thread = null;
+    @Override
+    public void decodeSuccess(Result rawResult, long timestampNanos){
+        successPostedNanos = postedNanos();
+        Message.obtain(this, CaptureActivityHandler.MSG_DECODE_SUCCESS, rawResult).sendToTarget();
     }
 
     /**
-     * 解析成功
-     * @param rawResult 结果
+     * 多码模式或者连续模式下识别出了新的二维码，结果在处理消息的时候从分发者取走
      */
-    void decodeSuccess(Result rawResult){
-        Message.obtain(this, CaptureActivityHandler.MSG_DECODE_SUCCESS, rawResult).sendToTarget();
+    @Override
+    public void decodeBatchSuccess(){
+        batchPostedNanos = postedNanos();
+        Message.obtain(this, CaptureActivityHandler.MSG_DECODE_BATCH).sendToTarget();
     }
 
     /**
-     * 解析失败
+     * 跳过了部分预览帧
+     * @param reason 跳过的原因
+     * @param skippedFrames 跳过的帧数
+     * @param totalFrames 收到的帧数
      */
-    void decodeFail(){
-        Message.obtain(this, CaptureActivityHandler.MSG_DECODE_FAIL).sendToTarget();
+    @Override
+    public void framesSkipped(int reason, int skippedFrames, int totalFrames){
+        Message.obtain(this, CaptureActivityHandler.MSG_FRAMES_SKIPPED, skippedFrames, totalFrames, reason).sendToTarget();
     }
 
     /**
@@ -135,8 +209,96 @@ final class CaptureActivityHandler extends Handler {
         Message.obtain(this, CaptureActivityHandler.MSG_PAUSE_DECODE).sendToTarget();
     }
 
-    Rect getScanRect(){
-        return activity.getCropRect();
+    /**
+     * 获取解码统计
+     * @return 统计快照，已经终止的时候返回null
+     */
+    DecodeMetrics getDecodeMetrics(){
+        ScanDispatcher current = dispatcher;
+        if(null == current){
+            return null;
+        }
+        DecodeMetrics metrics = new DecodeMetrics();
+        current.snapshotMetrics(metrics);
+        return metrics;
+    }
+
+    /**
+     * 设置耗时统计的通知间隔
+     * @param intervalMillis 间隔，毫秒，小于等于0表示关闭统计
+     */
+    void setMetricsReporting(long intervalMillis){
+        ScanDispatcher current = dispatcher;
+        if(null == current){
+            return;
+        }
+        metricsIntervalMillis = intervalMillis;
+        current.setStageMetricsEnabled(intervalMillis > 0);
+        removeMessages(MSG_REPORT_METRICS);
+        if(intervalMillis > 0){
+            sendEmptyMessageDelayed(MSG_REPORT_METRICS, intervalMillis);
+        }
+    }
+
+    /**
+     * @return 开启了统计的时候返回当前时间，否则返回0
+     */
+    private long postedNanos(){
+        ScanDispatcher current = dispatcher;
+        return null != current && null != current.getStageMetrics() ? System.nanoTime() : 0;
+    }
+
+    private void recordDeliver(long postedNanos){
+        StageMetrics metrics = dispatcher.getStageMetrics();
+        if(0 != postedNanos && null != metrics){
+            metrics.record(DecodeMetrics.STAGE_DELIVER, System.nanoTime() - postedNanos);
+        }
+    }
+
+    /**
+     * 设置是否先降采样解码
+     * @param pyramidEnabled true表示开启
+     */
+    void setPyramidEnabled(boolean pyramidEnabled){
+        ScanDispatcher current = dispatcher;
+        if(null != current){
+            current.setPyramidEnabled(pyramidEnabled);
+        }
+    }
+
+    /**
+     * 设置是否同时识别多个二维码
+     * @param multiCodeEnabled true表示开启
+     */
+    void setMultiCodeEnabled(boolean multiCodeEnabled){
+        ScanDispatcher current = dispatcher;
+        if(null != current){
+            current.setMultiCodeEnabled(multiCodeEnabled);
+        }
+    }
+
+    /**
+     * 设置连续扫描模式
+     * @param continuousEnabled true表示开启
+     * @param cooldownMillis 同一个内容两次通知的最小间隔
+     */
+    void setContinuousScan(boolean continuousEnabled, long cooldownMillis){
+        ScanDispatcher current = dispatcher;
+        if(null != current){
+            current.setResultCooldown(cooldownMillis);
+            current.setContinuousEnabled(continuousEnabled);
+        }
+    }
+
+    /**
+     * 设置预览帧录制
+     * @param frameRecorder 录制者，null表示停止录制
+     */
+    void setFrameRecorder(FrameRecorder frameRecorder){
+        ScanDispatcher current = dispatcher;
+        if(null != current){
+            current.setFrameRecorder(frameRecorder);
+        }
     }
 
 }
@@ -0,0 +1,82 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 裁剪区域坐标换算
+ * @note 将预览视图中的一块区域换算为相机原始NV21画面中的区域
+ * 1.相机输出的画面方向固定为传感器方向，预览视图显示之前按照setDisplayOrientation顺时针旋转
+ * 2.这里反向旋转区域的四个边，而不是旋转每一帧的像素，解码线程直接按照换算之后的区域裁剪
+ * 3.默认预览画面拉伸铺满视图，按照宽高比例缩放
+ * 只在裁剪区域或者相机配置变化的时候计算一次，结果由调用者保存
+ **/
+final class CropTransform {
+
+    private CropTransform() {
+    }
+
+    /**
+     * 换算区域
+     *
+     * @param left         视图中区域的左边
+     * @param top          视图中区域的上边
+     * @param right        视图中区域的右边
+     * @param bottom       视图中区域的下边
+     * @param viewWidth    视图宽度
+     * @param viewHeight   视图高度
+     * @param sensorWidth  相机画面宽度
+     * @param sensorHeight 相机画面高度
+     * @param orientation  预览的显示角度，0、90、180或者270
+     * @param out          输出画面中的区域，依次为left、top、right、bottom
+     * @return 区域是否有效，区域和画面没有交集的时候返回false
+     */
+    static boolean map(int left, int top, int right, int bottom, int viewWidth, int viewHeight,
+                       int sensorWidth, int sensorHeight, int orientation, int[] out) {
+        if (viewWidth <= 0 || viewHeight <= 0) {
+            return false;
+        }
+        switch (orientation) {
+            case 0:
+                out[0] = scale(left, sensorWidth, viewWidth);
+                out[1] = scale(top, sensorHeight, viewHeight);
+                out[2] = scale(right, sensorWidth, viewWidth);
+                out[3] = scale(bottom, sensorHeight, viewHeight);
+                break;
+            case 90:
+                // 画面顺时针旋转90度显示，视图的纵向对应画面的横向
+                out[0] = scale(top, sensorWidth, viewHeight);
+                out[1] = scale(viewWidth - right, sensorHeight, viewWidth);
+                out[2] = scale(bottom, sensorWidth, viewHeight);
+                out[3] = scale(viewWidth - left, sensorHeight, viewWidth);
+                break;
+            case 180:
+                out[0] = scale(viewWidth - right, sensorWidth, viewWidth);
+                out[1] = scale(viewHeight - bottom, sensorHeight, viewHeight);
+                out[2] = scale(viewWidth - left, sensorWidth, viewWidth);
+                out[3] = scale(viewHeight - top, sensorHeight, viewHeight);
+                break;
+            case 270:
+                out[0] = scale(viewHeight - bottom, sensorWidth, viewHeight);
+                out[1] = scale(left, sensorHeight, viewWidth);
+                out[2] = scale(viewHeight - top, sensorWidth, viewHeight);
+                out[3] = scale(right, sensorHeight, viewWidth);
+                break;
+            default:
+                throw new IllegalArgumentException("orientation must be 0, 90, 180 or 270: " + orientation);
+        }
+        out[0] = clamp(out[0], sensorWidth);
+        out[1] = clamp(out[1], sensorHeight);
+        out[2] = clamp(out[2], sensorWidth);
+        out[3] = clamp(out[3], sensorHeight);
+        return out[2] > out[0] && out[3] > out[1];
+    }
+
+    private static int scale(int value, int to, int from) {
+        return (int) ((long) value * to / from);
+    }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+}
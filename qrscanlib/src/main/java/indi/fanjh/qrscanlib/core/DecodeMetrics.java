@@ -0,0 +1,221 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 解码统计
+ * @note 通过{@link CaptureActivityDelegate#getDecodeMetrics()}获取，是获取时刻的快照，之后不会再变化
+ * 统计范围为本次扫描开始（onResume或者restartDecode）以来
+ * 包括收到、丢弃和跳过的帧数，以及流水线各阶段的耗时分布
+ * 耗时分布只有通过{@link CaptureActivityDelegate#setOnDecodeMetricsListener(OnDecodeMetricsListener, long)}开启之后才会记录，
+ * 没有开启的时候{@link #getStageHistogram(int)}的记录次数都是0
+ **/
+public final class DecodeMetrics {
+    /**
+     * 分块局部阈值的二值化，对光照不均匀的画面效果好，计算量较大
+     */
+    public static final int BINARIZER_HYBRID = 0;
+    /**
+     * 全局直方图阈值的二值化，只适合光照均匀的画面，计算量很小
+     */
+    public static final int BINARIZER_GLOBAL_HISTOGRAM = 1;
+    static final int BINARIZER_COUNT = 2;
+
+    /**
+     * 相邻两帧到达的间隔，反映相机实际的输出帧率
+     */
+    public static final int STAGE_FRAME_INTERVAL = 0;
+    /**
+     * 帧到达到开始解码的等待时间，包括等待空闲的解码线程和解码线程的消息队列
+     */
+    public static final int STAGE_QUEUE_WAIT = 1;
+    /**
+     * 准备亮度数据，包括计算解码区域、画面静止和清晰度检查、光照检查以及降采样，被跳过的帧不计入
+     */
+    public static final int STAGE_LUMINANCE = 2;
+    /**
+     * 二值化，同一帧回退或者降采样失败之后重试的时候每次分别计入
+     */
+    public static final int STAGE_BINARIZE = 3;
+    /**
+     * 寻找定位点和透视变换，多码模式下定位和解码无法拆分，全部计入{@link #STAGE_DECODE}
+     */
+    public static final int STAGE_DETECT = 4;
+    /**
+     * 纠错和解析内容，只有找到定位点的尝试才会计入
+     */
+    public static final int STAGE_DECODE = 5;
+    /**
+     * 解码线程发出结果到主线程开始处理的时间
+     */
+    public static final int STAGE_DELIVER = 6;
+    public static final int STAGE_COUNT = 7;
+    private static final String[] STAGE_NAMES = {
+            "interval", "queue", "luminance", "binarize", "detect", "decode", "deliver"
+    };
+
+    final int[] binarizeCounts = new int[BINARIZER_COUNT];
+    final int[] successCounts = new int[BINARIZER_COUNT];
+    final long[] binarizeNanos = new long[BINARIZER_COUNT];
+    int lastBinarizer = BINARIZER_HYBRID;
+    long lastBinarizeNanos;
+    int uniqueCodeCount;
+    long sessionMillis;
+    int frameCount;
+    int droppedFrameCount;
+    final int[] skippedFrameCounts = new int[OnFramesSkippedListener.SKIP_REASON_STILL + 1];
+    final LatencyHistogram[] stageHistograms = new LatencyHistogram[STAGE_COUNT];
+
+    DecodeMetrics() {
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+            stageHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @return 最近一帧使用的二值化方式，{@link #BINARIZER_HYBRID}或者{@link #BINARIZER_GLOBAL_HISTOGRAM}
+     */
+    public int getLastBinarizer() {
+        return lastBinarizer;
+    }
+
+    /**
+     * @return 最近一帧二值化的耗时，纳秒
+     */
+    public long getLastBinarizeNanos() {
+        return lastBinarizeNanos;
+    }
+
+    /**
+     * @param binarizer 二值化方式
+     * @return 使用该方式二值化的次数，同一帧回退到另一种方式的时候两种都会计数
+     */
+    public int getBinarizeCount(int binarizer) {
+        return binarizeCounts[binarizer];
+    }
+
+    /**
+     * @param binarizer 二值化方式
+     * @return 使用该方式二值化之后解码成功的次数
+     */
+    public int getSuccessCount(int binarizer) {
+        return successCounts[binarizer];
+    }
+
+    /**
+     * @param binarizer 二值化方式
+     * @return 该方式平均每帧二值化的耗时，纳秒
+     */
+    public long getAverageBinarizeNanos(int binarizer) {
+        int count = binarizeCounts[binarizer];
+        return count == 0 ? 0 : binarizeNanos[binarizer] / count;
+    }
+
+    /**
+     * @return 多码模式或者连续模式下本次扫描通知的二维码数量
+     */
+    public int getUniqueCodeCount() {
+        return uniqueCodeCount;
+    }
+
+    /**
+     * @return 本次扫描已经进行的时间，毫秒
+     */
+    public long getSessionMillis() {
+        return sessionMillis;
+    }
+
+    /**
+     * @return 多码模式或者连续模式下平均每秒通知的二维码数量
+     */
+    public float getUniqueCodesPerSecond() {
+        return sessionMillis <= 0 ? 0 : uniqueCodeCount * 1000f / sessionMillis;
+    }
+
+    /**
+     * @return 本次扫描收到的帧数
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return 解码线程全部忙碌，被更新的帧替换而没有解码的帧数
+     */
+    public int getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    /**
+     * @param reason 跳过的原因，{@link OnFramesSkippedListener#SKIP_REASON_BLUR}或者{@link OnFramesSkippedListener#SKIP_REASON_STILL}
+     * @return 因为该原因跳过的帧数
+     */
+    public int getSkippedFrameCount(int reason) {
+        return skippedFrameCounts[reason];
+    }
+
+    /**
+     * @param stage 阶段，例如{@link #STAGE_BINARIZE}
+     * @return 该阶段的耗时分布
+     */
+    public LatencyHistogram getStageHistogram(int stage) {
+        return stageHistograms[stage];
+    }
+
+    void copyFrom(DecodeMetrics other) {
+        System.arraycopy(other.binarizeCounts, 0, binarizeCounts, 0, BINARIZER_COUNT);
+        System.arraycopy(other.successCounts, 0, successCounts, 0, BINARIZER_COUNT);
+        System.arraycopy(other.binarizeNanos, 0, binarizeNanos, 0, BINARIZER_COUNT);
+        lastBinarizer = other.lastBinarizer;
+        lastBinarizeNanos = other.lastBinarizeNanos;
+        uniqueCodeCount = other.uniqueCodeCount;
+        sessionMillis = other.sessionMillis;
+        frameCount = other.frameCount;
+        droppedFrameCount = other.droppedFrameCount;
+        System.arraycopy(other.skippedFrameCounts, 0, skippedFrameCounts, 0, skippedFrameCounts.length);
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+            stageHistograms[i].copyFrom(other.stageHistograms[i]);
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < BINARIZER_COUNT; ++i) {
+            binarizeCounts[i] = 0;
+            successCounts[i] = 0;
+            binarizeNanos[i] = 0;
+        }
+        lastBinarizer = BINARIZER_HYBRID;
+        lastBinarizeNanos = 0;
+        uniqueCodeCount = 0;
+        sessionMillis = 0;
+        frameCount = 0;
+        droppedFrameCount = 0;
+        for (int i = 0; i < skippedFrameCounts.length; ++i) {
+            skippedFrameCounts[i] = 0;
+        }
+        for (LatencyHistogram histogram : stageHistograms) {
+            histogram.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder stages = new StringBuilder();
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+            if (stageHistograms[i].getCount() > 0) {
+                stages.append(", ").append(STAGE_NAMES[i]).append("=[").append(stageHistograms[i]).append(']');
+            }
+        }
+        return "DecodeMetrics{hybrid=" + successCounts[BINARIZER_HYBRID] + "/" + binarizeCounts[BINARIZER_HYBRID]
+                + " avg " + getAverageBinarizeNanos(BINARIZER_HYBRID) / 1000 + "us"
+                + ", global=" + successCounts[BINARIZER_GLOBAL_HISTOGRAM] + "/" + binarizeCounts[BINARIZER_GLOBAL_HISTOGRAM]
+                + " avg " + getAverageBinarizeNanos(BINARIZER_GLOBAL_HISTOGRAM) / 1000 + "us"
+                + ", last=" + lastBinarizer + " " + lastBinarizeNanos / 1000 + "us"
+                + ", unique=" + uniqueCodeCount + " in " + sessionMillis + "ms"
+                + ", frames=" + frameCount + " dropped " + droppedFrameCount
+                + " blur " + skippedFrameCounts[OnFramesSkippedListener.SKIP_REASON_BLUR]
+                + " still " + skippedFrameCounts[OnFramesSkippedListener.SKIP_REASON_STILL]
+                + stages + "}";
+    }
+
+}
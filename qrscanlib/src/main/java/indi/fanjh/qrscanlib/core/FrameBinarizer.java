@@ -0,0 +1,45 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.NotFoundException;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 解码线程持有的二值化缓存
+ * @note 同一个裁剪尺寸下复用同一套数据源、二值化和BinaryBitmap，稳定扫描的时候每一帧不会产生新的对象
+ * BinaryBitmap会缓存第一次拿到的BitMatrix，而这里的BitMatrix本身就是复用的，所以每一帧重新二值化即可
+ * 非线程安全，每个解码线程各自持有一个
+ **/
+final class FrameBinarizer {
+    private ReusableLuminanceSource source;
+    private ReusableBinarizer reusableBinarizer;
+    private BinaryBitmap bitmap;
+
+    /**
+     * 对一帧的指定区域进行二值化
+     *
+     * @param data       NV21数据
+     * @param dataWidth  整帧宽度
+     * @param dataHeight 整帧高度
+     * @param left       裁剪区域左边
+     * @param top        裁剪区域上边
+     * @param width      裁剪区域宽度
+     * @param height     裁剪区域高度
+     * @param binarizer  二值化方式，见{@link DecodeMetrics#BINARIZER_HYBRID}
+     * @return 已经完成二值化的BinaryBitmap，下一次调用之前有效
+     * @throws NotFoundException 使用全局直方图并且对比度不足
+     */
+    BinaryBitmap binarize(byte[] data, int dataWidth, int dataHeight,
+                          int left, int top, int width, int height, int binarizer) throws NotFoundException {
+        if (null == source || source.getWidth() != width || source.getHeight() != height) {
+            source = new ReusableLuminanceSource(width, height);
+            reusableBinarizer = new ReusableBinarizer(source);
+            bitmap = new BinaryBitmap(reusableBinarizer);
+        }
+        source.reset(data, dataWidth, dataHeight, left, top);
+        reusableBinarizer.binarize(binarizer);
+        return bitmap;
+    }
+
+}
@@ -0,0 +1,24 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 帧的消费者
+ * @note 在{@link FrameSource}输出帧的线程中回调，不能做耗时操作
+ **/
+interface FrameConsumer {
+
+    /**
+     * 收到一帧
+     *
+     * @param data           亮度平面，第y行第x列的像素为data[y * stride + x]
+     * @param width          宽度
+     * @param height         高度
+     * @param stride         行跨度，不小于宽度
+     * @param scanRect       这一帧的扫描区域，依次为left、top、right、bottom，null表示完整的画面
+     *                       帧来源只保证区域内的像素是这一帧的，解码不会读取区域之外的像素；数组交出之后不能再修改
+     * @param timestampNanos 帧到达的时间，和System.nanoTime()使用相同的时间基准
+     */
+    void onFrame(byte[] data, int width, int height, int stride, int[] scanRect, long timestampNanos);
+
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2010 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.DecoderResult;
+import com.google.zxing.common.DetectorResult;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+import com.google.zxing.qrcode.decoder.Decoder;
+import com.google.zxing.qrcode.decoder.QRCodeDecoderMetaData;
+import com.google.zxing.qrcode.detector.Detector;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 单帧解码
+ * @note 不依赖Android的线程和消息，每一个解码线程持有一个实例，同一时间只解码一帧
+ * 一帧的处理过程：
+ * 1.{@link RoiTracker}根据上一次的定位点收缩解码区域，二维码保持在画面中的时候只解码它附近的区域
+ * 2.{@link MotionGate}跳过和上一次失败的帧几乎一样的画面，{@link SharpnessGate}跳过对焦过程中模糊的画面
+ * 3.{@link BinarizerSelector}根据光照情况和本次扫描的成功率选择二值化方式
+ * 4.区域很大的时候先通过{@link LuminancePyramid}降采样解码，失败之后再使用原始分辨率
+ * 5.单码模式分别调用Detector和Decoder，过程和QRCodeReader一致，定位和解码的耗时可以分开统计
+ * 多码模式使用QRCodeMultiReader识别整个区域，多码模式和连续模式的结果交给分发者去重之后批量通知
+ * 亮度数据源和二值化通过{@link FrameBinarizer}在帧之间复用，定位器跟随复用的BitMatrix一起复用
+ * 稳定扫描的时候只有二值化完全不产生新的对象，ZXing的定位过程每次仍会创建几百字节的对象，识别成功的帧还会创建结果
+ * 开启了{@link StageMetrics}的时候记录各阶段的耗时，设置了{@link ScanTracer}的时候同时写入跟踪，名称见{@link ScanTrace}
+ **/
+final class FrameDecoder implements ResultPointCallback {
+    /**
+     * 检测过程中最多记录的疑似定位点数量
+     */
+    private static final int MAX_POSSIBLE_POINTS = 16;
+    private final Decoder qrDecoder;
+    private final QRCodeMultiReader multiReader;
+    private final Result[] singleResult = new Result[1];
+    private final ScanDispatcher dispatcher;
+    private final FrameBinarizer frameBinarizer = new FrameBinarizer();
+    /**
+     * 降采样平面使用单独的二值化缓存，避免和原始分辨率交替使用的时候反复重建
+     */
+    private final FrameBinarizer coarseBinarizer = new FrameBinarizer();
+    private final LuminancePyramid pyramid = new LuminancePyramid();
+    /**
+     * 定位器只持有BitMatrix和回调，BitMatrix由{@link FrameBinarizer}复用，同一个BitMatrix的定位器也可以复用
+     * 下标0对应原始分辨率，1对应降采样平面
+     */
+    private final Detector[] detectors = new Detector[2];
+    private final BitMatrix[] detectorMatrices = new BitMatrix[2];
+    private final Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+    private final ResultPoint[] possiblePoints = new ResultPoint[MAX_POSSIBLE_POINTS];
+    private int possiblePointCount;
+    /**
+     * 当前帧实际解码的区域，依次为left、top、right、bottom
+     */
+    private final int[] region = new int[4];
+    private final byte[] thumbnail = new byte[MotionGate.THUMBNAIL_SIZE];
+    /**
+     * 当前帧使用的耗时统计，null表示不统计
+     */
+    private StageMetrics frameMetrics;
+    /**
+     * 当前帧开始准备亮度数据的时间，记录之后清零
+     */
+    private long luminanceStart;
+    /**
+     * 当前帧使用的跟踪者，null表示不跟踪
+     */
+    private ScanTracer frameTracer;
+
+    FrameDecoder(ScanDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+
+        qrDecoder = new Decoder();
+        multiReader = new QRCodeMultiReader();
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, this);
+
+    }
+
+    /**
+     * 解码一帧
+     *
+     * @param data           帧数据
+     * @param width          宽度
+     * @param height         高度
+     * @param stride         行跨度
+     * @param scanRect       这一帧的扫描区域，依次为left、top、right、bottom，null表示完整的画面
+     * @param timestampNanos 帧到达的时间
+     * @param generation     分发批次
+     * @return 单码模式下的结果，失败、跳过或者结果已经交给分发者的时候返回null
+     */
+    Result decode(byte[] data, int width, int height, int stride, int[] scanRect, long timestampNanos,
+                  long generation) {
+        frameMetrics = dispatcher.getStageMetrics();
+        if (null != frameMetrics) {
+            luminanceStart = System.nanoTime();
+            frameMetrics.record(DecodeMetrics.STAGE_QUEUE_WAIT, luminanceStart - timestampNanos);
+        }
+        frameTracer = ScanTrace.getTracer();
+        beginSection(ScanTrace.DECODE_FRAME);
+        try {
+            return realDecode(data, width, height, stride, scanRect, timestampNanos / 1000000L, generation);
+        } finally {
+            endSection();
+            frameMetrics = null;
+            luminanceStart = 0;
+            frameTracer = null;
+        }
+    }
+
+    private Result realDecode(byte[] data, int width, int height, int stride, int[] scanRect, long now,
+                              long generation) {
+        beginSection(ScanTrace.PREPARE);
+        // 不旋转像素，裁剪区域已经由CropTransform换算为相机画面中的坐标
+        computeRegion(scanRect, width, height);
+        // 同上一次失败的帧几乎一样，解码的结果也不会有区别
+        MotionGate motionGate = dispatcher.getMotionGate();
+        MotionGate.sample(data, stride, region[0], region[1], region[2], region[3], thumbnail);
+        if (!motionGate.accept(thumbnail, region[0], region[1], region[2], region[3], now)) {
+            endSection();
+            dispatcher.onFrameSkipped(OnFramesSkippedListener.SKIP_REASON_STILL);
+            return null;
+        }
+        // 模糊的帧直接跳过，不参与区域跟踪
+        int sharpness = SharpnessGate.score(data, stride, region[0], region[1], region[2], region[3]);
+        if (!dispatcher.getSharpnessGate().accept(sharpness)) {
+            endSection();
+            dispatcher.onFrameSkipped(OnFramesSkippedListener.SKIP_REASON_BLUR);
+            return null;
+        }
+
+        // 光照均匀的帧优先使用全局直方图
+        boolean evenlyLit = BinarizerSelector.isEvenlyLit(data, stride, region[0], region[1], region[2], region[3]);
+        int binarizer = dispatcher.getBinarizerSelector().choose(evenlyLit);
+        int regionWidth = region[2] - region[0];
+        int regionHeight = region[3] - region[1];
+        possiblePointCount = 0;
+        endSection();
+
+        if (dispatcher.isMultiCodeEnabled()) {
+            // 多码模式交给分发者去重和通知，这里不返回单个结果
+            Result[] results = decodeMultipleRegion(data, stride, height, binarizer, evenlyLit);
+            if (null == results || !dispatcher.onResultsDecoded(results, generation)) {
+                // 没有新的二维码，画面不变的时候不需要再解码
+                motionGate.remember(thumbnail, region[0], region[1], region[2], region[3]);
+            }
+            clearPossiblePoints();
+            return null;
+        }
+        Result rawResult = null;
+        int scale = 1;
+
+        // 区域很大的时候先在降采样的平面上尝试，大而近的二维码在这里就能解出来
+        int factor = dispatcher.isPyramidEnabled() ? LuminancePyramid.chooseFactor(regionWidth, regionHeight) : 1;
+        if (factor > 1) {
+            int coarseWidth = regionWidth / factor;
+            int coarseHeight = regionHeight / factor;
+            beginSection(ScanTrace.DOWNSAMPLE);
+            byte[] coarsePlane = pyramid.downsample(data, stride, region[0], region[1],
+                    regionWidth, regionHeight, factor);
+            endSection();
+            rawResult = decodeRegion(coarseBinarizer, coarsePlane, coarseWidth, coarseHeight,
+                    0, 0, coarseWidth, coarseHeight, binarizer, evenlyLit);
+            if (null != rawResult) {
+                scale = factor;
+            } else {
+                // 不管有没有找到定位点，都回到原始分辨率，定位点以原始分辨率的检测为准
+                clearPossiblePoints();
+            }
+        }
+
+        if (null == rawResult) {
+            rawResult = decodeRegion(frameBinarizer, data, stride, height,
+                    region[0], region[1], regionWidth, regionHeight, binarizer, evenlyLit);
+        }
+        if (null == rawResult && binarizer == DecodeMetrics.BINARIZER_GLOBAL_HISTOGRAM && possiblePointCount >= 3) {
+            // 全局直方图找到了疑似定位点但是没有解出来，使用Hybrid重试
+            clearPossiblePoints();
+            rawResult = decodeRegion(frameBinarizer, data, stride, height,
+                    region[0], region[1], regionWidth, regionHeight, DecodeMetrics.BINARIZER_HYBRID, evenlyLit);
+        }
+
+        RoiTracker roiTracker = dispatcher.getRoiTracker();
+        if (null != rawResult) {
+            ResultPoint[] points = rawResult.getResultPoints();
+            roiTracker.onHit(points, null == points ? 0 : points.length, region[0], region[1], scale);
+        } else {
+            roiTracker.onMiss(possiblePoints, possiblePointCount, region[0], region[1], 1);
+            motionGate.remember(thumbnail, region[0], region[1], region[2], region[3]);
+        }
+        if (null != rawResult && dispatcher.isContinuousEnabled()) {
+            // 连续模式不停止扫描，结果交给分发者去重和通知
+            singleResult[0] = rawResult;
+            if (!dispatcher.onResultsDecoded(singleResult, generation)) {
+                // 冷却中的二维码还在画面里，画面不变的时候不需要再解码
+                motionGate.remember(thumbnail, region[0], region[1], region[2], region[3]);
+            }
+            singleResult[0] = null;
+            rawResult = null;
+        }
+        clearPossiblePoints();
+        return rawResult;
+    }
+
+    /**
+     * 使用指定的二值化方式解码亮度平面中的一块区域，同时记录耗时和结果
+     */
+    private Result decodeRegion(FrameBinarizer frameBinarizer, byte[] data, int dataWidth, int dataHeight,
+                                int left, int top, int width, int height, int binarizer, boolean evenlyLit) {
+        endLuminanceStage();
+        Result rawResult = null;
+        long start = System.nanoTime();
+        long binarizeNanos = 0;
+        try {
+            BinaryBitmap bitmap = binarize(frameBinarizer, data, dataWidth, dataHeight, left, top,
+                    width, height, binarizer);
+            binarizeNanos = System.nanoTime() - start;
+            recordStage(DecodeMetrics.STAGE_BINARIZE, binarizeNanos);
+            rawResult = detectAndDecode(bitmap, frameBinarizer == coarseBinarizer ? 1 : 0);
+        } catch (ReaderException re) {
+            // continue
+            if (binarizeNanos == 0) {
+                binarizeNanos = System.nanoTime() - start;
+                recordStage(DecodeMetrics.STAGE_BINARIZE, binarizeNanos);
+            }
+        }
+        dispatcher.getBinarizerSelector().record(binarizer, evenlyLit, binarizeNanos, null != rawResult);
+        return rawResult;
+    }
+
+    /**
+     * 和QRCodeReader.decode的过程一致，只是定位和解码分开计时
+     *
+     * @param detectorIndex 使用的定位器，见{@link #detectors}
+     */
+    private Result detectAndDecode(BinaryBitmap bitmap, int detectorIndex) throws ReaderException {
+        long start = null == frameMetrics ? 0 : System.nanoTime();
+        DetectorResult detectorResult;
+        beginSection(ScanTrace.DETECT);
+        try {
+            BitMatrix matrix = bitmap.getBlackMatrix();
+            if (detectorMatrices[detectorIndex] != matrix) {
+                detectors[detectorIndex] = new Detector(matrix);
+                detectorMatrices[detectorIndex] = matrix;
+            }
+            detectorResult = detectors[detectorIndex].detect(hints);
+        } finally {
+            endSection();
+            // 大部分的帧在这里失败，同样需要计入
+            recordStage(DecodeMetrics.STAGE_DETECT, null == frameMetrics ? 0 : System.nanoTime() - start);
+        }
+        long decodeStart = null == frameMetrics ? 0 : System.nanoTime();
+        DecoderResult decoderResult;
+        beginSection(ScanTrace.DECODE);
+        try {
+            decoderResult = qrDecoder.decode(detectorResult.getBits(), hints);
+        } finally {
+            endSection();
+            recordStage(DecodeMetrics.STAGE_DECODE, null == frameMetrics ? 0 : System.nanoTime() - decodeStart);
+        }
+        ResultPoint[] points = detectorResult.getPoints();
+        if (decoderResult.getOther() instanceof QRCodeDecoderMetaData) {
+            // 镜像的二维码需要调整定位点的顺序
+            ((QRCodeDecoderMetaData) decoderResult.getOther()).applyMirroredCorrection(points);
+        }
+        Result result = new Result(decoderResult.getText(), decoderResult.getRawBytes(), points,
+                BarcodeFormat.QR_CODE);
+        if (null != decoderResult.getByteSegments()) {
+            result.putMetadata(ResultMetadataType.BYTE_SEGMENTS, decoderResult.getByteSegments());
+        }
+        if (null != decoderResult.getECLevel()) {
+            result.putMetadata(ResultMetadataType.ERROR_CORRECTION_LEVEL, decoderResult.getECLevel());
+        }
+        if (decoderResult.hasStructuredAppend()) {
+            result.putMetadata(ResultMetadataType.STRUCTURED_APPEND_SEQUENCE,
+                    decoderResult.getStructuredAppendSequenceNumber());
+            result.putMetadata(ResultMetadataType.STRUCTURED_APPEND_PARITY,
+                    decoderResult.getStructuredAppendParity());
+        }
+        return result;
+    }
+
+    /**
+     * 第一次二值化之前调用，记录准备亮度数据的耗时
+     */
+    private void endLuminanceStage() {
+        if (null != frameMetrics && 0 != luminanceStart) {
+            frameMetrics.record(DecodeMetrics.STAGE_LUMINANCE, System.nanoTime() - luminanceStart);
+            luminanceStart = 0;
+        }
+    }
+
+    private BinaryBitmap binarize(FrameBinarizer frameBinarizer, byte[] data, int dataWidth, int dataHeight,
+                                  int left, int top, int width, int height, int binarizer) throws ReaderException {
+        beginSection(ScanTrace.BINARIZE);
+        try {
+            return frameBinarizer.binarize(data, dataWidth, dataHeight, left, top, width, height, binarizer);
+        } finally {
+            endSection();
+        }
+    }
+
+    private void beginSection(String name) {
+        if (null != frameTracer) {
+            frameTracer.beginSection(name);
+        }
+    }
+
+    private void endSection() {
+        if (null != frameTracer) {
+            frameTracer.endSection();
+        }
+    }
+
+    private void recordStage(int stage, long nanos) {
+        if (null != frameMetrics) {
+            frameMetrics.record(stage, nanos);
+        }
+    }
+
+    /**
+     * 识别当前区域中所有的二维码
+     * 多个二维码分散在画面各处，所以不使用区域跟踪和降采样
+     */
+    private Result[] decodeMultipleRegion(byte[] data, int stride, int height, int binarizer, boolean evenlyLit) {
+        Result[] results = decodeMultipleOnce(data, stride, height, binarizer, evenlyLit);
+        if (null == results && binarizer == DecodeMetrics.BINARIZER_GLOBAL_HISTOGRAM && possiblePointCount >= 3) {
+            clearPossiblePoints();
+            results = decodeMultipleOnce(data, stride, height, DecodeMetrics.BINARIZER_HYBRID, evenlyLit);
+        }
+        return results;
+    }
+
+    private Result[] decodeMultipleOnce(byte[] data, int stride, int height, int binarizer, boolean evenlyLit) {
+        endLuminanceStage();
+        Result[] results = null;
+        long start = System.nanoTime();
+        long binarizeNanos = 0;
+        try {
+            BinaryBitmap bitmap = binarize(frameBinarizer, data, stride, height, region[0], region[1],
+                    region[2] - region[0], region[3] - region[1], binarizer);
+            binarizeNanos = System.nanoTime() - start;
+            recordStage(DecodeMetrics.STAGE_BINARIZE, binarizeNanos);
+            beginSection(ScanTrace.DECODE_MULTIPLE);
+            try {
+                results = multiReader.decodeMultiple(bitmap, hints);
+            } finally {
+                endSection();
+            }
+            // 定位和解码在QRCodeMultiReader内部，无法拆分
+            recordStage(DecodeMetrics.STAGE_DECODE, System.nanoTime() - start - binarizeNanos);
+        } catch (ReaderException re) {
+            // continue
+            if (binarizeNanos == 0) {
+                binarizeNanos = System.nanoTime() - start;
+                recordStage(DecodeMetrics.STAGE_BINARIZE, binarizeNanos);
+            } else {
+                recordStage(DecodeMetrics.STAGE_DECODE, System.nanoTime() - start - binarizeNanos);
+            }
+        } finally {
+            multiReader.reset();
+        }
+        if (null != results && results.length == 0) {
+            results = null;
+        }
+        dispatcher.getBinarizerSelector().record(binarizer, evenlyLit, binarizeNanos, null != results);
+        return results;
+    }
+
+    private void clearPossiblePoints() {
+        for (int i = 0; i < possiblePointCount; ++i) {
+            possiblePoints[i] = null;
+        }
+        possiblePointCount = 0;
+    }
+
+    @Override
+    public void foundPossibleResultPoint(ResultPoint point) {
+        // 只在当前解码线程中回调
+        if (possiblePointCount < MAX_POSSIBLE_POINTS) {
+            possiblePoints[possiblePointCount++] = point;
+        }
+    }
+
+    /**
+     * 计算当前帧需要解码的区域，结果写入region
+     * 只使用随帧传入的扫描区域，帧来源可能只拷贝了区域内的像素，区域之外可能还是旧帧的内容
+     */
+    private void computeRegion(int[] scanRect, int width, int height) {
+        if (null == scanRect) {
+            region[0] = 0;
+            region[1] = 0;
+            region[2] = width;
+            region[3] = height;
+        } else {
+            region[0] = Math.max(0, scanRect[0]);
+            region[1] = Math.max(0, scanRect[1]);
+            region[2] = Math.min(width, scanRect[2]);
+            region[3] = Math.min(height, scanRect[3]);
+        }
+        if (!dispatcher.isMultiCodeEnabled()) {
+            dispatcher.getRoiTracker().computeRegion(region[0], region[1], region[2], region[3], region);
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+package indi.fanjh.qrscanlib.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 预览帧录制
+ * @note 把解码流程收到的每一帧连同尺寸、裁剪区域和到达时间写入文件，用于在其他设备上通过{@link FrameReplayer}重现扫码过程
+ * 文件格式见{@link FrameRecording}
+ * 1.帧来源的线程只把亮度平面拷贝到空闲的缓冲中，写文件在单独的线程中按帧分块进行，不会阻塞相机
+ * 2.缓冲数量固定，写入跟不上的时候直接丢弃新的帧并计数，不会无限制地占用内存
+ * 3.文件大小达到上限或者写入失败之后停止录制
+ * 默认不开启，通过{@link CaptureActivityDelegate#startFrameRecording(File, long)}开启
+ **/
+final class FrameRecorder implements Runnable {
+    static final int DEFAULT_BUFFER_COUNT = 4;
+
+    /**
+     * 等待写入的一帧
+     */
+    private static final class Slot {
+        byte[] data = new byte[0];
+        int width;
+        int height;
+        long timestampNanos;
+        int left;
+        int top;
+        int right;
+        int bottom;
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long maxBytes;
+    private final BlockingQueue<Slot> freeSlots;
+    private final BlockingQueue<Slot> filledSlots;
+    /**
+     * 通知写入线程结束
+     */
+    private final Slot stopSlot = new Slot();
+    private final ByteBuffer header = ByteBuffer.allocate(FrameRecording.FRAME_HEADER_SIZE);
+    private final ByteBuffer[] chunk = new ByteBuffer[2];
+    private final AtomicInteger recordedCount = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+    private final Thread thread;
+    private volatile boolean closed;
+    private long writtenBytes;
+    private IOException error;
+
+    private FrameRecorder(RandomAccessFile file, long maxBytes, int bufferCount) throws IOException {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.maxBytes = maxBytes;
+        freeSlots = new ArrayBlockingQueue<>(bufferCount);
+        // 多留一个位置给结束标记
+        filledSlots = new ArrayBlockingQueue<>(bufferCount + 1);
+        for (int i = 0; i < bufferCount; ++i) {
+            freeSlots.offer(new Slot());
+        }
+        channel.truncate(0);
+        ByteBuffer fileHeader = ByteBuffer.allocate(FrameRecording.FILE_HEADER_SIZE);
+        fileHeader.putInt(FrameRecording.MAGIC).putInt(FrameRecording.VERSION).flip();
+        while (fileHeader.hasRemaining()) {
+            channel.write(fileHeader);
+        }
+        writtenBytes = FrameRecording.FILE_HEADER_SIZE;
+        thread = new Thread(this, "frame_recorder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 开始录制，文件已经存在的时候会被覆盖
+     *
+     * @param file        文件
+     * @param maxBytes    文件大小上限，小于等于0表示不限制
+     * @param bufferCount 等待写入的帧数上限
+     * @return 录制者
+     * @throws IOException 文件无法写入
+     */
+    static FrameRecorder open(File file, long maxBytes, int bufferCount) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            return new FrameRecorder(randomAccessFile, maxBytes <= 0 ? Long.MAX_VALUE : maxBytes,
+                    Math.max(1, bufferCount));
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 录制一帧，在帧来源输出帧的线程中调用，只做一次拷贝
+     *
+     * @param data           亮度平面
+     * @param width          宽度
+     * @param height         高度
+     * @param stride         行跨度
+     * @param timestampNanos 帧到达的时间
+     * @param crop           裁剪区域，依次为left、top、right、bottom，null表示完整的画面
+     */
+    void record(byte[] data, int width, int height, int stride, long timestampNanos, int[] crop) {
+        if (closed) {
+            return;
+        }
+        Slot slot = freeSlots.poll();
+        if (null == slot) {
+            // 写入跟不上，丢弃这一帧，不能让相机等待
+            droppedCount.incrementAndGet();
+            return;
+        }
+        int size = width * height;
+        if (slot.data.length < size) {
+            slot.data = new byte[size];
+        }
+        if (stride == width) {
+            System.arraycopy(data, 0, slot.data, 0, size);
+        } else {
+            for (int y = 0; y < height; ++y) {
+                System.arraycopy(data, y * stride, slot.data, y * width, width);
+            }
+        }
+        slot.width = width;
+        slot.height = height;
+        slot.timestampNanos = timestampNanos;
+        if (null == crop) {
+            slot.left = -1;
+            slot.top = -1;
+            slot.right = -1;
+            slot.bottom = -1;
+        } else {
+            slot.left = crop[0];
+            slot.top = crop[1];
+            slot.right = crop[2];
+            slot.bottom = crop[3];
+        }
+        filledSlots.offer(slot);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Slot slot;
+            try {
+                slot = filledSlots.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (slot == stopSlot) {
+                break;
+            }
+            if (null == error && writtenBytes < maxBytes) {
+                try {
+                    write(slot);
+                    recordedCount.incrementAndGet();
+                } catch (IOException e) {
+                    error = e;
+                    closed = true;
+                }
+                if (writtenBytes >= maxBytes) {
+                    closed = true;
+                }
+            }
+            freeSlots.offer(slot);
+        }
+    }
+
+    private void write(Slot slot) throws IOException {
+        int size = slot.width * slot.height;
+        header.clear();
+        header.putInt(slot.width).putInt(slot.height).putLong(slot.timestampNanos)
+                .putInt(slot.left).putInt(slot.top).putInt(slot.right).putInt(slot.bottom);
+        header.flip();
+        chunk[0] = header;
+        chunk[1] = ByteBuffer.wrap(slot.data, 0, size);
+        while (chunk[1].hasRemaining()) {
+            channel.write(chunk);
+        }
+        chunk[1] = null;
+        writtenBytes += FrameRecording.FRAME_HEADER_SIZE + size;
+    }
+
+    /**
+     * 停止录制，等待已经拷贝的帧写入完成之后关闭文件
+     *
+     * @throws IOException 写入或者关闭失败
+     */
+    void close() throws IOException {
+        if (!thread.isAlive()) {
+            return;
+        }
+        closed = true;
+        filledSlots.offer(stopSlot);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        file.close();
+        if (null != error) {
+            throw error;
+        }
+    }
+
+    /**
+     * @return 已经写入文件的帧数
+     */
+    int getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    /**
+     * @return 写入跟不上而丢弃的帧数
+     */
+    int getDroppedCount() {
+        return droppedCount.get();
+    }
+
+}
@@ -0,0 +1,169 @@
+package indi.fanjh.qrscanlib.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 预览帧录像
+ * @note 读取{@link FrameRecorder}写入的文件，交给{@link FrameReplayer}回放
+ * 文件格式（大端序）：
+ * 1.文件头：魔数"QRFR"、版本号，各4字节
+ * 2.之后依次是每一帧：宽度、高度（各4字节），到达时间（8字节，System.nanoTime()的时间基准），
+ * 裁剪区域的left、top、right、bottom（各4字节，没有裁剪的时候left为-1），然后是width*height字节的亮度平面
+ * 只保存亮度平面并且去掉了行尾的填充，解码只使用亮度，NV21后面的色度数据不需要保存
+ * 打开的时候整个文件映射到内存，读取帧不需要额外的IO；录制被中断的时候最后一帧可能不完整，直接忽略
+ **/
+final class FrameRecording {
+    static final int MAGIC = 0x51524652;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int FRAME_HEADER_SIZE = 32;
+
+    /**
+     * 一帧的头信息
+     */
+    private static final class Entry {
+        final int offset;
+        final int width;
+        final int height;
+        final long timestampNanos;
+        final int left;
+        final int top;
+        final int right;
+        final int bottom;
+
+        Entry(int offset, int width, int height, long timestampNanos, int left, int top, int right, int bottom) {
+            this.offset = offset;
+            this.width = width;
+            this.height = height;
+            this.timestampNanos = timestampNanos;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final List<Entry> entries;
+
+    private FrameRecording(ByteBuffer buffer, List<Entry> entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * 打开录像文件
+     *
+     * @param file 文件
+     * @return 录像
+     * @throws IOException 文件无法读取或者不是录像文件
+     */
+    static FrameRecording open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        MappedByteBuffer mapped;
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("recording too large: " + size);
+            }
+            // 映射在文件关闭之后依然有效
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+        return new FrameRecording(mapped, parse(mapped));
+    }
+
+    private static List<Entry> parse(ByteBuffer buffer) throws IOException {
+        int limit = buffer.limit();
+        if (limit < FILE_HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a frame recording");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("unsupported recording version " + version);
+        }
+        List<Entry> entries = new ArrayList<>();
+        int offset = FILE_HEADER_SIZE;
+        while (limit - offset >= FRAME_HEADER_SIZE) {
+            int width = buffer.getInt(offset);
+            int height = buffer.getInt(offset + 4);
+            if (width <= 0 || height <= 0) {
+                throw new IOException("corrupt frame header at " + offset);
+            }
+            long frameSize = (long) width * height;
+            if (limit - offset - FRAME_HEADER_SIZE < frameSize) {
+                // 录制被中断，最后一帧不完整
+                break;
+            }
+            entries.add(new Entry(offset + FRAME_HEADER_SIZE, width, height, buffer.getLong(offset + 8),
+                    buffer.getInt(offset + 16), buffer.getInt(offset + 20),
+                    buffer.getInt(offset + 24), buffer.getInt(offset + 28)));
+            offset += FRAME_HEADER_SIZE + (int) frameSize;
+        }
+        return entries;
+    }
+
+    int getFrameCount() {
+        return entries.size();
+    }
+
+    int getWidth(int index) {
+        return entries.get(index).width;
+    }
+
+    int getHeight(int index) {
+        return entries.get(index).height;
+    }
+
+    /**
+     * @param index 帧序号
+     * @return 录制时帧到达的时间，纳秒
+     */
+    long getTimestampNanos(int index) {
+        return entries.get(index).timestampNanos;
+    }
+
+    /**
+     * 获取录制时的裁剪区域
+     *
+     * @param index 帧序号
+     * @param out   输出，依次为left、top、right、bottom
+     * @return 录制时是否有裁剪区域，没有的时候不修改输出
+     */
+    boolean getCrop(int index, int[] out) {
+        Entry entry = entries.get(index);
+        if (entry.left < 0) {
+            return false;
+        }
+        out[0] = entry.left;
+        out[1] = entry.top;
+        out[2] = entry.right;
+        out[3] = entry.bottom;
+        return true;
+    }
+
+    /**
+     * 读取一帧的亮度平面，行跨度等于宽度
+     *
+     * @param index 帧序号
+     * @param dst   输出，长度不小于width*height
+     */
+    void readFrame(int index, byte[] dst) {
+        Entry entry = entries.get(index);
+        ByteBuffer source = buffer.duplicate();
+        source.position(entry.offset);
+        source.get(dst, 0, entry.width * entry.height);
+    }
+
+}
@@ -0,0 +1,279 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.Result;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 预览帧回放
+ * @note 把{@link FrameRecording}中的帧按顺序交给和扫码页面相同的{@link ScanDispatcher}和{@link FrameDecoder}，
+ * 使用录制时的裁剪区域和到达时间，记录每一帧的解码耗时和结果
+ * 1.{@link #SPEED_MAX}：每一帧都解码，结果只取决于录像，适合对比不同版本或者不同设备的解码耗时
+ * 2.{@link #SPEED_ORIGINAL}：按照录制时的帧间隔输出，解码期间到达的帧只保留最新的一帧，其余记为丢弃，
+ * 和只有一个解码线程的扫码页面一致，用于重现"扫码慢"的现场
+ * 解码在调用线程中同步进行；单码模式下识别成功之后立即重新开始，相当于在回调中调用了restartDecode
+ **/
+final class FrameReplayer implements FrameSource, ScanCallback {
+    /**
+     * 按照录制时的帧间隔回放
+     */
+    static final int SPEED_ORIGINAL = 0;
+    /**
+     * 尽可能快地回放，每一帧都解码
+     */
+    static final int SPEED_MAX = 1;
+
+    /**
+     * 没有识别出二维码，包括被清晰度、画面静止检查跳过的帧
+     */
+    static final int STATUS_NOT_FOUND = 0;
+    static final int STATUS_DECODED = 1;
+    /**
+     * 按照原始速度回放的时候，解码期间被更新的帧替换
+     */
+    static final int STATUS_DROPPED = 2;
+
+    /**
+     * 回放结果
+     */
+    static final class Report {
+        private final int[] statuses;
+        private final long[] decodeNanos;
+        private final String[] texts;
+        private final long elapsedNanos;
+
+        Report(int[] statuses, long[] decodeNanos, String[] texts, long elapsedNanos) {
+            this.statuses = statuses;
+            this.decodeNanos = decodeNanos;
+            this.texts = texts;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        int getFrameCount() {
+            return statuses.length;
+        }
+
+        /**
+         * @param index 帧序号
+         * @return {@link #STATUS_NOT_FOUND}、{@link #STATUS_DECODED}或者{@link #STATUS_DROPPED}
+         */
+        int getStatus(int index) {
+            return statuses[index];
+        }
+
+        /**
+         * @param index 帧序号
+         * @return 解码耗时，纳秒，被丢弃的帧为0
+         */
+        long getDecodeNanos(int index) {
+            return decodeNanos[index];
+        }
+
+        /**
+         * @param index 帧序号
+         * @return 识别出的内容，多码模式下为这一帧中第一个新出现的内容，没有识别出的时候为null
+         */
+        String getText(int index) {
+            return texts[index];
+        }
+
+        /**
+         * @return 整个回放的耗时，纳秒
+         */
+        long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        int getDecodedCount() {
+            return count(STATUS_DECODED);
+        }
+
+        int getDroppedCount() {
+            return count(STATUS_DROPPED);
+        }
+
+        /**
+         * @param percent 百分位，0到100
+         * @return 解码过的帧的耗时百分位，纳秒，没有解码过任何帧的时候为0
+         */
+        long getDecodeNanosPercentile(int percent) {
+            long[] values = new long[statuses.length];
+            int count = 0;
+            for (int i = 0; i < statuses.length; ++i) {
+                if (statuses[i] != STATUS_DROPPED) {
+                    values[count++] = decodeNanos[i];
+                }
+            }
+            if (count == 0) {
+                return 0;
+            }
+            Arrays.sort(values, 0, count);
+            int index = (int) Math.ceil(count * Math.max(0, Math.min(100, percent)) / 100.0) - 1;
+            return values[Math.max(0, index)];
+        }
+
+        private int count(int status) {
+            int count = 0;
+            for (int value : statuses) {
+                if (value == status) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{frames=" + statuses.length + ", decoded=" + getDecodedCount()
+                    + ", dropped=" + getDroppedCount()
+                    + ", p50=" + getDecodeNanosPercentile(50) / 1000 + "us"
+                    + ", p99=" + getDecodeNanosPercentile(99) / 1000 + "us"
+                    + ", elapsed=" + elapsedNanos / 1000000 + "ms}";
+        }
+    }
+
+    /**
+     * 在调用线程中同步解码的解码线程
+     */
+    private final class ReplayWorker implements ScanWorker {
+        private final ScanDispatcher dispatcher;
+        private final FrameDecoder decoder;
+
+        ReplayWorker(ScanDispatcher dispatcher) {
+            this.dispatcher = dispatcher;
+            decoder = new FrameDecoder(dispatcher);
+        }
+
+        @Override
+        public void decode(byte[] data, int width, int height, int stride, int[] scanRect, long timestampNanos,
+                           long sequence, long generation) {
+            Result result = decoder.decode(data, width, height, stride, scanRect, timestampNanos, generation);
+            dispatcher.onDecodeFinished(this, data, timestampNanos, sequence, generation, result);
+        }
+
+        @Override
+        public void quit() {
+        }
+    }
+
+    private final FrameRecording recording;
+    private final int[] crop = new int[4];
+    private FrameConsumer consumer;
+    private String decodedText;
+    private boolean multiCodeEnabled;
+    private boolean pyramidEnabled = true;
+
+    FrameReplayer(FrameRecording recording) {
+        this.recording = recording;
+    }
+
+    void setMultiCodeEnabled(boolean multiCodeEnabled) {
+        this.multiCodeEnabled = multiCodeEnabled;
+    }
+
+    void setPyramidEnabled(boolean pyramidEnabled) {
+        this.pyramidEnabled = pyramidEnabled;
+    }
+
+    /**
+     * 回放整个录像，在调用线程中同步进行
+     *
+     * @param speed {@link #SPEED_ORIGINAL}或者{@link #SPEED_MAX}
+     * @return 每一帧的结果
+     */
+    Report replay(int speed) {
+        int frameCount = recording.getFrameCount();
+        int[] statuses = new int[frameCount];
+        long[] decodeNanos = new long[frameCount];
+        String[] texts = new String[frameCount];
+        ScanDispatcher dispatcher = new ScanDispatcher(this, this, 1, new ScanWorker.Factory() {
+            @Override
+            public ScanWorker create(ScanDispatcher dispatcher, int index) {
+                return new ReplayWorker(dispatcher);
+            }
+        });
+        dispatcher.setMultiCodeEnabled(multiCodeEnabled);
+        dispatcher.setPyramidEnabled(pyramidEnabled);
+        byte[] frame = new byte[0];
+        long start = System.nanoTime();
+        long firstTimestamp = frameCount > 0 ? recording.getTimestampNanos(0) : 0;
+        for (int i = 0; i < frameCount; ++i) {
+            if (speed == SPEED_ORIGINAL) {
+                long now = System.nanoTime();
+                if (i + 1 < frameCount && start + recording.getTimestampNanos(i + 1) - firstTimestamp <= now) {
+                    // 下一帧也已经到达，这一帧在等待期间被替换
+                    statuses[i] = STATUS_DROPPED;
+                    continue;
+                }
+                long due = start + recording.getTimestampNanos(i) - firstTimestamp;
+                if (due > now) {
+                    sleepNanos(due - now);
+                }
+            }
+            int width = recording.getWidth(i);
+            int height = recording.getHeight(i);
+            if (frame.length < width * height) {
+                frame = new byte[width * height];
+            }
+            recording.readFrame(i, frame);
+            // 同步解码，下一帧读取之前这一帧的区域不再使用，可以复用同一个数组
+            boolean cropped = recording.getCrop(i, crop);
+            if (null == consumer) {
+                // 上一帧识别成功，重新开始
+                dispatcher.start();
+                consumer = dispatcher;
+            }
+            decodedText = null;
+            long decodeStart = System.nanoTime();
+            consumer.onFrame(frame, width, height, width, cropped ? crop : null, recording.getTimestampNanos(i));
+            decodeNanos[i] = System.nanoTime() - decodeStart;
+            if (multiCodeEnabled) {
+                List<String> results = dispatcher.takeResults();
+                if (null != results && !results.isEmpty()) {
+                    decodedText = results.get(0);
+                }
+            }
+            statuses[i] = null == decodedText ? STATUS_NOT_FOUND : STATUS_DECODED;
+            texts[i] = decodedText;
+        }
+        dispatcher.quit();
+        consumer = null;
+        return new Report(statuses, decodeNanos, texts, System.nanoTime() - start);
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void setFrameConsumer(FrameConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public void releaseFrame(byte[] data) {
+        // 每一帧都使用同一个缓冲，同步解码完成之后才会读取下一帧
+    }
+
+    @Override
+    public void decodeSuccess(Result rawResult, long timestampNanos) {
+        decodedText = rawResult.getText();
+    }
+
+    @Override
+    public void decodeBatchSuccess() {
+        // 在每一帧解码完成之后通过takeResults取走
+    }
+
+    @Override
+    public void framesSkipped(int reason, int skippedFrames, int totalFrames) {
+    }
+
+}
@@ -0,0 +1,28 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 帧来源
+ * @note 解码流程只依赖该接口获取画面，相机只是其中一种实现
+ * 1.{@link CameraManager}和{@link Camera2Manager}输出相机的预览帧
+ * 2.{@link MemoryFrameSource}循环输出内存中的画面，不需要相机，可以在JVM中运行和测量整个解码流程
+ * 帧是亮度平面，交给{@link FrameConsumer}之后由消费者持有，处理完成或者丢弃之后通过{@link #releaseFrame(byte[])}归还
+ **/
+interface FrameSource {
+
+    /**
+     * 设置接收帧的消费者
+     *
+     * @param consumer 消费者，null表示暂停输出
+     */
+    void setFrameConsumer(FrameConsumer consumer);
+
+    /**
+     * 归还之前输出的帧，可以在任意线程调用
+     *
+     * @param data 帧数据
+     */
+    void releaseFrame(byte[] data);
+
+}
@@ -0,0 +1,157 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 耗时分布
+ * @note 以微秒为单位按照对数分桶，每个2的幂次区间再均分为8个桶，百分位的相对误差不超过12.5%
+ * 桶的数量固定，记录只是一次数组自增，不会分配内存，适合在每一帧中使用
+ * 通过{@link DecodeMetrics#getStageHistogram(int)}获取的是快照，之后不会再变化
+ **/
+public final class LatencyHistogram {
+    /**
+     * 每个2的幂次区间中的桶数，必须是2的幂
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * 能够区分的最大耗时为2的MAX_EXPONENT次方微秒，大约1分钟，更长的计入最后一个桶
+     */
+    private static final int MAX_EXPONENT = 26;
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    final int[] buckets = new int[BUCKET_COUNT];
+    int count;
+    long totalNanos;
+    long minNanos;
+    long maxNanos;
+
+    LatencyHistogram() {
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时，纳秒，小于0的按照0记录
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[bucketOf(nanos / 1000)]++;
+        if (0 == count || nanos < minNanos) {
+            minNanos = nanos;
+        }
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+        count++;
+        totalNanos += nanos;
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + sub;
+    }
+
+    /**
+     * @param bucket 桶的序号
+     * @return 桶的下界，微秒
+     */
+    static long lowerBoundMicros(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKET_COUNT;
+        return (long) (SUB_BUCKET_COUNT + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @return 记录的次数
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return 最短的耗时，纳秒，没有记录的时候为0
+     */
+    public long getMinNanos() {
+        return minNanos;
+    }
+
+    /**
+     * @return 最长的耗时，纳秒，没有记录的时候为0
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @return 平均耗时，纳秒，没有记录的时候为0
+     */
+    public long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * 估算百分位的耗时，取所在桶的中点，并且限制在最短和最长的耗时之间，最后一个样本直接返回最长的耗时
+     *
+     * @param percentile 百分位，0到100，例如50表示中位数
+     * @return 耗时，纳秒，没有记录的时候为0
+     */
+    public long getPercentileNanos(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * Math.max(0, Math.min(100, percentile)) / 100);
+        if (rank >= count) {
+            return maxNanos;
+        }
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                long lower = lowerBoundMicros(i);
+                long upper = i + 1 < BUCKET_COUNT ? lowerBoundMicros(i + 1) : lower;
+                long nanos = (lower + upper) * 1000 / 2;
+                return Math.max(minNanos, Math.min(maxNanos, nanos));
+            }
+        }
+        return maxNanos;
+    }
+
+    void copyFrom(LatencyHistogram other) {
+        System.arraycopy(other.buckets, 0, buckets, 0, BUCKET_COUNT);
+        count = other.count;
+        totalNanos = other.totalNanos;
+        minNanos = other.minNanos;
+        maxNanos = other.maxNanos;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            buckets[i] = 0;
+        }
+        count = 0;
+        totalNanos = 0;
+        minNanos = 0;
+        maxNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + count + " p50=" + getPercentileNanos(50) / 1000 + "us p99=" + getPercentileNanos(99) / 1000
+                + "us max=" + maxNanos / 1000 + "us";
+    }
+
+}
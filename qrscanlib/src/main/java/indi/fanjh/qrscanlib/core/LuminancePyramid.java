@@ -0,0 +1,94 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 亮度数据降采样
+ * @note 高分辨率的预览帧中二维码往往占了很大的面积，完全没有必要按照原始分辨率二值化和检测
+ * 这里把区域按照2x2或者4x4的块求平均，得到一个低分辨率的亮度平面先尝试解码
+ * 非线程安全，每个解码线程各自持有一个
+ **/
+final class LuminancePyramid {
+    /**
+     * 降采样之后的短边至少保留这么多像素，否则正常大小的二维码模块会小于一个像素
+     */
+    private static final int MIN_COARSE_SIZE = 240;
+
+    /**
+     * 降采样的结果，按需扩容
+     */
+    private byte[] plane;
+    /**
+     * 一行输出对应的多行输入按列累加的结果
+     */
+    private int[] columnSums;
+
+    /**
+     * 根据区域大小选择降采样倍数
+     *
+     * @param width  区域宽度
+     * @param height 区域高度
+     * @return 1、2或者4，1表示不需要降采样
+     */
+    static int chooseFactor(int width, int height) {
+        int shortSide = Math.min(width, height);
+        if (shortSide / 4 >= MIN_COARSE_SIZE) {
+            return 4;
+        }
+        if (shortSide / 2 >= MIN_COARSE_SIZE) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * 按照factor x factor的块求平均进行降采样
+     * 先把factor行按列累加，再按照factor列一组求和，保证对原始数据是顺序访问的
+     *
+     * @param src    亮度数据
+     * @param stride 行跨度
+     * @param left   区域左边
+     * @param top    区域上边
+     * @param width  区域宽度
+     * @param height 区域高度
+     * @param factor 降采样倍数
+     * @return 降采样之后的平面，宽度为width / factor，高度为height / factor，下一次调用之前有效
+     */
+    byte[] downsample(byte[] src, int stride, int left, int top, int width, int height, int factor) {
+        int dstWidth = width / factor;
+        int dstHeight = height / factor;
+        int usedWidth = dstWidth * factor;
+        if (null == plane || plane.length < dstWidth * dstHeight) {
+            plane = new byte[dstWidth * dstHeight];
+        }
+        if (null == columnSums || columnSums.length < usedWidth) {
+            columnSums = new int[usedWidth];
+        }
+        byte[] dst = plane;
+        int[] sums = columnSums;
+        int shift = factor == 4 ? 4 : factor == 2 ? 2 : 0;
+        int area = factor * factor;
+        for (int y = 0; y < dstHeight; ++y) {
+            int offset = (top + y * factor) * stride + left;
+            for (int x = 0; x < usedWidth; ++x) {
+                sums[x] = src[offset + x] & 0xFF;
+            }
+            for (int yy = 1; yy < factor; ++yy) {
+                offset += stride;
+                for (int x = 0; x < usedWidth; ++x) {
+                    sums[x] += src[offset + x] & 0xFF;
+                }
+            }
+            int dstOffset = y * dstWidth;
+            for (int x = 0, column = 0; x < dstWidth; ++x) {
+                int sum = 0;
+                for (int xx = 0; xx < factor; ++xx) {
+                    sum += sums[column++];
+                }
+                dst[dstOffset + x] = (byte) (shift > 0 ? sum >> shift : sum / area);
+            }
+        }
+        return dst;
+    }
+
+}
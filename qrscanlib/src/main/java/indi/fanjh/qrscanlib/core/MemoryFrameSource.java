@@ -0,0 +1,178 @@
+package indi.fanjh.qrscanlib.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 内存中的帧来源
+ * @note 按顺序循环输出预先准备好的亮度平面，用于在没有相机的环境中运行和测量整个解码流程
+ * 1.和相机一样只有固定数量的缓冲，消费者持有的帧达到上限之后等待归还，不会无限制地堆积
+ * 2.帧间隔大于0的时候按照固定帧率输出，模拟相机；等于0的时候只要有空闲缓冲就立即输出，测量最大吞吐
+ * 3.帧数据只读，同一个数组可能同时交给多个解码线程
+ * 输出在单独的线程中进行，通过{@link #start()}和{@link #stop()}控制
+ **/
+final class MemoryFrameSource implements FrameSource, Runnable {
+
+    /**
+     * 一帧画面
+     */
+    static final class Frame {
+        final byte[] data;
+        final int width;
+        final int height;
+        final int stride;
+
+        Frame(byte[] data, int width, int height, int stride) {
+            if (stride < width || data.length < (height - 1) * stride + width) {
+                throw new IllegalArgumentException("frame data too small");
+            }
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.stride = stride;
+        }
+    }
+
+    private final List<Frame> frames;
+    private final long intervalNanos;
+    private final int bufferCount;
+    private final Object lock = new Object();
+    private FrameConsumer consumer;
+    private Thread thread;
+    private boolean running;
+    private int inFlight;
+    private int nextIndex;
+    private long deliveredCount;
+
+    /**
+     * @param frames        需要循环输出的画面
+     * @param intervalNanos 帧间隔，0表示尽可能快
+     * @param bufferCount   同时被消费者持有的帧数上限，相当于相机的缓冲数量
+     */
+    MemoryFrameSource(List<Frame> frames, long intervalNanos, int bufferCount) {
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("frames must not be empty");
+        }
+        this.frames = new ArrayList<>(frames);
+        this.intervalNanos = Math.max(0, intervalNanos);
+        this.bufferCount = Math.max(1, bufferCount);
+    }
+
+    /**
+     * 开始输出
+     */
+    void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            thread = new Thread(this, "memory_frame_source");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 停止输出并等待输出线程结束
+     */
+    void stop() {
+        Thread current;
+        synchronized (lock) {
+            running = false;
+            current = thread;
+            thread = null;
+            lock.notifyAll();
+        }
+        if (null != current) {
+            try {
+                current.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void setFrameConsumer(FrameConsumer consumer) {
+        synchronized (lock) {
+            this.consumer = consumer;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void releaseFrame(byte[] data) {
+        synchronized (lock) {
+            if (inFlight > 0) {
+                inFlight--;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return 已经输出的帧数
+     */
+    long getDeliveredCount() {
+        synchronized (lock) {
+            return deliveredCount;
+        }
+    }
+
+    /**
+     * @return 当前被消费者持有的帧数
+     */
+    int getInFlightCount() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    @Override
+    public void run() {
+        long nextDue = System.nanoTime();
+        while (true) {
+            FrameConsumer target;
+            Frame frame;
+            synchronized (lock) {
+                while (running && (null == consumer || inFlight >= bufferCount)) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                target = consumer;
+                frame = frames.get(nextIndex);
+                nextIndex = (nextIndex + 1) % frames.size();
+                inFlight++;
+                deliveredCount++;
+            }
+            if (intervalNanos > 0) {
+                // 按照固定帧率输出，没有空闲缓冲期间错过的帧不再补发
+                long now = System.nanoTime();
+                if (nextDue > now) {
+                    sleepNanos(nextDue - now);
+                    now = nextDue;
+                }
+                nextDue = now + intervalNanos;
+            }
+            target.onFrame(frame.data, frame.width, frame.height, frame.stride, null, System.nanoTime());
+        }
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 画面变化检查
+ * @note 手机放在桌面上对着空白区域的时候，每一帧几乎都一样，反复完整解码只会消耗电量
+ * 这里保留上一次解码失败的帧的缩略图，新的帧和它几乎没有差别就跳过解码
+ * 1.缩略图只在每个格子里采样一个像素，计算量可以忽略
+ * 2.画面明显变化、解码区域变化或者距离上一次真正解码超过一定时间，都会强制解码
+ * 多个解码线程共享同一个实例，比较和更新缩略图的方法都是同步的
+ **/
+final class MotionGate {
+    static final int THUMBNAIL_WIDTH = 32;
+    static final int THUMBNAIL_HEIGHT = 24;
+    static final int THUMBNAIL_SIZE = THUMBNAIL_WIDTH * THUMBNAIL_HEIGHT;
+    /**
+     * 平均每个像素的亮度差低于这个值认为画面没有变化
+     */
+    private static final int DIFFERENCE_THRESHOLD = 6;
+    /**
+     * 画面一直没有变化的情况下，最多间隔多久强制解码一次
+     */
+    private static final long FORCE_DECODE_INTERVAL_MS = 1500L;
+
+    private final byte[] reference = new byte[THUMBNAIL_SIZE];
+    private boolean hasReference;
+    private int referenceLeft;
+    private int referenceTop;
+    private int referenceRight;
+    private int referenceBottom;
+    private long lastDecodeTime;
+
+    /**
+     * 采样生成指定区域的缩略图
+     *
+     * @param data      亮度数据
+     * @param stride    行跨度
+     * @param left      区域左边
+     * @param top       区域上边
+     * @param right     区域右边
+     * @param bottom    区域下边
+     * @param thumbnail 输出的缩略图，长度为{@link #THUMBNAIL_SIZE}
+     */
+    static void sample(byte[] data, int stride, int left, int top, int right, int bottom, byte[] thumbnail) {
+        int width = right - left;
+        int height = bottom - top;
+        for (int y = 0; y < THUMBNAIL_HEIGHT; ++y) {
+            int offset = (top + (2 * y + 1) * height / (2 * THUMBNAIL_HEIGHT)) * stride + left;
+            for (int x = 0; x < THUMBNAIL_WIDTH; ++x) {
+                thumbnail[y * THUMBNAIL_WIDTH + x] = data[offset + (2 * x + 1) * width / (2 * THUMBNAIL_WIDTH)];
+            }
+        }
+    }
+
+    /**
+     * 判断当前帧是否需要解码
+     *
+     * @param thumbnail 当前帧的缩略图
+     * @param left      缩略图对应区域的左边
+     * @param top       缩略图对应区域的上边
+     * @param right     缩略图对应区域的右边
+     * @param bottom    缩略图对应区域的下边
+     * @param now       当前时间，毫秒
+     * @return true表示需要解码
+     */
+    synchronized boolean accept(byte[] thumbnail, int left, int top, int right, int bottom, long now) {
+        if (!hasReference || now - lastDecodeTime >= FORCE_DECODE_INTERVAL_MS
+                || left != referenceLeft || top != referenceTop
+                || right != referenceRight || bottom != referenceBottom) {
+            lastDecodeTime = now;
+            return true;
+        }
+        int difference = 0;
+        for (int i = 0; i < THUMBNAIL_SIZE; ++i) {
+            difference += Math.abs((thumbnail[i] & 0xFF) - (reference[i] & 0xFF));
+        }
+        if (difference >= DIFFERENCE_THRESHOLD * THUMBNAIL_SIZE) {
+            lastDecodeTime = now;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 记录解码失败的帧，作为之后比较的基准
+     */
+    synchronized void remember(byte[] thumbnail, int left, int top, int right, int bottom) {
+        System.arraycopy(thumbnail, 0, reference, 0, THUMBNAIL_SIZE);
+        referenceLeft = left;
+        referenceTop = top;
+        referenceRight = right;
+        referenceBottom = bottom;
+        hasReference = true;
+    }
+
+    synchronized void reset() {
+        hasReference = false;
+        lastDecodeTime = 0;
+    }
+
+}
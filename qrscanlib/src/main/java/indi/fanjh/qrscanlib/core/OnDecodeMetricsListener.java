@@ -0,0 +1,18 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 解码统计的监听
+ * @note 通过{@link CaptureActivityDelegate#setOnDecodeMetricsListener(OnDecodeMetricsListener, long)}设置，在主线程中回调
+ * 用于上报扫码耗时，例如每个阶段的p50、p99以及丢帧和跳帧的比例
+ **/
+public interface OnDecodeMetricsListener {
+
+    /**
+     * 定时回调，页面暂停之前还会回调一次
+     *
+     * @param metrics 本次扫描开始以来的统计快照，可以直接保存，之后不会再变化
+     */
+    void onDecodeMetrics(DecodeMetrics metrics);
+}
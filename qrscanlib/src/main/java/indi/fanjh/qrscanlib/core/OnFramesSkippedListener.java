@@ -0,0 +1,29 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 跳帧的监听
+ * @note 通过{@link CaptureActivityDelegate#setOnStatusListener(OnStatusListener)}设置，实现了这个接口的时候才会回调
+ * 单独作为子接口，原有的{@link OnStatusListener}实现不需要修改
+ **/
+public interface OnFramesSkippedListener extends OnStatusListener {
+    /**
+     * 因为画面模糊跳过
+     */
+    int SKIP_REASON_BLUR = 1;
+    /**
+     * 因为画面同上一次解码失败的帧几乎一样而跳过
+     */
+    int SKIP_REASON_STILL = 2;
+
+    /**
+     * 有预览帧被跳过没有解码，用于调整跳帧策略
+     * 扫描过程中最多每秒回调一次
+     *
+     * @param reason        跳过的原因，{@link #SKIP_REASON_BLUR}或者{@link #SKIP_REASON_STILL}
+     * @param skippedFrames 本次扫描开始以来因为该原因跳过的帧数
+     * @param totalFrames   本次扫描开始以来收到的帧数
+     */
+    void onFramesSkipped(int reason, int skippedFrames, int totalFrames);
+}
@@ -0,0 +1,23 @@
+package indi.fanjh.qrscanlib.core;
+
+import java.util.List;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 多码模式和连续模式的结果监听
+ * @note 通过{@link CaptureActivityDelegate#setOnStatusListener(OnStatusListener)}设置，实现了这个接口的时候才会回调
+ * 没有实现的时候这两种模式下识别出的结果不会通知
+ **/
+public interface OnMultiScanListener extends OnStatusListener {
+
+    /**
+     * 多码模式或者连续模式下识别出了新的二维码，扫描会继续进行
+     * 多码模式下同一次扫描中已经通知过的内容不会重复通知，连续模式下同一个内容在冷却时间内只通知一次
+     * 识别速度比主线程处理快的时候，多帧的结果会合并成一批通知
+     * 参考{@link CaptureActivityDelegate#setMultiCodeEnabled(boolean)}和{@link CaptureActivityDelegate#setContinuousScan(boolean, long)}
+     *
+     * @param results 新识别出的二维码内容，按照识别的先后排列
+     */
+    void onMultiScanSuccess(List<String> results);
+}
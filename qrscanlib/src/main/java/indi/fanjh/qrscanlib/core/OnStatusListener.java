@@ -20,4 +20,4 @@ public interface OnStatusListener {
      * @param result
      */
     void onScanSuccess(String result);
-}
\ No newline at end of file
+}
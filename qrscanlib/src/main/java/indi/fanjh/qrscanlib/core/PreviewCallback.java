@@ -16,34 +16,164 @@
 
 package indi.fanjh.qrscanlib.core;
 
-import android.graphics.Point;
 import android.hardware.Camera;
 import android.util.Log;
 
+/**
+ * 预览帧回调
+ * 配合setPreviewCallbackWithBuffer使用，相机只会往预先分配的缓冲中写数据
+ * 设置了分发者之后每一帧都会交给分发者，由分发者决定解码还是丢弃
+ * 没有解析者的时候缓冲暂存在这里，相机没有可用缓冲就不会继续回调，从而空闲时不消耗资源
+ * 交给分发者还没有归还的缓冲记录在这里，预览重新开始的时候不会重复交给相机
+ */
 final class PreviewCallback implements Camera.PreviewCallback {
 
     private static final String TAG = PreviewCallback.class.getSimpleName();
 
     private final CameraConfigurationManager configManager;
-    private ScanHandler previewHandler;
+    private FrameConsumer previewHandler;
+    /**
+     * 扫描区域，依次为left、top、right、bottom，变化时整体替换，随每一帧交给分发者
+     */
+    private volatile int[] scanRect;
+    /**
+     * 当前没有被相机持有、也没有在解码中的缓冲
+     * 每个缓冲同一时间只在相机、解码中、暂存三处之一，数量不会超过预览缓冲的上限
+     */
+    private final byte[][] idleBuffers = new byte[CameraManager.MAX_PREVIEW_BUFFER_COUNT][];
+    private int idleCount;
+    /**
+     * 已经交给分发者、还没有归还的缓冲
+     */
+    private final byte[][] inFlightBuffers = new byte[CameraManager.MAX_PREVIEW_BUFFER_COUNT][];
+    private int inFlightCount;
 
     PreviewCallback(CameraConfigurationManager configManager) {
         this.configManager = configManager;
     }
 
-    void setHandler(ScanHandler previewHandler) {
+    synchronized void setConsumer(FrameConsumer previewHandler) {
         this.previewHandler = previewHandler;
     }
 
+    void setScanRect(int[] scanRect) {
+        this.scanRect = scanRect;
+    }
+
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
-        Point cameraResolution = configManager.getCameraResolution();
-        if (configManager.getCameraResolution() != null && previewHandler != null) {
-            previewHandler.decode(data,cameraResolution.x, cameraResolution.y);
-            previewHandler = null;
+        if (null == data) {
+            return;
+        }
+        CameraSettings settings = configManager.getSettings();
+        FrameConsumer handler;
+        synchronized (this) {
+            handler = previewHandler;
+            if (handler == null || settings == null) {
+                Log.d(TAG, "Got preview callback, but no handler or resolution available");
+                park(data);
+                return;
+            }
+            if (inFlightCount == inFlightBuffers.length) {
+                // 没有记录的缓冲归还的时候会被当作旧缓冲丢弃，再也回不到相机
+                throw new IllegalStateException("More than " + inFlightBuffers.length + " preview buffers in flight");
+            }
+            inFlightBuffers[inFlightCount++] = data;
+        }
+        // 缓冲交给分发者，解码完成或者丢弃后通过CameraManager.releaseFrame归还
+        // NV21的前width*height字节就是亮度平面，行跨度等于宽度
+        ScanTracer tracer = ScanTrace.getTracer();
+        if (null != tracer) {
+            tracer.beginSection(ScanTrace.FRAME_DELIVERY);
+        }
+        try {
+            handler.onFrame(data, settings.previewWidth, settings.previewHeight, settings.previewWidth, scanRect,
+                    System.nanoTime());
+        } finally {
+            if (null != tracer) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    /**
+     * 归还解码完成的缓冲
+     * 如果还有解析者在等待，直接交给相机继续填充，否则暂存
+     * 不是从这里交出去的缓冲直接忽略，例如重新分配之前的旧缓冲
+     *
+     * @param data   缓冲
+     * @param camera 当前相机，null表示预览已经停止，缓冲在重新开始预览的时候再交给相机
+     */
+    synchronized void recycleBuffer(byte[] data, Camera camera) {
+        if (!removeInFlight(data) || null == camera) {
+            return;
+        }
+        if (null != previewHandler) {
+            camera.addCallbackBuffer(data);
         } else {
-            Log.d(TAG, "Got preview callback, but no handler or resolution available");
+            park(data);
+        }
+    }
+
+    /**
+     * 把暂存的缓冲全部交还给相机
+     *
+     * @param camera 当前相机
+     */
+    synchronized void requeueIdleBuffers(Camera camera) {
+        for (int i = 0; i < idleCount; ++i) {
+            camera.addCallbackBuffer(idleBuffers[i]);
+            idleBuffers[i] = null;
+        }
+        idleCount = 0;
+    }
+
+    synchronized void clearIdleBuffers() {
+        for (int i = 0; i < idleCount; ++i) {
+            idleBuffers[i] = null;
+        }
+        idleCount = 0;
+    }
+
+    /**
+     * @param data 缓冲
+     * @return true表示这个缓冲已经交给分发者，还没有归还
+     */
+    synchronized boolean isInFlight(byte[] data) {
+        for (int i = 0; i < inFlightCount; ++i) {
+            if (inFlightBuffers[i] == data) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重新分配了缓冲，之前交出去的旧缓冲归还的时候直接丢弃
+     */
+    synchronized void clearInFlightBuffers() {
+        for (int i = 0; i < inFlightCount; ++i) {
+            inFlightBuffers[i] = null;
+        }
+        inFlightCount = 0;
+    }
+
+    private boolean removeInFlight(byte[] data) {
+        for (int i = 0; i < inFlightCount; ++i) {
+            if (inFlightBuffers[i] == data) {
+                inFlightBuffers[i] = inFlightBuffers[--inFlightCount];
+                inFlightBuffers[inFlightCount] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void park(byte[] data) {
+        if (idleCount == idleBuffers.length) {
+            throw new IllegalStateException("More than " + idleBuffers.length + " idle preview buffers");
         }
+        idleBuffers[idleCount++] = data;
     }
 
 }
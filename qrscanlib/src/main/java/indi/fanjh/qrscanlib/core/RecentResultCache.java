@@ -0,0 +1,83 @@
+package indi.fanjh.qrscanlib.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 最近通知过的扫描结果
+ * @note 连续扫描模式下用于去重，同一个内容在冷却时间内只通知一次
+ * 1.按照通知的先后保存，最早通知的在最前面，过期的从头部开始清理
+ * 2.数量超过上限的时候丢弃最早的，保证画面中不断出现新内容的时候内存不会增长
+ * 3.不是线程安全的，由调用者加锁
+ **/
+final class RecentResultCache {
+    static final int DEFAULT_CAPACITY = 64;
+    static final long DEFAULT_COOLDOWN_MS = 3000L;
+
+    private final int capacity;
+    private final LinkedHashMap<String, Long> reportTimes;
+    private long cooldownMillis = DEFAULT_COOLDOWN_MS;
+
+    RecentResultCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        reportTimes = new LinkedHashMap<>(capacity * 4 / 3 + 1);
+    }
+
+    /**
+     * @param cooldownMillis 同一个内容两次通知的最小间隔，毫秒
+     */
+    void setCooldownMillis(long cooldownMillis) {
+        this.cooldownMillis = Math.max(0, cooldownMillis);
+    }
+
+    long getCooldownMillis() {
+        return cooldownMillis;
+    }
+
+    /**
+     * 尝试记录一个结果
+     *
+     * @param text 结果内容
+     * @param now  当前时间，毫秒
+     * @return true表示冷却时间内没有通知过，需要通知
+     */
+    boolean offer(String text, long now) {
+        evictExpired(now);
+        if (reportTimes.containsKey(text)) {
+            return false;
+        }
+        reportTimes.put(text, now);
+        if (reportTimes.size() > capacity) {
+            Iterator<String> iterator = reportTimes.keySet().iterator();
+            iterator.next();
+            iterator.remove();
+        }
+        return true;
+    }
+
+    int size() {
+        return reportTimes.size();
+    }
+
+    void clear() {
+        reportTimes.clear();
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<String, Long>> iterator = reportTimes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue() < cooldownMillis) {
+                // 后面的通知时间更晚，不会过期
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+}
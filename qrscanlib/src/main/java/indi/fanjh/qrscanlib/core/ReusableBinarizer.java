@@ -0,0 +1,353 @@
+/*
+ * Copyright 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 可以重复使用的二值化处理
+ * @note 支持两种算法，分别同HybridBinarizer和GlobalHistogramBinarizer一致，尺寸太小的时候只能使用后者
+ * 区别在于块阈值数组、直方图和BitMatrix都在实例内复用，并且直接按照行跨度读取整帧数据，不需要先裁剪拷贝
+ * 每一帧需要先调用{@link #binarize(int)}，之后{@link #getBlackMatrix()}返回的始终是同一个BitMatrix
+ **/
+final class ReusableBinarizer extends Binarizer {
+
+    // This class uses 5x5 blocks to compute local luminance, where each block is 8x8 pixels.
+    // So this is the smallest dimension in each axis we can accept.
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER; // ...0100...00
+    private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;   // ...0011...11
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+
+    private static final int LUMINANCE_BITS = 5;
+    private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+    private static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
+
+    private final ReusableLuminanceSource source;
+    private final BitMatrix matrix;
+    private final int subWidth;
+    private final int subHeight;
+    /**
+     * 每个8x8块的黑点阈值，按行展开成一维数组
+     */
+    private int[] blackPoints;
+    private final int[] buckets = new int[LUMINANCE_BUCKETS];
+
+    ReusableBinarizer(ReusableLuminanceSource source) {
+        super(source);
+        this.source = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        matrix = new BitMatrix(width, height);
+        int subWidth = width >> BLOCK_SIZE_POWER;
+        if ((width & BLOCK_SIZE_MASK) != 0) {
+            subWidth++;
+        }
+        int subHeight = height >> BLOCK_SIZE_POWER;
+        if ((height & BLOCK_SIZE_MASK) != 0) {
+            subHeight++;
+        }
+        this.subWidth = subWidth;
+        this.subHeight = subHeight;
+    }
+
+    /**
+     * 对数据源当前的一帧进行二值化，结果写入复用的BitMatrix
+     *
+     * @param binarizer {@link DecodeMetrics#BINARIZER_HYBRID}或者{@link DecodeMetrics#BINARIZER_GLOBAL_HISTOGRAM}
+     * @throws NotFoundException 使用全局直方图的时候，如果找不到明显的明暗分界会抛出
+     */
+    void binarize(int binarizer) throws NotFoundException {
+        matrix.clear();
+        if (binarizer == DecodeMetrics.BINARIZER_HYBRID && isHybridSupported()) {
+            if (null == blackPoints) {
+                blackPoints = new int[subWidth * subHeight];
+            }
+            calculateBlackPoints();
+            calculateThresholdForBlock();
+        } else {
+            binarizeGlobal();
+        }
+    }
+
+    /**
+     * 宽高都不小于40的时候才能使用分块的局部阈值
+     */
+    boolean isHybridSupported() {
+        return source.getWidth() >= MINIMUM_DIMENSION && source.getHeight() >= MINIMUM_DIMENSION;
+    }
+
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        return matrix.getRow(y, row);
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        return matrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        if (source instanceof ReusableLuminanceSource) {
+            return new ReusableBinarizer((ReusableLuminanceSource) source);
+        }
+        throw new IllegalArgumentException("Only ReusableLuminanceSource is supported");
+    }
+
+    /**
+     * For each block in the image, calculate the average black point using a 5x5 grid
+     * of the blocks around it. Also handles the corner cases (fractional blocks are computed based
+     * on the last pixels in the row/column which are also used in the previous block).
+     */
+    private void calculateThresholdForBlock() {
+        byte[] luminances = source.getData();
+        int baseOffset = source.getDataOffset();
+        int stride = source.getMatrixStride();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = y << BLOCK_SIZE_POWER;
+            if (yoffset > maxYOffset) {
+                yoffset = maxYOffset;
+            }
+            int top = cap(y, 2, subHeight - 3);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = x << BLOCK_SIZE_POWER;
+                if (xoffset > maxXOffset) {
+                    xoffset = maxXOffset;
+                }
+                int left = cap(x, 2, subWidth - 3);
+                int sum = 0;
+                for (int z = -2; z <= 2; z++) {
+                    int rowOffset = (top + z) * subWidth + left;
+                    sum += blackPoints[rowOffset - 2] + blackPoints[rowOffset - 1] + blackPoints[rowOffset]
+                            + blackPoints[rowOffset + 1] + blackPoints[rowOffset + 2];
+                }
+                int average = sum / 25;
+                thresholdBlock(luminances, baseOffset, xoffset, yoffset, average, stride);
+            }
+        }
+    }
+
+    private static int cap(int value, int min, int max) {
+        return value < min ? min : value > max ? max : value;
+    }
+
+    /**
+     * Applies a single threshold to a block of pixels.
+     */
+    private void thresholdBlock(byte[] luminances, int baseOffset, int xoffset, int yoffset,
+                                int threshold, int stride) {
+        for (int y = 0, offset = baseOffset + yoffset * stride + xoffset; y < BLOCK_SIZE; y++, offset += stride) {
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                // Comparison needs to be <= so that black == 0 pixels are black even if the threshold is 0.
+                if ((luminances[offset + x] & 0xFF) <= threshold) {
+                    matrix.set(xoffset + x, yoffset + y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates a single black point for each block of pixels and saves it away.
+     * See the following thread for a discussion of this algorithm:
+     * http://groups.google.com/group/zxing/browse_thread/thread/d06efa2c35a7ddc0
+     */
+    private void calculateBlackPoints() {
+        byte[] luminances = source.getData();
+        int baseOffset = source.getDataOffset();
+        int stride = source.getMatrixStride();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = y << BLOCK_SIZE_POWER;
+            if (yoffset > maxYOffset) {
+                yoffset = maxYOffset;
+            }
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = x << BLOCK_SIZE_POWER;
+                if (xoffset > maxXOffset) {
+                    xoffset = maxXOffset;
+                }
+                int sum = 0;
+                int min = 0xFF;
+                int max = 0;
+                for (int yy = 0, offset = baseOffset + yoffset * stride + xoffset; yy < BLOCK_SIZE; yy++, offset += stride) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        int pixel = luminances[offset + xx] & 0xFF;
+                        sum += pixel;
+                        // still looking for good contrast
+                        if (pixel < min) {
+                            min = pixel;
+                        }
+                        if (pixel > max) {
+                            max = pixel;
+                        }
+                    }
+                    // short-circuit min/max tests once dynamic range is met
+                    if (max - min > MIN_DYNAMIC_RANGE) {
+                        // finish the rest of the rows quickly
+                        for (yy++, offset += stride; yy < BLOCK_SIZE; yy++, offset += stride) {
+                            for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                                sum += luminances[offset + xx] & 0xFF;
+                            }
+                        }
+                    }
+                }
+
+                // The default estimate is the average of the values in the block.
+                int average = sum >> (BLOCK_SIZE_POWER * 2);
+                if (max - min <= MIN_DYNAMIC_RANGE) {
+                    // If variation within the block is low, assume this is a block with only light or only
+                    // dark pixels. In that case we do not want to use the average, as it would divide this
+                    // low contrast area into black and white pixels, essentially creating data out of noise.
+                    //
+                    // The default assumption is that the block is light/background. Since no estimate for
+                    // the level of dark pixels exists locally, use half the min for the block.
+                    average = min / 2;
+
+                    if (y > 0 && x > 0) {
+                        // Correct the "white background" assumption for blocks that have neighbors by comparing
+                        // the pixels in this block to the previously calculated black points. This is based on
+                        // the fact that dark barcode symbology is always surrounded by some amount of light
+                        // background for which reasonable black point estimates were made. The bp estimated at
+                        // the boundaries is used for the interior.
+
+                        // The (min < bp) is arbitrary but works better than other heuristics that were tried.
+                        int index = y * subWidth + x;
+                        int averageNeighborBlackPoint =
+                                (blackPoints[index - subWidth] + (2 * blackPoints[index - 1])
+                                        + blackPoints[index - subWidth - 1]) / 4;
+                        if (min < averageNeighborBlackPoint) {
+                            average = averageNeighborBlackPoint;
+                        }
+                    }
+                }
+                blackPoints[y * subWidth + x] = average;
+            }
+        }
+    }
+
+    /**
+     * 全局直方图阈值，同GlobalHistogramBinarizer一致
+     */
+    private void binarizeGlobal() throws NotFoundException {
+        byte[] luminances = source.getData();
+        int baseOffset = source.getDataOffset();
+        int stride = source.getMatrixStride();
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        // Quickly calculates the histogram by sampling four rows from the image. This proved to be
+        // more robust on the blackbox tests than sampling a diagonal as we used to do.
+        for (int x = 0; x < LUMINANCE_BUCKETS; x++) {
+            buckets[x] = 0;
+        }
+        for (int y = 1; y < 5; y++) {
+            int offset = baseOffset + (height * y / 5) * stride;
+            int right = (width * 4) / 5;
+            for (int x = width / 5; x < right; x++) {
+                int pixel = luminances[offset + x] & 0xff;
+                buckets[pixel >> LUMINANCE_SHIFT]++;
+            }
+        }
+        int blackPoint = estimateBlackPoint(buckets);
+
+        // We delay reading the entire image luminance until the black point estimation succeeds.
+        // Although we end up reading four rows twice, it is consistent with our motto of
+        // "fail quickly" which is necessary for continuous scanning.
+        for (int y = 0; y < height; y++) {
+            int offset = baseOffset + y * stride;
+            for (int x = 0; x < width; x++) {
+                int pixel = luminances[offset + x] & 0xff;
+                if (pixel < blackPoint) {
+                    matrix.set(x, y);
+                }
+            }
+        }
+    }
+
+    private static int estimateBlackPoint(int[] buckets) throws NotFoundException {
+        // Find the tallest peak in the histogram.
+        int numBuckets = buckets.length;
+        int maxBucketCount = 0;
+        int firstPeak = 0;
+        int firstPeakSize = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            if (buckets[x] > firstPeakSize) {
+                firstPeak = x;
+                firstPeakSize = buckets[x];
+            }
+            if (buckets[x] > maxBucketCount) {
+                maxBucketCount = buckets[x];
+            }
+        }
+
+        // Find the second-tallest peak which is somewhat far from the tallest peak.
+        int secondPeak = 0;
+        int secondPeakScore = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            int distanceToBiggest = x - firstPeak;
+            // Encourage more distant second peaks by multiplying by square of distance.
+            int score = buckets[x] * distanceToBiggest * distanceToBiggest;
+            if (score > secondPeakScore) {
+                secondPeak = x;
+                secondPeakScore = score;
+            }
+        }
+
+        // Make sure firstPeak corresponds to the black peak.
+        if (firstPeak > secondPeak) {
+            int temp = firstPeak;
+            firstPeak = secondPeak;
+            secondPeak = temp;
+        }
+
+        // If there is too little contrast in the image to pick a meaningful black point, throw rather
+        // than waste time trying to decode the image, and risk false positives.
+        if (secondPeak - firstPeak <= numBuckets / 16) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+
+        // Find a valley between them that is low and closer to the white peak.
+        int bestValley = secondPeak - 1;
+        int bestValleyScore = -1;
+        for (int x = secondPeak - 1; x > firstPeak; x--) {
+            int fromFirst = x - firstPeak;
+            int score = fromFirst * fromFirst * (secondPeak - x) * (maxBucketCount - buckets[x]);
+            if (score > bestValleyScore) {
+                bestValley = x;
+                bestValleyScore = score;
+            }
+        }
+
+        return bestValley << LUMINANCE_SHIFT;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2009 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 可以重复使用的YUV亮度数据源
+ * @note 基于PlanarYUVLuminanceSource修改
+ * LuminanceSource的宽高是不可变的，所以同一个实例只能用于相同裁剪尺寸的帧
+ * 每一帧通过{@link #reset(byte[], int, int, int, int)}切换数据，裁剪用的数组在实例内复用
+ **/
+final class ReusableLuminanceSource extends LuminanceSource {
+
+    private byte[] yuvData;
+    private int dataWidth;
+    private int dataHeight;
+    private int left;
+    private int top;
+    /**
+     * 裁剪之后的亮度数据，只有外部通过getMatrix获取裁剪区域的时候才分配
+     */
+    private byte[] matrix;
+
+    ReusableLuminanceSource(int width, int height) {
+        super(width, height);
+    }
+
+    /**
+     * 切换到新的一帧
+     *
+     * @param yuvData    NV21数据，只会读取前面的Y平面
+     * @param dataWidth  整帧宽度
+     * @param dataHeight 整帧高度
+     * @param left       裁剪区域左边
+     * @param top        裁剪区域上边
+     */
+    void reset(byte[] yuvData, int dataWidth, int dataHeight, int left, int top) {
+        if (left < 0 || top < 0 || left + getWidth() > dataWidth || top + getHeight() > dataHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        this.yuvData = yuvData;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        int offset = (y + top) * dataWidth + left;
+        System.arraycopy(yuvData, offset, row, 0, width);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+
+        // If the caller asks for the entire underlying image, save the copy and give them the
+        // original data. The docs specifically warn that result.length must be ignored.
+        if (width == dataWidth && height == dataHeight) {
+            return yuvData;
+        }
+
+        if (null == matrix) {
+            matrix = new byte[width * height];
+        }
+        int inputOffset = top * dataWidth + left;
+
+        // If the width matches the full width of the underlying data, perform a single copy.
+        if (width == dataWidth) {
+            System.arraycopy(yuvData, inputOffset, matrix, 0, width * height);
+            return matrix;
+        }
+
+        // Otherwise copy one cropped row at a time.
+        for (int y = 0; y < height; y++) {
+            int outputOffset = y * width;
+            System.arraycopy(yuvData, inputOffset, matrix, outputOffset, width);
+            inputOffset += dataWidth;
+        }
+        return matrix;
+    }
+
+    /**
+     * 整帧的亮度数据，配合{@link #getDataOffset()}和{@link #getMatrixStride()}使用可以省去裁剪的拷贝
+     */
+    byte[] getData() {
+        return yuvData;
+    }
+
+    /**
+     * @return 裁剪区域左上角在整帧数据中的偏移
+     */
+    int getDataOffset() {
+        return top * dataWidth + left;
+    }
+
+    /**
+     * @return 整帧数据的行跨度
+     */
+    int getMatrixStride() {
+        return dataWidth;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return false;
+    }
+
+}
@@ -0,0 +1,145 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.ResultPoint;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 感兴趣区域跟踪
+ * @note 根据上一次成功或者部分识别出来的定位点，只解码二维码附近的一块区域
+ * 1.区域为定位点的外接矩形加上一圈边距，二维码在画面中基本不动的时候可以大幅减少二值化和检测的像素数
+ * 2.每一次未识别都会扩大区域，连续未识别达到上限之后恢复为完整区域
+ * 3.部分识别（找到了定位点但是解码失败）只更新区域位置，依然算作一次未识别，避免误检测的定位点一直锁定区域
+ * 多个解码线程共享同一个实例，所有方法都是同步的
+ **/
+final class RoiTracker {
+    /**
+     * 默认连续未识别多少次之后恢复完整区域
+     */
+    static final int DEFAULT_MAX_MISSES = 8;
+    /**
+     * 区域的最小边长，太小的区域二值化只能走全局直方图，效果不好
+     */
+    private static final int MIN_REGION_SIZE = 160;
+
+    private final int maxMisses;
+    private boolean tracking;
+    private int centerX;
+    private int centerY;
+    /**
+     * 定位点外接矩形的最大边长
+     */
+    private int extent;
+    private int misses;
+
+    RoiTracker(int maxMisses) {
+        this.maxMisses = maxMisses;
+    }
+
+    /**
+     * 计算下一帧需要解码的区域
+     *
+     * @param left   完整区域左边
+     * @param top    完整区域上边
+     * @param right  完整区域右边
+     * @param bottom 完整区域下边
+     * @param out    输出区域，依次为left、top、right、bottom
+     * @return 是否使用了跟踪区域，false表示输出的是完整区域
+     */
+    synchronized boolean computeRegion(int left, int top, int right, int bottom, int[] out) {
+        out[0] = left;
+        out[1] = top;
+        out[2] = right;
+        out[3] = bottom;
+        if (!tracking) {
+            return false;
+        }
+        // 定位点在二维码角落往里3.5个模块的位置，中心往外至少留一个边长，每次未识别再多扩大四分之一
+        int half = extent + extent * misses / 4;
+        half = Math.max(half, MIN_REGION_SIZE / 2);
+        int regionLeft = Math.max(left, centerX - half);
+        int regionTop = Math.max(top, centerY - half);
+        int regionRight = Math.min(right, centerX + half);
+        int regionBottom = Math.min(bottom, centerY + half);
+        if (regionRight - regionLeft < MIN_REGION_SIZE || regionBottom - regionTop < MIN_REGION_SIZE
+                || (regionRight - regionLeft) * (regionBottom - regionTop) * 4 > (right - left) * (bottom - top) * 3) {
+            // 区域被边界截得太小或者已经接近完整区域，直接使用完整区域
+            return false;
+        }
+        out[0] = regionLeft;
+        out[1] = regionTop;
+        out[2] = regionRight;
+        out[3] = regionBottom;
+        return true;
+    }
+
+    /**
+     * 识别成功，以结果的定位点作为新的区域
+     *
+     * @param points  结果定位点
+     * @param count   定位点数量
+     * @param offsetX 定位点坐标系相对于整帧的偏移
+     * @param offsetY 定位点坐标系相对于整帧的偏移
+     * @param scale   定位点坐标系相对于整帧的缩放，降采样解码的时候大于1
+     */
+    synchronized void onHit(ResultPoint[] points, int count, int offsetX, int offsetY, int scale) {
+        if (update(points, count, offsetX, offsetY, scale)) {
+            misses = 0;
+        }
+    }
+
+    /**
+     * 未识别成功
+     *
+     * @param points  检测过程中找到的疑似定位点，可以为null
+     * @param count   疑似定位点数量，少于3个的时候不更新区域
+     * @param offsetX 定位点坐标系相对于整帧的偏移
+     * @param offsetY 定位点坐标系相对于整帧的偏移
+     * @param scale   定位点坐标系相对于整帧的缩放，降采样解码的时候大于1
+     */
+    synchronized void onMiss(ResultPoint[] points, int count, int offsetX, int offsetY, int scale) {
+        if (!tracking) {
+            update(points, count, offsetX, offsetY, scale);
+            return;
+        }
+        if (++misses >= maxMisses) {
+            reset();
+            return;
+        }
+        update(points, count, offsetX, offsetY, scale);
+    }
+
+    synchronized void reset() {
+        tracking = false;
+        misses = 0;
+    }
+
+    private boolean update(ResultPoint[] points, int count, int offsetX, int offsetY, int scale) {
+        if (null == points || count < 3) {
+            return false;
+        }
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < count; ++i) {
+            ResultPoint point = points[i];
+            if (null == point) {
+                continue;
+            }
+            minX = Math.min(minX, point.getX());
+            minY = Math.min(minY, point.getY());
+            maxX = Math.max(maxX, point.getX());
+            maxY = Math.max(maxY, point.getY());
+        }
+        if (maxX < minX || maxY < minY) {
+            return false;
+        }
+        centerX = offsetX + (int) ((minX + maxX) * scale / 2);
+        centerY = offsetY + (int) ((minY + maxY) * scale / 2);
+        extent = (int) (Math.max(maxX - minX, maxY - minY) * scale);
+        tracking = true;
+        return true;
+    }
+
+}
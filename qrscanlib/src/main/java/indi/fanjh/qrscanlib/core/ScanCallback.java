@@ -0,0 +1,36 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.Result;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 解码结果的接收者
+ * @note {@link ScanDispatcher}通过该接口通知结果，都在解码线程中回调
+ * 界面中由{@link CaptureActivityHandler}实现，转到主线程处理
+ **/
+interface ScanCallback {
+
+    /**
+     * 单码模式下解码成功
+     *
+     * @param rawResult      结果
+     * @param timestampNanos 结果所在帧到达的时间
+     */
+    void decodeSuccess(Result rawResult, long timestampNanos);
+
+    /**
+     * 多码模式或者连续模式下有新的结果，通过{@link ScanDispatcher#takeResults()}取走
+     */
+    void decodeBatchSuccess();
+
+    /**
+     * 跳过了部分帧
+     *
+     * @param reason        跳过的原因
+     * @param skippedFrames 跳过的帧数
+     * @param totalFrames   收到的帧数
+     */
+    void framesSkipped(int reason, int skippedFrames, int totalFrames);
+
+}
@@ -0,0 +1,510 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.Result;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 预览帧分发者
+ * @note 持有多个解码线程，每个线程对应一个{@link ScanWorker}
+ * 1.新的帧优先交给空闲的解码线程，全部忙碌的时候只保留最新的一帧，旧帧直接归还给相机
+ * 2.每一帧都有递增的序号，交给外部的结果按照帧的顺序，序号更早的结果不会在更晚的结果之后交付
+ * 3.第一个成功的结果胜出，其余正在解码的帧作废，结果直接丢弃
+ * 4.所有解码线程共享同一个{@link RoiTracker}，保证区域跟踪按照帧的先后累积
+ * 5.多码模式下识别成功不会停止，本次扫描中已经通知过的内容不再重复通知
+ * 6.连续模式下识别成功不会停止，同一个内容在冷却时间内只通知一次
+ * 帧来自{@link FrameSource}，结果交给{@link ScanCallback}，本身不依赖相机和Android的线程，可以在JVM中运行
+ * 扫描区域随帧一起传入，解码、录制都使用帧来源拷贝这一帧时的区域，不会因为区域中途变化而读取到旧帧的像素
+ * 设置了{@link FrameRecorder}的时候收到的每一帧都会先录制，包括解码线程忙碌时被丢弃的帧
+ * 开启了{@link StageMetrics}的时候记录帧间隔，解码线程通过{@link #getStageMetrics()}记录各阶段的耗时
+ **/
+final class ScanDispatcher implements FrameConsumer {
+    /**
+     * 解码线程数量上限，再多的话相机和主线程会抢不到CPU
+     */
+    private static final int MAX_WORKER_COUNT = 4;
+    /**
+     * 跳帧统计通知的最小间隔
+     */
+    private static final long SKIP_REPORT_INTERVAL_MS = 1000L;
+
+    private final FrameSource frameSource;
+    private final ScanCallback handler;
+    private final ScanWorker[] workers;
+    private final boolean[] busy;
+    private final Object lock = new Object();
+    private final RoiTracker roiTracker = new RoiTracker(RoiTracker.DEFAULT_MAX_MISSES);
+    private final SharpnessGate sharpnessGate = new SharpnessGate();
+    private final MotionGate motionGate = new MotionGate();
+    private final BinarizerSelector binarizerSelector = new BinarizerSelector();
+    /**
+     * 所有解码线程都忙碌时等待的最新一帧
+     */
+    private byte[] pendingData;
+    private int pendingWidth;
+    private int pendingHeight;
+    private int pendingStride;
+    private int[] pendingScanRect;
+    private long pendingTimestamp;
+    private long pendingSequence;
+    private long nextSequence;
+    /**
+     * 分发批次，暂停、重新开始或者成功之后递增，之前批次的解码结果全部作废
+     */
+    private long generation;
+    private long lastDeliveredSequence = -1;
+    private boolean accepting;
+    private volatile boolean pyramidEnabled = true;
+    private volatile boolean multiCodeEnabled;
+    /**
+     * 多码模式下本次扫描已经通知过的内容
+     */
+    private final Set<String> reportedCodes = new HashSet<>();
+    /**
+     * 连续模式下最近通知过的内容
+     */
+    private final RecentResultCache recentResults = new RecentResultCache(RecentResultCache.DEFAULT_CAPACITY);
+    private volatile boolean continuousEnabled;
+    /**
+     * 录制收到的帧，null表示不录制
+     */
+    private volatile FrameRecorder frameRecorder;
+    /**
+     * 各阶段的耗时统计，null表示不统计
+     */
+    private volatile StageMetrics stageMetrics;
+    /**
+     * 还没有被主线程取走的结果
+     */
+    private List<String> pendingResults;
+    private int deliveredCodeCount;
+    private long sessionStartTime;
+    /**
+     * 本次扫描开始以来收到的帧数
+     */
+    private int frameCount;
+    /**
+     * 本次扫描开始以来被更新的帧替换的帧数
+     */
+    private int droppedFrameCount;
+    /**
+     * 按照跳过原因分别统计的跳帧数量和上一次通知的时间
+     */
+    private final int[] skippedCounts = new int[OnFramesSkippedListener.SKIP_REASON_STILL + 1];
+    private final long[] lastSkipReportTimes = new long[OnFramesSkippedListener.SKIP_REASON_STILL + 1];
+
+    /**
+     * @param frameSource   帧来源，用于归还帧和暂停输出
+     * @param handler       结果的接收者
+     * @param workerCount   解码线程数量，小于等于0表示根据CPU核心数自动选择
+     * @param workerFactory 解码线程的创建方式
+     */
+    ScanDispatcher(FrameSource frameSource, ScanCallback handler, int workerCount, ScanWorker.Factory workerFactory) {
+        this.frameSource = frameSource;
+        this.handler = handler;
+        if (workerCount <= 0) {
+            workerCount = defaultWorkerCount();
+        }
+        workers = new ScanWorker[workerCount];
+        busy = new boolean[workerCount];
+        for (int i = 0; i < workerCount; ++i) {
+            workers[i] = workerFactory.create(this, i);
+        }
+    }
+
+    /**
+     * 根据CPU核心数决定解码线程数量
+     * 留一半的核心给相机、主线程和渲染
+     *
+     * @return 解码线程数量
+     */
+    static int defaultWorkerCount() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(MAX_WORKER_COUNT, cores / 2));
+    }
+
+    int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * 开始接收预览帧
+     */
+    void start() {
+        synchronized (lock) {
+            accepting = true;
+            generation++;
+            frameCount = 0;
+            droppedFrameCount = 0;
+            reportedCodes.clear();
+            recentResults.clear();
+            pendingResults = null;
+            deliveredCodeCount = 0;
+            sessionStartTime = uptimeMillis();
+            for (int i = 0; i < skippedCounts.length; ++i) {
+                skippedCounts[i] = 0;
+                lastSkipReportTimes[i] = 0;
+            }
+        }
+        sharpnessGate.reset();
+        motionGate.reset();
+        binarizerSelector.reset();
+        StageMetrics metrics = stageMetrics;
+        if (null != metrics) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * 停止接收预览帧，同时丢弃还没有开始解码的帧
+     * 正在解码的帧完成之后结果也会被丢弃
+     */
+    void stop() {
+        byte[] stale;
+        synchronized (lock) {
+            accepting = false;
+            generation++;
+            stale = pendingData;
+            pendingData = null;
+            pendingResults = null;
+        }
+        if (null != stale) {
+            frameSource.releaseFrame(stale);
+        }
+    }
+
+    /**
+     * 终止所有解码线程
+     */
+    void quit() {
+        stop();
+        for (ScanWorker worker : workers) {
+            worker.quit();
+        }
+    }
+
+    /**
+     * 提交一帧等待解码
+     * 在帧来源输出帧的线程中调用
+     */
+    @Override
+    public void onFrame(byte[] data, int width, int height, int stride, int[] scanRect, long timestampNanos) {
+        FrameRecorder recorder = frameRecorder;
+        if (null != recorder) {
+            recorder.record(data, width, height, stride, timestampNanos, scanRect);
+        }
+        StageMetrics metrics = stageMetrics;
+        if (null != metrics) {
+            metrics.onFrameArrived(timestampNanos);
+        }
+        byte[] stale = null;
+        ScanWorker worker = null;
+        long sequence;
+        long currentGeneration;
+        synchronized (lock) {
+            sequence = nextSequence++;
+            currentGeneration = generation;
+            if (!accepting) {
+                stale = data;
+            } else {
+                frameCount++;
+                int index = findIdleWorker();
+                if (index >= 0) {
+                    busy[index] = true;
+                    worker = workers[index];
+                } else {
+                    stale = pendingData;
+                    if (null != stale) {
+                        droppedFrameCount++;
+                    }
+                    pendingData = data;
+                    pendingWidth = width;
+                    pendingHeight = height;
+                    pendingStride = stride;
+                    pendingScanRect = scanRect;
+                    pendingTimestamp = timestampNanos;
+                    pendingSequence = sequence;
+                }
+            }
+        }
+        if (null != stale) {
+            frameSource.releaseFrame(stale);
+        }
+        if (null != worker) {
+            worker.decode(data, width, height, stride, scanRect, timestampNanos, sequence, currentGeneration);
+        }
+    }
+
+    /**
+     * 解码线程完成一帧之后回调
+     * 在解码线程中调用，不属于当前分发者的解码线程的回调只归还帧，其余直接忽略
+     *
+     * @param worker     解码线程
+     * @param data       刚刚解码完成的帧
+     * @param timestamp  帧到达的时间
+     * @param sequence   帧序号
+     * @param generation 帧所属的分发批次
+     * @param result     解码结果，失败为null
+     */
+    void onDecodeFinished(ScanWorker worker, byte[] data, long timestamp, long sequence, long generation,
+                          Result result) {
+        int index = indexOf(worker);
+        if (index < 0) {
+            // 例如已经退出的解码线程迟到的回调，不能修改当前解码线程的状态
+            frameSource.releaseFrame(data);
+            return;
+        }
+        boolean deliver = false;
+        byte[] stale = null;
+        byte[] next = null;
+        int nextWidth = 0;
+        int nextHeight = 0;
+        int nextStride = 0;
+        int[] nextScanRect = null;
+        long nextTimestamp = 0;
+        long nextSequence = 0;
+        long nextGeneration = 0;
+        synchronized (lock) {
+            if (null != result && accepting && generation == this.generation
+                    && sequence > lastDeliveredSequence) {
+                deliver = true;
+                lastDeliveredSequence = sequence;
+                // 成功之后停止接收，等待外部重新开始
+                accepting = false;
+                this.generation++;
+                stale = pendingData;
+                pendingData = null;
+            }
+            if (accepting && null != pendingData) {
+                next = pendingData;
+                nextWidth = pendingWidth;
+                nextHeight = pendingHeight;
+                nextStride = pendingStride;
+                nextScanRect = pendingScanRect;
+                nextTimestamp = pendingTimestamp;
+                nextSequence = pendingSequence;
+                nextGeneration = this.generation;
+                pendingData = null;
+            } else {
+                busy[index] = false;
+            }
+        }
+        if (deliver) {
+            // 先让相机停止分发，再归还缓冲，避免缓冲被立即重新填充
+            frameSource.setFrameConsumer(null);
+        }
+        frameSource.releaseFrame(data);
+        if (null != stale) {
+            frameSource.releaseFrame(stale);
+        }
+        if (deliver && null != handler) {
+            // Don't log the barcode contents for security.
+            handler.decodeSuccess(result, timestamp);
+        }
+        if (null != next) {
+            worker.decode(next, nextWidth, nextHeight, nextStride, nextScanRect, nextTimestamp, nextSequence,
+                    nextGeneration);
+        }
+    }
+
+    /**
+     * 多码模式或者连续模式下解码线程识别出了一批二维码
+     * 多码模式只通知本次扫描中第一次出现的内容，连续模式只通知冷却时间内没有通知过的内容，扫描不会停止
+     * 主线程还没有取走上一批的时候新的内容追加到上一批中，不再重复发送消息
+     * 在解码线程中调用
+     *
+     * @param results    识别结果
+     * @param generation 帧所属的分发批次
+     * @return 是否有新的内容
+     */
+    boolean onResultsDecoded(Result[] results, long generation) {
+        boolean fresh = false;
+        boolean post = false;
+        synchronized (lock) {
+            if (!accepting || generation != this.generation) {
+                return false;
+            }
+            long now = uptimeMillis();
+            for (Result result : results) {
+                String text = result.getText();
+                if (null == text) {
+                    continue;
+                }
+                boolean isNew = continuousEnabled ? recentResults.offer(text, now) : reportedCodes.add(text);
+                if (!isNew) {
+                    continue;
+                }
+                fresh = true;
+                deliveredCodeCount++;
+                if (null == pendingResults) {
+                    pendingResults = new ArrayList<>(results.length);
+                    post = true;
+                }
+                pendingResults.add(text);
+            }
+        }
+        if (post && null != handler) {
+            handler.decodeBatchSuccess();
+        }
+        return fresh;
+    }
+
+    /**
+     * 取走等待通知的结果
+     * 在主线程中调用
+     *
+     * @return 上一次取走之后新识别的内容，已经停止扫描的时候返回null
+     */
+    List<String> takeResults() {
+        synchronized (lock) {
+            List<String> results = pendingResults;
+            pendingResults = null;
+            return results;
+        }
+    }
+
+    /**
+     * 填充当前的解码统计
+     *
+     * @param out 输出
+     */
+    void snapshotMetrics(DecodeMetrics out) {
+        binarizerSelector.snapshot(out);
+        synchronized (lock) {
+            out.uniqueCodeCount = deliveredCodeCount;
+            out.sessionMillis = 0 == sessionStartTime ? 0 : uptimeMillis() - sessionStartTime;
+            out.frameCount = frameCount;
+            out.droppedFrameCount = droppedFrameCount;
+            System.arraycopy(skippedCounts, 0, out.skippedFrameCounts, 0, skippedCounts.length);
+        }
+        StageMetrics metrics = stageMetrics;
+        if (null != metrics) {
+            metrics.snapshot(out);
+        }
+    }
+
+    /**
+     * 解码线程跳过了一帧
+     *
+     * @param reason 跳过的原因
+     */
+    void onFrameSkipped(int reason) {
+        int skipped;
+        int total;
+        synchronized (lock) {
+            skippedCounts[reason]++;
+            long now = uptimeMillis();
+            if (now - lastSkipReportTimes[reason] < SKIP_REPORT_INTERVAL_MS) {
+                return;
+            }
+            lastSkipReportTimes[reason] = now;
+            skipped = skippedCounts[reason];
+            total = frameCount;
+        }
+        if (null != handler) {
+            handler.framesSkipped(reason, skipped, total);
+        }
+    }
+
+    RoiTracker getRoiTracker() {
+        return roiTracker;
+    }
+
+    SharpnessGate getSharpnessGate() {
+        return sharpnessGate;
+    }
+
+    MotionGate getMotionGate() {
+        return motionGate;
+    }
+
+    void setPyramidEnabled(boolean pyramidEnabled) {
+        this.pyramidEnabled = pyramidEnabled;
+    }
+
+    boolean isPyramidEnabled() {
+        return pyramidEnabled;
+    }
+
+    void setMultiCodeEnabled(boolean multiCodeEnabled) {
+        this.multiCodeEnabled = multiCodeEnabled;
+    }
+
+    boolean isMultiCodeEnabled() {
+        return multiCodeEnabled;
+    }
+
+    void setContinuousEnabled(boolean continuousEnabled) {
+        this.continuousEnabled = continuousEnabled;
+    }
+
+    boolean isContinuousEnabled() {
+        return continuousEnabled;
+    }
+
+    void setResultCooldown(long cooldownMillis) {
+        synchronized (lock) {
+            recentResults.setCooldownMillis(cooldownMillis);
+        }
+    }
+
+    /**
+     * @param frameRecorder 录制收到的帧，null表示停止录制
+     */
+    void setFrameRecorder(FrameRecorder frameRecorder) {
+        this.frameRecorder = frameRecorder;
+    }
+
+    /**
+     * @param enabled 是否统计各阶段的耗时，开启的时候从零开始
+     */
+    void setStageMetricsEnabled(boolean enabled) {
+        if (!enabled) {
+            stageMetrics = null;
+        } else if (null == stageMetrics) {
+            stageMetrics = new StageMetrics();
+        }
+    }
+
+    /**
+     * @return 各阶段的耗时统计，没有开启的时候返回null
+     */
+    StageMetrics getStageMetrics() {
+        return stageMetrics;
+    }
+
+    BinarizerSelector getBinarizerSelector() {
+        return binarizerSelector;
+    }
+
+    /**
+     * 单调递增的毫秒时间，只用于计算间隔
+     */
+    static long uptimeMillis() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    private int findIdleWorker() {
+        for (int i = 0; i < busy.length; ++i) {
+            if (!busy[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(ScanWorker worker) {
+        for (int i = 0; i < workers.length; ++i) {
+            if (workers[i] == worker) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
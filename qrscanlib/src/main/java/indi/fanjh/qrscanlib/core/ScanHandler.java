@@ -16,17 +16,11 @@
 
 package indi.fanjh.qrscanlib.core;
 
-import android.graphics.Rect;
 import android.os.Handler;
-import android.os.Looper;
+import android.os.HandlerThread;
 import android.os.Message;
 
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.PlanarYUVLuminanceSource;
-import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.qrcode.QRCodeReader;
 
 /**
  * @author fanjh
@@ -42,89 +36,86 @@ import com.google.zxing.qrcode.QRCodeReader;
  * 1.全屏扫描区域的时候没有任何必要进行反转，纯属多余操作，可以提速200ms以上
  * 2.如果需要裁剪，那么裁剪的时候需要注意数据实际上是横向的，其次就是效果相对于全屏来说并不明显
  *
+ * 每一个ScanHandler对应一个解码线程，同一时间只解码一帧，帧的分发由{@link ScanDispatcher}负责
+ * 具体的解码过程在{@link FrameDecoder}中，这里只负责线程和消息
+ *
  **/
-final class ScanHandler extends Handler {
+final class ScanHandler extends Handler implements ScanWorker {
     private static final int MSG_DECODE = 1;
-    private final QRCodeReader multiFormatReader;
-    private CameraManager cameraManager;
-    private CaptureActivityHandler handler;
-
-    ScanHandler(Looper looper, CameraManager cameraManager, CaptureActivityHandler handler) {
-        super(looper);
-        this.cameraManager = cameraManager;
-        this.handler = handler;
-
-        multiFormatReader = new QRCodeReader();
 
+    /**
+     * 每一个解码线程对应一个HandlerThread
+     */
+    static final ScanWorker.Factory FACTORY = new ScanWorker.Factory() {
+        @Override
+        public ScanWorker create(ScanDispatcher dispatcher, int index) {
+            //启动子线程用于处理解码任务
+            HandlerThread thread = new HandlerThread("scan_thread_" + index);
+            thread.start();
+            return new ScanHandler(thread, dispatcher);
+        }
+    };
+
+    private final HandlerThread thread;
+    private final ScanDispatcher dispatcher;
+    private final FrameDecoder decoder;
+    /**
+     * 当前分配到的帧，由分发者在解码线程空闲的时候写入
+     */
+    private volatile byte[] frameData;
+    private volatile int frameWidth;
+    private volatile int frameHeight;
+    private volatile int frameStride;
+    private volatile int[] frameScanRect;
+    private volatile long frameTimestamp;
+    private volatile long frameSequence;
+    private volatile long frameGeneration;
+
+    private ScanHandler(HandlerThread thread, ScanDispatcher dispatcher) {
+        super(thread.getLooper());
+        this.thread = thread;
+        this.dispatcher = dispatcher;
+        decoder = new FrameDecoder(dispatcher);
     }
 
     @Override
     public void handleMessage(Message message) {
         switch (message.what) {
             case MSG_DECODE:
-                realDecode((byte[]) message.obj, message.arg1, message.arg2);
+                byte[] data = frameData;
+                long timestamp = frameTimestamp;
+                long sequence = frameSequence;
+                long generation = frameGeneration;
+                frameData = null;
+                if (null != data) {
+                    Result result = decoder.decode(data, frameWidth, frameHeight, frameStride, frameScanRect, timestamp,
+                            generation);
+                    dispatcher.onDecodeFinished(this, data, timestamp, sequence, generation, result);
+                }
                 break;
             default:
                 break;
         }
     }
 
-    private void realDecode(byte[] data, int width, int height) {
-        /*Size size = cameraManager.getPreviewSize();
-
-        // 这里需要将获取的data翻转一下，因为相机默认拿的的横屏的数据
-        byte[] rotatedData = new byte[data.length];
-        for (int y = 0; y < size.height; y++) {
-            for (int x = 0; x < size.width; x++) {
-                rotatedData[x * size.height + size.height - y - 1] = data[x + y * size.width];
-            }
-        }
-
-        // 宽高也要调整
-        int tmp = size.width;
-        size.width = size.height;
-        size.height = tmp;*/
-
-        Result rawResult = null;
-        PlanarYUVLuminanceSource source = buildLuminanceSource(data, width, height);
-        if (source != null) {
-            BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-            try {
-                rawResult = multiFormatReader.decode(bitmap);
-            } catch (ReaderException re) {
-                // continue
-            } finally {
-                multiFormatReader.reset();
-            }
-        }
-
-        if (rawResult != null) {
-            // Don't log the barcode contents for security.
-            if (handler != null) {
-                handler.decodeSuccess(rawResult);
-            }
-        } else {
-            if (handler != null) {
-                handler.decodeFail();
-            }
-        }
-    }
-
-    void decode(byte[] data, int width, int height) {
-        Message message = obtainMessage();
-        message.what = MSG_DECODE;
-        message.obj = data;
-        message.arg1 = width;
-        message.arg2 = height;
-        sendMessage(message);
+    @Override
+    public void decode(byte[] data, int width, int height, int stride, int[] scanRect, long timestampNanos,
+                       long sequence, long generation) {
+        frameWidth = width;
+        frameHeight = height;
+        frameStride = stride;
+        frameScanRect = scanRect;
+        frameTimestamp = timestampNanos;
+        frameSequence = sequence;
+        frameGeneration = generation;
+        frameData = data;
+        sendEmptyMessage(MSG_DECODE);
     }
 
-    private PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
-        Rect rect = handler.getScanRect();
-        if (rect == null) {
-            return new PlanarYUVLuminanceSource(data, width, height, 0, 0, width, height, false);
-        }
-        return new PlanarYUVLuminanceSource(data, width, height, rect.left, rect.top, rect.width(), rect.height(), false);
+    @Override
+    public void quit() {
+        removeCallbacksAndMessages(null);
+        thread.quit();
     }
 
 }
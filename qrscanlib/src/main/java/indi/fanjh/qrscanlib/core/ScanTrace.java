@@ -0,0 +1,77 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 扫码流程的跟踪入口
+ * @note 全局只有一个{@link ScanTracer}，默认为null，也就是不跟踪
+ * 各处在一段流程开始之前读取一次当前的跟踪者，为null的时候只有一次判空，不会调用任何方法，也不会拼接字符串
+ * 同一段流程的开始和结束使用同一个跟踪者，中途切换跟踪者不会出现不成对的调用
+ * 1.{@link CaptureActivityDelegate#setSystemTraceEnabled(boolean)}：写入android.os.Trace，和systrace、Perfetto中的卡顿和GC对齐
+ * 2.{@link #setTracer(ScanTracer)}：设置自定义的跟踪者，例如测试中在内存里记录每一段的线程和耗时
+ **/
+public final class ScanTrace {
+    /**
+     * 相机输出一帧，包括录制和交给分发者
+     */
+    public static final String FRAME_DELIVERY = "QRScan:frameDelivery";
+    /**
+     * 解码线程处理一帧的全过程
+     */
+    public static final String DECODE_FRAME = "QRScan:decodeFrame";
+    /**
+     * 计算解码区域以及画面静止、清晰度和光照的检查
+     */
+    public static final String PREPARE = "QRScan:prepare";
+    /**
+     * 降采样
+     */
+    public static final String DOWNSAMPLE = "QRScan:downsample";
+    public static final String BINARIZE = "QRScan:binarize";
+    /**
+     * 寻找定位点和透视变换
+     */
+    public static final String DETECT = "QRScan:detect";
+    /**
+     * 纠错和解析内容
+     */
+    public static final String DECODE = "QRScan:decode";
+    /**
+     * 多码模式下的定位和解码
+     */
+    public static final String DECODE_MULTIPLE = "QRScan:decodeMultiple";
+    /**
+     * 主线程处理扫码页面的消息，后面跟消息的名称
+     */
+    public static final String HANDLER_PREFIX = "QRScan:handler:";
+    /**
+     * ZxingHelper读取文件或者Bitmap的像素
+     */
+    public static final String LOAD_PICTURE = "QRScan:loadPicture";
+    /**
+     * ZxingHelper中的解码
+     */
+    public static final String DECODE_PICTURE = "QRScan:decodePicture";
+
+    private static volatile ScanTracer tracer;
+
+    private ScanTrace() {
+    }
+
+    /**
+     * 设置跟踪者，对之后开始的流程生效
+     *
+     * @param tracer 跟踪者，null表示关闭跟踪
+     */
+    public static void setTracer(ScanTracer tracer) {
+        ScanTrace.tracer = tracer;
+    }
+
+    /**
+     * @return 当前的跟踪者，没有开启的时候返回null
+     */
+    public static ScanTracer getTracer() {
+        return tracer;
+    }
+
+}
@@ -0,0 +1,24 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 扫码流程的跟踪
+ * @note 和android.os.Trace的用法一致，同一个线程中的beginSection和endSection成对出现并且按照栈的顺序嵌套
+ * 通过{@link ScanTrace#setTracer(ScanTracer)}设置，各个阶段的名称见{@link ScanTrace}中的常量
+ * 会在相机、解码、主线程以及图片识别的线程中同时调用，实现需要是线程安全的
+ **/
+public interface ScanTracer {
+
+    /**
+     * 开始一段跟踪
+     *
+     * @param name 名称
+     */
+    void beginSection(String name);
+
+    /**
+     * 结束当前线程中最近开始的一段跟踪
+     */
+    void endSection();
+}
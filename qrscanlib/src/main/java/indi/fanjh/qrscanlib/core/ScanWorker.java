@@ -0,0 +1,47 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 解码线程
+ * @note 每一个解码线程持有自己的{@link FrameDecoder}，同一时间只解码一帧，完成之后回调{@link ScanDispatcher#onDecodeFinished}
+ * 1.{@link ScanHandler}基于HandlerThread，在应用中使用
+ * 2.{@link ThreadScanWorker}基于普通的线程，不依赖Android，可以在JVM中运行
+ **/
+interface ScanWorker {
+
+    /**
+     * 分配一帧给当前解码线程
+     * 只有分发者在当前线程空闲的时候调用
+     *
+     * @param data           帧数据
+     * @param width          宽度
+     * @param height         高度
+     * @param stride         行跨度
+     * @param scanRect       这一帧的扫描区域，null表示完整的画面
+     * @param timestampNanos 帧到达的时间
+     * @param sequence       帧序号
+     * @param generation     分发批次，用于丢弃被取消的结果
+     */
+    void decode(byte[] data, int width, int height, int stride, int[] scanRect, long timestampNanos, long sequence,
+                long generation);
+
+    /**
+     * 终止解码线程，还没有开始的帧直接丢弃
+     */
+    void quit();
+
+    /**
+     * 创建解码线程
+     */
+    interface Factory {
+
+        /**
+         * @param dispatcher 分发者
+         * @param index      线程序号
+         * @return 已经启动的解码线程
+         */
+        ScanWorker create(ScanDispatcher dispatcher, int index);
+    }
+
+}
@@ -0,0 +1,98 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 解码之前的清晰度检查
+ * @note 对焦过程中大部分帧都是模糊的，完整解码一帧需要几十毫秒最后还是失败
+ * 这里隔行隔列采样计算拉普拉斯算子的方差作为清晰度，明显低于最近清晰度峰值的帧直接跳过
+ * 1.峰值会随着帧数衰减，场景变化之后阈值能够自动降下来
+ * 2.连续跳过太多帧之后强制解码一帧，避免场景本身纹理很少的时候一直不解码
+ * 多个解码线程共享同一个实例，阈值相关的方法都是同步的
+ **/
+final class SharpnessGate {
+    /**
+     * 采样的行间隔
+     */
+    private static final int ROW_STEP = 4;
+    /**
+     * 采样的列间隔
+     */
+    private static final int COLUMN_STEP = 2;
+    /**
+     * 清晰度低于峰值的这个比例就跳过
+     */
+    private static final float THRESHOLD_RATIO = 0.4f;
+    /**
+     * 每一帧峰值的衰减
+     */
+    private static final float PEAK_DECAY = 0.97f;
+    /**
+     * 清晰度低于这个值的时候不做判断，基本上是纯色画面，交给解码快速失败即可
+     */
+    private static final int MIN_SCORE = 8;
+    /**
+     * 连续跳过的最大帧数
+     */
+    private static final int MAX_CONSECUTIVE_SKIPS = 10;
+
+    private float peak;
+    private int consecutiveSkips;
+
+    /**
+     * 计算指定区域的清晰度
+     *
+     * @param data   亮度数据
+     * @param stride 行跨度
+     * @param left   区域左边
+     * @param top    区域上边
+     * @param right  区域右边
+     * @param bottom 区域下边
+     * @return 拉普拉斯算子的方差
+     */
+    static int score(byte[] data, int stride, int left, int top, int right, int bottom) {
+        long sum = 0;
+        long squareSum = 0;
+        int count = 0;
+        for (int y = top + 1; y < bottom - 1; y += ROW_STEP) {
+            int offset = y * stride;
+            for (int x = left + 1; x < right - 1; x += COLUMN_STEP) {
+                int index = offset + x;
+                int laplacian = 4 * (data[index] & 0xFF)
+                        - (data[index - 1] & 0xFF) - (data[index + 1] & 0xFF)
+                        - (data[index - stride] & 0xFF) - (data[index + stride] & 0xFF);
+                sum += laplacian;
+                squareSum += laplacian * laplacian;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long mean = sum / count;
+        return (int) Math.min(Integer.MAX_VALUE, squareSum / count - mean * mean);
+    }
+
+    /**
+     * 判断当前帧是否值得解码，同时更新阈值
+     *
+     * @param score 当前帧的清晰度
+     * @return true表示需要解码
+     */
+    synchronized boolean accept(int score) {
+        peak = Math.max(peak * PEAK_DECAY, score);
+        if (score < MIN_SCORE || score >= peak * THRESHOLD_RATIO
+                || consecutiveSkips >= MAX_CONSECUTIVE_SKIPS) {
+            consecutiveSkips = 0;
+            return true;
+        }
+        consecutiveSkips++;
+        return false;
+    }
+
+    synchronized void reset() {
+        peak = 0;
+        consecutiveSkips = 0;
+    }
+
+}
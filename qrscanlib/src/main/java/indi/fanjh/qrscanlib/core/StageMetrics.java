@@ -0,0 +1,59 @@
+package indi.fanjh.qrscanlib.core;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 解码流水线各阶段的耗时统计
+ * @note 每个阶段对应一个{@link LatencyHistogram}，阶段的定义见{@link DecodeMetrics#STAGE_FRAME_INTERVAL}等常量
+ * 只有开启统计的时候{@link ScanDispatcher}才会持有实例，关闭的时候各处只有一次判空，不会调用System.nanoTime
+ * 帧来源、多个解码线程和主线程都会记录，方法都是同步的，每一帧只有几次没有竞争的加锁
+ **/
+final class StageMetrics {
+    private final LatencyHistogram[] histograms = new LatencyHistogram[DecodeMetrics.STAGE_COUNT];
+    /**
+     * 上一帧到达的时间，用于计算帧间隔
+     */
+    private long lastFrameNanos;
+
+    StageMetrics() {
+        for (int i = 0; i < DecodeMetrics.STAGE_COUNT; ++i) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * 记录一个阶段的耗时
+     *
+     * @param stage 阶段
+     * @param nanos 耗时，纳秒
+     */
+    synchronized void record(int stage, long nanos) {
+        histograms[stage].record(nanos);
+    }
+
+    /**
+     * 帧来源输出了一帧，记录和上一帧的间隔
+     *
+     * @param timestampNanos 帧到达的时间
+     */
+    synchronized void onFrameArrived(long timestampNanos) {
+        if (0 != lastFrameNanos) {
+            histograms[DecodeMetrics.STAGE_FRAME_INTERVAL].record(timestampNanos - lastFrameNanos);
+        }
+        lastFrameNanos = timestampNanos;
+    }
+
+    synchronized void snapshot(DecodeMetrics out) {
+        for (int i = 0; i < DecodeMetrics.STAGE_COUNT; ++i) {
+            out.stageHistograms[i].copyFrom(histograms[i]);
+        }
+    }
+
+    synchronized void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        lastFrameNanos = 0;
+    }
+
+}
@@ -0,0 +1,40 @@
+package indi.fanjh.qrscanlib.core;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 写入系统跟踪的跟踪者
+ * @note 使用android.os.Trace，需要Android4.3及以上，抓取systrace或者Perfetto的时候可以看到各个阶段和卡顿、GC的先后
+ * android.os.Trace本身只在抓取的时候写入，平时的开销很小，但是扫码页面不需要的时候仍然建议关闭
+ **/
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+final class SystemTracer implements ScanTracer {
+
+    private SystemTracer() {
+    }
+
+    /**
+     * @return 跟踪者，系统版本不支持的时候返回null
+     */
+    static ScanTracer create() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return null;
+        }
+        return new SystemTracer();
+    }
+
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+
+}
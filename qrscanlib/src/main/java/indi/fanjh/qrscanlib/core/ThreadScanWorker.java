@@ -0,0 +1,105 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.Result;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 基于普通线程的解码线程
+ * @note 和{@link ScanHandler}的行为一致，但是不依赖Looper和Handler，可以在JVM中运行整个解码流程
+ * 一般配合{@link MemoryFrameSource}用于测量和回放
+ **/
+final class ThreadScanWorker implements ScanWorker, Runnable {
+
+    static final ScanWorker.Factory FACTORY = new ScanWorker.Factory() {
+        @Override
+        public ScanWorker create(ScanDispatcher dispatcher, int index) {
+            ThreadScanWorker worker = new ThreadScanWorker(dispatcher);
+            Thread thread = new Thread(worker, "scan_thread_" + index);
+            thread.setDaemon(true);
+            thread.start();
+            return worker;
+        }
+    };
+
+    private final ScanDispatcher dispatcher;
+    private final FrameDecoder decoder;
+    private final Object lock = new Object();
+    private byte[] frameData;
+    private int frameWidth;
+    private int frameHeight;
+    private int frameStride;
+    private int[] frameScanRect;
+    private long frameTimestamp;
+    private long frameSequence;
+    private long frameGeneration;
+    private boolean quit;
+
+    private ThreadScanWorker(ScanDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        decoder = new FrameDecoder(dispatcher);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            byte[] data;
+            int width;
+            int height;
+            int stride;
+            int[] scanRect;
+            long timestamp;
+            long sequence;
+            long generation;
+            synchronized (lock) {
+                while (!quit && null == frameData) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (quit) {
+                    return;
+                }
+                data = frameData;
+                width = frameWidth;
+                height = frameHeight;
+                stride = frameStride;
+                scanRect = frameScanRect;
+                timestamp = frameTimestamp;
+                sequence = frameSequence;
+                generation = frameGeneration;
+                frameData = null;
+            }
+            Result result = decoder.decode(data, width, height, stride, scanRect, timestamp, generation);
+            dispatcher.onDecodeFinished(this, data, timestamp, sequence, generation, result);
+        }
+    }
+
+    @Override
+    public void decode(byte[] data, int width, int height, int stride, int[] scanRect, long timestampNanos,
+                       long sequence, long generation) {
+        synchronized (lock) {
+            frameWidth = width;
+            frameHeight = height;
+            frameStride = stride;
+            frameScanRect = scanRect;
+            frameTimestamp = timestampNanos;
+            frameSequence = sequence;
+            frameGeneration = generation;
+            frameData = data;
+            lock.notify();
+        }
+    }
+
+    @Override
+    public void quit() {
+        synchronized (lock) {
+            quit = true;
+            frameData = null;
+            lock.notify();
+        }
+    }
+
+}
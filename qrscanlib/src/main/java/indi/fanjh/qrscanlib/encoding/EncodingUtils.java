@@ -3,15 +3,8 @@ package indi.fanjh.qrscanlib.encoding;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
-import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
-
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * 二维码生成工具类
@@ -32,27 +25,8 @@ public class EncodingUtils {
             if (content == null || "".equals(content)) {
                 return null;
             }
-            // 配置参数
-            Map<EncodeHintType, Object> hints = new HashMap<>();
-            hints.put(EncodeHintType.CHARACTER_SET, "utf-8");
-            // 容错级别
-            hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
-            hints.put(EncodeHintType.MARGIN,1);
-            // 图像数据转换，使用了矩阵转换
-            BitMatrix bitMatrix = new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, widthPix,
-                    heightPix, hints);
-            int[] pixels = new int[widthPix * heightPix];
-            // 下面这里按照二维码的算法，逐个生成二维码的图片，
-            // 两个for循环是图片横列扫描的结果
-            for (int y = 0; y < heightPix; y++) {
-                for (int x = 0; x < widthPix; x++) {
-                    if (bitMatrix.get(x, y)) {
-                        pixels[y * widthPix + x] = 0xff000000;
-                    } else {
-                        pixels[y * widthPix + x] = 0xffffffff;
-                    }
-                }
-            }
+            BitMatrix bitMatrix = QRCodeRenderer.encode(content, widthPix, heightPix);
+            int[] pixels = QRCodeRenderer.render(bitMatrix, widthPix, heightPix);
             // 生成二维码图片的格式，使用ARGB_8888
             Bitmap bitmap = Bitmap.createBitmap(widthPix, heightPix, Bitmap.Config.ARGB_8888);
             bitmap.setPixels(pixels, 0, widthPix, 0, 0, widthPix, heightPix);
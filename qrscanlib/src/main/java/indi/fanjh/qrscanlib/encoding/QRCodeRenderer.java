@@ -0,0 +1,70 @@
+package indi.fanjh.qrscanlib.encoding;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 二维码编码和矩阵转换为像素
+ * @note {@link EncodingUtils}中不依赖Android的部分，可以在JVM中测量
+ **/
+final class QRCodeRenderer {
+    static final int COLOR_DARK = 0xff000000;
+    static final int COLOR_LIGHT = 0xffffffff;
+
+    private QRCodeRenderer() {
+    }
+
+    /**
+     * 使用{@link EncodingUtils#createQRCode}的参数编码
+     *
+     * @param content   内容
+     * @param widthPix  宽度，0表示每个模块一个像素
+     * @param heightPix 高度，0表示每个模块一个像素
+     * @return 矩阵
+     * @throws WriterException 编码失败，例如内容过长
+     */
+    static BitMatrix encode(String content, int widthPix, int heightPix) throws WriterException {
+        // 配置参数
+        Map<EncodeHintType, Object> hints = new HashMap<>();
+        hints.put(EncodeHintType.CHARACTER_SET, "utf-8");
+        // 容错级别
+        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
+        hints.put(EncodeHintType.MARGIN, 1);
+        // 图像数据转换，使用了矩阵转换
+        return new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, widthPix, heightPix, hints);
+    }
+
+    /**
+     * 把矩阵转换为ARGB像素，黑色为二维码的模块，白色为背景
+     *
+     * @param bitMatrix 矩阵
+     * @param width     宽度
+     * @param height    高度
+     * @return 像素，行跨度等于宽度
+     */
+    static int[] render(BitMatrix bitMatrix, int width, int height) {
+        int[] pixels = new int[width * height];
+        // 下面这里按照二维码的算法，逐个生成二维码的图片，
+        // 两个for循环是图片横列扫描的结果
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (bitMatrix.get(x, y)) {
+                    pixels[y * width + x] = COLOR_DARK;
+                } else {
+                    pixels[y * width + x] = COLOR_LIGHT;
+                }
+            }
+        }
+        return pixels;
+    }
+
+}
@@ -0,0 +1,105 @@
+package indi.fanjh.qrscanlib;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 内存中的图片，按照采样率求平均值读取，和BitmapFactory的采样接近
+ * 可以在多个线程中同时读取
+ */
+final class ArrayImageSource implements MultiScaleDecoder.ImageSource {
+    private final int width;
+    private final int height;
+    private final byte[] luminances;
+    final List<Integer> loads = Collections.synchronizedList(new ArrayList<Integer>());
+    private int maxLoadedPixels;
+    /**
+     * 模拟图片损坏或者内存不足，读取时返回null
+     */
+    volatile boolean failLoads;
+
+    ArrayImageSource(int width, int height) {
+        this.width = width;
+        this.height = height;
+        luminances = new byte[width * height];
+        Random random = new Random(width);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                luminances[y * width + x] = (byte) (140 + x * 60 / width + random.nextInt(24));
+            }
+        }
+    }
+
+    /**
+     * 在图片中绘制二维码
+     *
+     * @return 二维码包括静区的边长
+     */
+    int drawCode(String content, int left, int top, int moduleSize) throws Exception {
+        BitMatrix code = new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, 0, 0,
+                Collections.singletonMap(EncodeHintType.MARGIN, 4));
+        for (int y = 0; y < code.getHeight() * moduleSize; ++y) {
+            for (int x = 0; x < code.getWidth() * moduleSize; ++x) {
+                luminances[(top + y) * width + left + x] =
+                        (byte) (code.get(x / moduleSize, y / moduleSize) ? 40 : 220);
+            }
+        }
+        return code.getWidth() * moduleSize;
+    }
+
+    synchronized int getMaxLoadedPixels() {
+        return maxLoadedPixels;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public LuminanceSource load(int left, int top, int right, int bottom, int sampleSize) {
+        loads.add(sampleSize);
+        if (failLoads) {
+            return null;
+        }
+        int outWidth = (right - left) / sampleSize;
+        int outHeight = (bottom - top) / sampleSize;
+        synchronized (this) {
+            maxLoadedPixels = Math.max(maxLoadedPixels, outWidth * outHeight);
+        }
+        byte[] out = new byte[outWidth * outHeight];
+        int area = sampleSize * sampleSize;
+        for (int y = 0; y < outHeight; ++y) {
+            for (int x = 0; x < outWidth; ++x) {
+                int sum = 0;
+                for (int dy = 0; dy < sampleSize; ++dy) {
+                    int row = (top + y * sampleSize + dy) * width + left + x * sampleSize;
+                    for (int dx = 0; dx < sampleSize; ++dx) {
+                        sum += luminances[row + dx] & 0xFF;
+                    }
+                }
+                out[y * outWidth + x] = (byte) (sum / area);
+            }
+        }
+        return new PlanarYUVLuminanceSource(out, outWidth, outHeight, 0, 0, outWidth, outHeight, false);
+    }
+
+    @Override
+    public void release() {
+    }
+
+}
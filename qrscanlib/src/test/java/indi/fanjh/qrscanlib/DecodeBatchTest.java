@@ -0,0 +1,213 @@
+package indi.fanjh.qrscanlib;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 批量识别
+ */
+public class DecodeBatchTest {
+    private static final int SIZE = 200;
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void batch_reportsEachItemAndProgress() throws Exception {
+        final int total = 12;
+        final int[][] pixels = new int[total][];
+        for (int i = 0; i < total; ++i) {
+            // 每隔三张放一张空白图片
+            pixels[i] = i % 3 == 2 ? blank() : encode("item-" + i);
+        }
+        RecordingCallback callback = new RecordingCallback(total);
+        DecodeBatch batch = new DecodeBatch(total, new DecodeBatch.ItemDecoder() {
+            @Override
+            public String decode(PictureDecoder decoder, int index) throws ReaderException {
+                return decoder.decodeArgb(pixels[index], SIZE, SIZE).getText();
+            }
+        }, callback, DIRECT);
+        batch.start(pool, 4);
+
+        assertTrue(callback.finished.await(30, TimeUnit.SECONDS));
+        assertFalse(callback.cancelled);
+        assertEquals(total, batch.getFinishedCount());
+        assertEquals(total, callback.progressCount.get());
+        assertEquals(total, callback.maxProgress.get());
+        for (int i = 0; i < total; ++i) {
+            if (i % 3 == 2) {
+                assertNull(callback.results[i]);
+            } else {
+                assertEquals("item-" + i, callback.results[i]);
+            }
+        }
+    }
+
+    @Test
+    public void batch_boundsItemsInFlight() throws Exception {
+        final int total = 40;
+        final int parallelism = 3;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger decoders = new AtomicInteger();
+        RecordingCallback callback = new RecordingCallback(total);
+        DecodeBatch batch = new DecodeBatch(total, new DecodeBatch.ItemDecoder() {
+            private final Set<PictureDecoder> seen = Collections.newSetFromMap(
+                    new ConcurrentHashMap<PictureDecoder, Boolean>());
+
+            @Override
+            public String decode(PictureDecoder decoder, int index) throws ReaderException {
+                if (seen.add(decoder)) {
+                    decoders.incrementAndGet();
+                }
+                int current = inFlight.incrementAndGet();
+                while (true) {
+                    int max = maxInFlight.get();
+                    if (current <= max || maxInFlight.compareAndSet(max, current)) {
+                        break;
+                    }
+                }
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                throw NotFoundException.getNotFoundInstance();
+            }
+        }, callback, DIRECT);
+        batch.start(pool, parallelism);
+
+        assertTrue(callback.finished.await(30, TimeUnit.SECONDS));
+        assertEquals(total, callback.progressCount.get());
+        assertTrue(maxInFlight.get() <= parallelism);
+        assertEquals(parallelism, decoders.get());
+    }
+
+    @Test
+    public void cancel_stopsPullingItemsAndSuppressesResults() throws Exception {
+        final int total = 100;
+        final CountDownLatch firstItem = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingCallback callback = new RecordingCallback(total);
+        final DecodeBatch batch = new DecodeBatch(total, new DecodeBatch.ItemDecoder() {
+            @Override
+            public String decode(PictureDecoder decoder, int index) throws ReaderException {
+                firstItem.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw NotFoundException.getNotFoundInstance();
+            }
+        }, callback, DIRECT);
+        batch.start(pool, 2);
+        assertTrue(firstItem.await(30, TimeUnit.SECONDS));
+        batch.cancel();
+        release.countDown();
+
+        assertTrue(callback.finished.await(30, TimeUnit.SECONDS));
+        assertTrue(callback.cancelled);
+        assertTrue(batch.isCancelled());
+        // 只有取消之前已经取到的图片会识别完
+        assertTrue(batch.getFinishedCount() <= 2);
+        assertEquals(0, callback.progressCount.get());
+    }
+
+    @Test
+    public void emptyBatch_finishesImmediately() throws Exception {
+        RecordingCallback callback = new RecordingCallback(0);
+        new DecodeBatch(0, null, callback, DIRECT).start(pool, 4);
+        assertTrue(callback.finished.await(0, TimeUnit.SECONDS));
+        assertFalse(callback.cancelled);
+    }
+
+    private static int[] encode(String content) throws Exception {
+        BitMatrix code = new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, SIZE, SIZE);
+        int[] pixels = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; ++y) {
+            for (int x = 0; x < SIZE; ++x) {
+                pixels[y * SIZE + x] = code.get(x, y) ? 0xFF000000 : 0xFFFFFFFF;
+            }
+        }
+        return pixels;
+    }
+
+    private static int[] blank() {
+        int[] pixels = new int[SIZE * SIZE];
+        Arrays.fill(pixels, 0xFFFFFFFF);
+        return pixels;
+    }
+
+    private static final class RecordingCallback implements OnBatchResultCallback {
+        final String[] results;
+        final AtomicInteger progressCount = new AtomicInteger();
+        final AtomicInteger maxProgress = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile boolean cancelled;
+
+        RecordingCallback(int total) {
+            results = new String[total];
+        }
+
+        @Override
+        public synchronized void onItemResult(int index, String result) {
+            results[index] = result;
+        }
+
+        @Override
+        public synchronized void onProgress(int finished, int total) {
+            progressCount.incrementAndGet();
+            if (finished > maxProgress.get()) {
+                maxProgress.set(finished);
+            }
+        }
+
+        @Override
+        public void onBatchFinished(boolean cancelled) {
+            this.cancelled = cancelled;
+            finished.countDown();
+        }
+    }
+
+}
@@ -0,0 +1,200 @@
+package indi.fanjh.qrscanlib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 图片识别结果的缓存
+ */
+public class DecodeResultCacheTest {
+    private File directory;
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("result-cache", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+        cacheFile = new File(directory, "results");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void memory_evictsLeastRecentlyUsed() {
+        DecodeResultCache cache = new DecodeResultCache(2, null, 0);
+        cache.put("a", new String[]{"1"});
+        cache.put("b", new String[]{"2"});
+        assertNotNull(cache.get("a"));
+        cache.put("c", new String[]{"3"});
+
+        assertNull(cache.get("b"));
+        assertArrayEquals(new String[]{"1"}, cache.get("a"));
+        assertArrayEquals(new String[]{"3"}, cache.get("c"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void negativeResults_areCached() {
+        DecodeResultCache cache = new DecodeResultCache(4, null, 0);
+        assertNull(cache.get("blank"));
+        cache.put("blank", null);
+        assertEquals(0, cache.get("blank").length);
+    }
+
+    @Test
+    public void disk_survivesNewInstance() {
+        DecodeResultCache cache = new DecodeResultCache(1, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES);
+        cache.put("a", new String[]{"https://github.com/dda135/QRScanner"});
+        cache.put("b", new String[0]);
+        cache.put("c", new String[]{"x", "y"});
+        // 内存中只剩c，a和b从磁盘读取
+        assertArrayEquals(new String[]{"https://github.com/dda135/QRScanner"}, cache.get("a"));
+
+        DecodeResultCache reopened = new DecodeResultCache(4, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES);
+        assertArrayEquals(new String[]{"https://github.com/dda135/QRScanner"}, reopened.get("a"));
+        assertEquals(0, reopened.get("b").length);
+        assertArrayEquals(new String[]{"x", "y"}, reopened.get("c"));
+        assertNull(reopened.get("d"));
+
+        reopened.clear();
+        assertNull(new DecodeResultCache(4, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES).get("a"));
+    }
+
+    @Test
+    public void disk_compactsToRecentEntriesWithinLimit() {
+        long maxBytes = 4096;
+        DecodeResultCache cache = new DecodeResultCache(1, cacheFile, maxBytes);
+        for (int i = 0; i < 200; ++i) {
+            cache.put("key-" + i, new String[]{"result-" + i});
+            // 反复使用的结果在重写文件的时候保留
+            cache.get("key-0");
+            assertTrue(cache.getDiskBytes() <= maxBytes);
+        }
+        assertTrue(cache.getDiskEntryCount() < 200);
+
+        DecodeResultCache reopened = new DecodeResultCache(1, cacheFile, maxBytes);
+        assertArrayEquals(new String[]{"result-199"}, reopened.get("key-199"));
+        assertArrayEquals(new String[]{"result-0"}, reopened.get("key-0"));
+        assertNull(reopened.get("key-1"));
+    }
+
+    @Test
+    public void disk_truncatesIncompleteRecord() throws IOException {
+        DecodeResultCache cache = new DecodeResultCache(1, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES);
+        cache.put("a", new String[]{"1"});
+        cache.put("b", new String[]{"2"});
+        long length = cacheFile.length();
+        // 模拟写入一半的时候进程被杀
+        RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+        file.setLength(length - 2);
+        file.close();
+
+        DecodeResultCache reopened = new DecodeResultCache(4, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES);
+        assertArrayEquals(new String[]{"1"}, reopened.get("a"));
+        assertNull(reopened.get("b"));
+        reopened.put("c", new String[]{"3"});
+        assertArrayEquals(new String[]{"3"},
+                new DecodeResultCache(4, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES).get("c"));
+    }
+
+    @Test
+    public void disk_truncatesFromCorruptRecord() throws IOException {
+        DecodeResultCache cache = new DecodeResultCache(1, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES);
+        cache.put("a", new String[]{"1"});
+        long corruptOffset = cacheFile.length();
+        cache.put("b", new String[]{"2"});
+        cache.put("c", new String[]{"3"});
+        // b的键的第一个字节改成非法的UTF-8
+        RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+        file.seek(corruptOffset + 2);
+        file.write(0xFF);
+        file.close();
+
+        DecodeResultCache reopened = new DecodeResultCache(4, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES);
+        assertArrayEquals(new String[]{"1"}, reopened.get("a"));
+        assertNull(reopened.get("b"));
+        assertNull(reopened.get("c"));
+        assertEquals(corruptOffset, cacheFile.length());
+        // 截断之后继续使用磁盘缓存
+        reopened.put("d", new String[]{"4"});
+        assertArrayEquals(new String[]{"4"},
+                new DecodeResultCache(4, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES).get("d"));
+    }
+
+    @Test
+    public void disk_dropsResultsOfOtherDecoderVersion() {
+        DecodeResultCache cache = new DecodeResultCache(4, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES,
+                DecodeResultCache.DECODER_VERSION);
+        cache.put("blank", null);
+        assertEquals(1, cache.getDiskEntryCount());
+
+        DecodeResultCache upgraded = new DecodeResultCache(4, cacheFile, DecodeResultCache.DEFAULT_MAX_DISK_BYTES,
+                DecodeResultCache.DECODER_VERSION + 1);
+        assertNull(upgraded.get("blank"));
+        assertEquals(0, upgraded.getDiskEntryCount());
+    }
+
+    @Test
+    public void fileKey_changesWithContent() throws IOException {
+        File picture = new File(directory, "picture.jpg");
+        assertNull(DecodeResultCache.fileKey(picture, "picture"));
+        write(picture, 10);
+        String key = DecodeResultCache.fileKey(picture, "picture");
+        assertNotNull(key);
+        assertNotEquals(key, DecodeResultCache.fileKey(picture, "tiled"));
+        write(picture, 20);
+        assertNotEquals(key, DecodeResultCache.fileKey(picture, "picture"));
+    }
+
+    @Test
+    public void contentKey_dependsOnLuminanceAndSize() {
+        byte[] luminances = new byte[64 * 64 + 100];
+        for (int i = 0; i < luminances.length; ++i) {
+            luminances[i] = (byte) (i * 31);
+        }
+        String key = DecodeResultCache.contentKey(luminances, 64, 64, "bitmap");
+        // 缓冲区中超出图片的部分不影响
+        luminances[64 * 64 + 1] = 1;
+        assertEquals(key, DecodeResultCache.contentKey(luminances, 64, 64, "bitmap"));
+        assertNotEquals(key, DecodeResultCache.contentKey(luminances, 32, 128, "bitmap"));
+        luminances[64 * 64 - 1]++;
+        assertNotEquals(key, DecodeResultCache.contentKey(luminances, 64, 64, "bitmap"));
+        luminances[64 * 64 - 1]--;
+        luminances[5]++;
+        assertNotEquals(key, DecodeResultCache.contentKey(luminances, 64, 64, "bitmap"));
+    }
+
+    private static void write(File file, int length) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(new byte[length]);
+        } finally {
+            output.close();
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package indi.fanjh.qrscanlib;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 亮度数据缓冲区的复用
+ */
+public class LuminanceBufferPoolTest {
+    private static final String CONTENT = "https://github.com/dda135/QRScanner";
+
+    @Test
+    public void acquire_reusesSmallestFittingBuffer() {
+        LuminanceBufferPool pool = new LuminanceBufferPool(4, Long.MAX_VALUE);
+        byte[] small = pool.acquire(1000);
+        byte[] large = pool.acquire(LuminanceBufferPool.ALIGNMENT * 3);
+        assertEquals(LuminanceBufferPool.ALIGNMENT, small.length);
+        assertEquals(2, pool.getAllocatedCount());
+        pool.release(large);
+        pool.release(small);
+
+        assertSame(small, pool.acquire(500));
+        assertSame(large, pool.acquire(LuminanceBufferPool.ALIGNMENT + 1));
+        assertEquals(2, pool.getAllocatedCount());
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    public void release_dropsSmallestBeyondLimits() {
+        LuminanceBufferPool pool = new LuminanceBufferPool(2, LuminanceBufferPool.ALIGNMENT * 5L);
+        byte[] a = pool.acquire(LuminanceBufferPool.ALIGNMENT);
+        byte[] b = pool.acquire(LuminanceBufferPool.ALIGNMENT * 2);
+        byte[] c = pool.acquire(LuminanceBufferPool.ALIGNMENT * 3);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+        // 数量上限2，总大小上限5个单位，最小的a先被丢弃
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(LuminanceBufferPool.ALIGNMENT * 5L, pool.getPooledBytes());
+        assertSame(b, pool.acquire(1));
+        pool.release(pool.acquire(LuminanceBufferPool.ALIGNMENT * 6));
+        assertTrue(pool.getPooledBytes() <= LuminanceBufferPool.ALIGNMENT * 5L);
+    }
+
+    @Test
+    public void repeatedImages_allocateOnce() throws Exception {
+        LuminanceBufferPool pool = new LuminanceBufferPool(2, Long.MAX_VALUE);
+        PictureDecoder decoder = new PictureDecoder();
+        for (int i = 0; i < 20; ++i) {
+            int size = 180 + i % 5 * 10;
+            byte[] buffer = pool.acquire(size * size);
+            try {
+                // 复用的缓冲区比图片大，并且残留着上一张图片的内容
+                drawCode(buffer, size);
+                Result result = decoder.decode(
+                        new PlanarYUVLuminanceSource(buffer, size, size, 0, 0, size, size, false), null);
+                assertEquals(CONTENT, result.getText());
+            } finally {
+                pool.release(buffer);
+            }
+        }
+        assertEquals(1, pool.getAllocatedCount());
+    }
+
+    private static void drawCode(byte[] luminances, int size) throws Exception {
+        BitMatrix code = new QRCodeWriter().encode(CONTENT, BarcodeFormat.QR_CODE, size, size);
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                luminances[y * size + x] = (byte) (code.get(x, y) ? 30 : 230);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package indi.fanjh.qrscanlib;
+
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 静态图片的多尺度识别
+ */
+public class MultiScaleDecoderTest {
+    private static final String CONTENT = "https://github.com/dda135/QRScanner";
+
+    @Test
+    public void largeCode_decodesAtFirstLevel() throws Exception {
+        ArrayImageSource image = new ArrayImageSource(4000, 3000);
+        int side = image.drawCode(CONTENT, 1000, 800, 40);
+        Result result = new MultiScaleDecoder(new PictureDecoder()).decode(image);
+
+        assertEquals(CONTENT, result.getText());
+        assertEquals(1, image.loads.size());
+        assertEquals(Integer.valueOf(16), image.loads.get(0));
+        assertInside(result.getResultPoints(), 1000, 800, 1000 + side, 800 + side);
+    }
+
+    @Test
+    public void smallCode_recoveredByHigherResolution() throws Exception {
+        ArrayImageSource image = new ArrayImageSource(3000, 2000);
+        int side = image.drawCode(CONTENT, 2100, 1300, 4);
+        Result result = new MultiScaleDecoder(new PictureDecoder()).decode(image);
+
+        assertEquals(CONTENT, result.getText());
+        assertTrue(image.loads.size() > 1);
+        assertInside(result.getResultPoints(), 2100, 1300, 2100 + side, 1300 + side);
+    }
+
+    @Test
+    public void tinyCodeInHugeImage_recoveredByFullResolutionCrop() throws Exception {
+        ArrayImageSource image = new ArrayImageSource(8000, 6000);
+        // 模块12像素，逐级识别到长边1000时模块只有1.5像素，只能发现定位图案
+        int side = image.drawCode(CONTENT, 5200, 3100, 12);
+        Result result = new MultiScaleDecoder(new PictureDecoder()).decode(image);
+
+        assertEquals(CONTENT, result.getText());
+        assertEquals(Integer.valueOf(1), image.loads.get(image.loads.size() - 1));
+        assertTrue(image.getMaxLoadedPixels() <= MultiScaleDecoder.MAX_CROP_SIDE * MultiScaleDecoder.MAX_CROP_SIDE);
+        assertInside(result.getResultPoints(), 5200, 3100, 5200 + side, 3100 + side);
+    }
+
+    @Test
+    public void noCode_failsAfterBoundedLevels() throws Exception {
+        ArrayImageSource image = new ArrayImageSource(8000, 6000);
+        MultiScaleDecoder decoder = new MultiScaleDecoder(new PictureDecoder());
+        try {
+            decoder.decode(image);
+            fail();
+        } catch (NotFoundException e) {
+            // expected
+        }
+        assertTrue(decoder.isAllLoaded());
+        for (Integer sampleSize : image.loads) {
+            assertTrue(8000 / sampleSize <= MultiScaleDecoder.MAX_LEVEL_SIDE);
+        }
+    }
+
+    @Test
+    public void unreadableImage_notAllLoaded() throws Exception {
+        ArrayImageSource image = new ArrayImageSource(4000, 3000);
+        image.drawCode(CONTENT, 1000, 800, 40);
+        image.failLoads = true;
+        MultiScaleDecoder decoder = new MultiScaleDecoder(new PictureDecoder());
+        try {
+            decoder.decode(image);
+            fail();
+        } catch (NotFoundException e) {
+            // expected
+        }
+        assertFalse(decoder.isAllLoaded());
+    }
+
+    private static void assertInside(ResultPoint[] points, int left, int top, int right, int bottom) {
+        for (ResultPoint point : points) {
+            assertTrue(point.toString(), point.getX() >= left && point.getX() <= right
+                    && point.getY() >= top && point.getY() <= bottom);
+        }
+    }
+
+}
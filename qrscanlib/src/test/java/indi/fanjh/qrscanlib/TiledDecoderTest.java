@@ -0,0 +1,146 @@
+package indi.fanjh.qrscanlib;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 超大图片的分块识别
+ */
+public class TiledDecoderTest {
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void smallCodes_foundOnceEachWithBoundedTiles() throws Exception {
+        final ArrayImageSource image = new ArrayImageSource(6000, 4000);
+        // 跨越分块边界、位于重叠区域以及靠近右下角的二维码
+        image.drawCode("code-a", 700, 700, 4);
+        image.drawCode("code-b", 2400, 300, 4);
+        image.drawCode("code-c", 5700, 3700, 2);
+        // 内容相同但是位置不同的二维码都需要保留
+        image.drawCode("code-a", 3500, 2500, 4);
+        // 超过分块大小的二维码由采样后的整张图片识别
+        image.drawCode("code-large", 100, 1800, 50);
+        final AtomicInteger opened = new AtomicInteger();
+        List<Result> results = new TiledDecoder(new TiledDecoder.SourceFactory() {
+            @Override
+            public MultiScaleDecoder.ImageSource open() {
+                opened.incrementAndGet();
+                return image;
+            }
+        }, new PictureDecoder()).decode(pool, 4);
+
+        List<String> texts = new ArrayList<>();
+        for (Result result : results) {
+            texts.add(result.getText());
+        }
+        assertEquals(Arrays.asList("code-b", "code-a", "code-large", "code-a", "code-c"), texts);
+        assertNear(results.get(1), 700, 700);
+        assertNear(results.get(3), 3500, 2500);
+        assertTrue(image.getMaxLoadedPixels() <= TiledDecoder.TILE_SIDE * TiledDecoder.TILE_SIDE);
+        assertTrue(opened.get() <= 4);
+        // 8列5行再加上整张图片
+        assertEquals(41, image.loads.size());
+    }
+
+    @Test
+    public void twoCodesInOneTile_bothFound() throws Exception {
+        final ArrayImageSource image = new ArrayImageSource(6000, 4000);
+        // 两个二维码都只完整地落在左上角的一块中
+        image.drawCode("left", 100, 100, 4);
+        image.drawCode("right", 400, 120, 4);
+        List<Result> results = new TiledDecoder(new TiledDecoder.SourceFactory() {
+            @Override
+            public MultiScaleDecoder.ImageSource open() {
+                return image;
+            }
+        }, new PictureDecoder()).decode(pool, 4);
+
+        assertEquals(2, results.size());
+        assertEquals("left", results.get(0).getText());
+        assertEquals("right", results.get(1).getText());
+        assertNear(results.get(0), 100, 100);
+        assertNear(results.get(1), 400, 120);
+    }
+
+    @Test
+    public void smallImage_decodedAsSingleTile() throws Exception {
+        final ArrayImageSource image = new ArrayImageSource(800, 600);
+        image.drawCode("small", 100, 100, 5);
+        TiledDecoder decoder = new TiledDecoder(new TiledDecoder.SourceFactory() {
+            @Override
+            public MultiScaleDecoder.ImageSource open() {
+                return image;
+            }
+        }, new PictureDecoder());
+        List<Result> results = decoder.decode(pool, 4);
+
+        assertEquals(1, results.size());
+        assertEquals("small", results.get(0).getText());
+        assertEquals(Arrays.asList(1), image.loads);
+        assertTrue(decoder.isAllLoaded());
+
+        // 读取失败的时候结果不完整
+        image.failLoads = true;
+        decoder = new TiledDecoder(new TiledDecoder.SourceFactory() {
+            @Override
+            public MultiScaleDecoder.ImageSource open() {
+                return image;
+            }
+        }, new PictureDecoder());
+        assertEquals(0, decoder.decode(pool, 4).size());
+        assertFalse(decoder.isAllLoaded());
+    }
+
+    @Test
+    public void merge_dropsOverlappingDuplicates() {
+        List<Result> results = new ArrayList<>();
+        results.add(result("a", 100, 100, 200, 200));
+        results.add(result("a", 110, 105, 210, 205));
+        results.add(result("b", 120, 120, 180, 180));
+        results.add(result("a", 900, 100, 1000, 200));
+
+        List<Result> merged = TiledDecoder.merge(results);
+        assertEquals(3, merged.size());
+        assertEquals("a", merged.get(0).getText());
+        assertEquals("a", merged.get(1).getText());
+        assertEquals("b", merged.get(2).getText());
+    }
+
+    private static Result result(String text, float left, float top, float right, float bottom) {
+        return new Result(text, null, new ResultPoint[]{new ResultPoint(left, bottom),
+                new ResultPoint(left, top), new ResultPoint(right, top)}, null);
+    }
+
+    private static void assertNear(Result result, int left, int top) {
+        for (ResultPoint point : result.getResultPoints()) {
+            assertTrue(point.toString(), point.getX() >= left && point.getX() <= left + 200
+                    && point.getY() >= top && point.getY() <= top + 200);
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package indi.fanjh.qrscanlib.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 裁剪区域坐标换算测试
+ * 画面1280x720，竖屏视图720x1280，视图中的区域(100,200)-(300,600)
+ */
+public class CropTransformTest {
+    private static final int SENSOR_WIDTH = 1280;
+    private static final int SENSOR_HEIGHT = 720;
+
+    @Test
+    public void map_orientation0ScalesOnly() {
+        int[] out = new int[4];
+        assertTrue(CropTransform.map(100, 200, 300, 600, 640, 360, SENSOR_WIDTH, SENSOR_HEIGHT, 0, out));
+        // 超出画面的部分被截掉
+        assertArrayEquals(new int[]{200, 400, 600, SENSOR_HEIGHT}, out);
+    }
+
+    @Test
+    public void map_orientation90MatchesManualLandscapeConversion() {
+        int[] out = new int[4];
+        assertTrue(CropTransform.map(100, 200, 300, 600, 720, 1280, SENSOR_WIDTH, SENSOR_HEIGHT, 90, out));
+        // 原来需要调用者自己翻转：left=top，right=bottom，top=视图宽-right，bottom=视图宽-left
+        assertArrayEquals(new int[]{200, 420, 600, 620}, out);
+    }
+
+    @Test
+    public void map_orientation180MirrorsBothAxes() {
+        int[] out = new int[4];
+        assertTrue(CropTransform.map(100, 200, 300, 600, 1280, 720, SENSOR_WIDTH, SENSOR_HEIGHT, 180, out));
+        assertArrayEquals(new int[]{980, 120, 1180, 520}, out);
+    }
+
+    @Test
+    public void map_orientation270IsInverseOf90() {
+        int[] out = new int[4];
+        assertTrue(CropTransform.map(100, 200, 300, 600, 720, 1280, SENSOR_WIDTH, SENSOR_HEIGHT, 270, out));
+        assertArrayEquals(new int[]{680, 100, 1080, 300}, out);
+    }
+
+    @Test
+    public void map_fullViewCoversFullFrameForEveryOrientation() {
+        int[] out = new int[4];
+        int[] full = {0, 0, SENSOR_WIDTH, SENSOR_HEIGHT};
+        assertTrue(CropTransform.map(0, 0, 1280, 720, 1280, 720, SENSOR_WIDTH, SENSOR_HEIGHT, 0, out));
+        assertArrayEquals(full, out);
+        assertTrue(CropTransform.map(0, 0, 720, 1280, 720, 1280, SENSOR_WIDTH, SENSOR_HEIGHT, 90, out));
+        assertArrayEquals(full, out);
+        assertTrue(CropTransform.map(0, 0, 1280, 720, 1280, 720, SENSOR_WIDTH, SENSOR_HEIGHT, 180, out));
+        assertArrayEquals(full, out);
+        assertTrue(CropTransform.map(0, 0, 720, 1280, 720, 1280, SENSOR_WIDTH, SENSOR_HEIGHT, 270, out));
+        assertArrayEquals(full, out);
+    }
+
+    @Test
+    public void map_repeatedCallsDoNotDrift() {
+        int[] out = new int[4];
+        int[] first = new int[4];
+        CropTransform.map(101, 203, 307, 611, 720, 1280, SENSOR_WIDTH, SENSOR_HEIGHT, 90, first);
+        for (int i = 0; i < 10; ++i) {
+            CropTransform.map(101, 203, 307, 611, 720, 1280, SENSOR_WIDTH, SENSOR_HEIGHT, 90, out);
+            assertArrayEquals(first, out);
+        }
+    }
+
+    @Test
+    public void map_outsideFrameIsInvalid() {
+        int[] out = new int[4];
+        assertFalse(CropTransform.map(800, 0, 900, 100, 720, 1280, SENSOR_WIDTH, SENSOR_HEIGHT, 90, out));
+    }
+
+}
@@ -0,0 +1,199 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 复用的亮度数据源和二值化测试，以及整帧解码的内存分配
+ */
+public class FrameBinarizerTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final String CONTENT = "https://github.com/dda135/QRScanner";
+    private static final int HYBRID = DecodeMetrics.BINARIZER_HYBRID;
+
+    @Test
+    public void binarize_matchesHybridBinarizer() throws Exception {
+        byte[] frame = createFrame();
+        FrameBinarizer frameBinarizer = new FrameBinarizer();
+
+        BitMatrix expected = new HybridBinarizer(
+                new PlanarYUVLuminanceSource(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, false)).getBlackMatrix();
+        assertEquals(expected, frameBinarizer.binarize(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, HYBRID).getBlackMatrix());
+
+        expected = new HybridBinarizer(
+                new PlanarYUVLuminanceSource(frame, WIDTH, HEIGHT, 100, 60, 300, 300, false)).getBlackMatrix();
+        assertEquals(expected, frameBinarizer.binarize(frame, WIDTH, HEIGHT, 100, 60, 300, 300, HYBRID).getBlackMatrix());
+    }
+
+    @Test
+    public void binarize_globalHistogramMatchesZxing() throws Exception {
+        byte[] frame = createFrame();
+        FrameBinarizer frameBinarizer = new FrameBinarizer();
+
+        BitMatrix expected = new GlobalHistogramBinarizer(
+                new PlanarYUVLuminanceSource(frame, WIDTH, HEIGHT, 100, 60, 300, 300, false)).getBlackMatrix();
+        assertEquals(expected, frameBinarizer.binarize(frame, WIDTH, HEIGHT, 100, 60, 300, 300,
+                DecodeMetrics.BINARIZER_GLOBAL_HISTOGRAM).getBlackMatrix());
+    }
+
+    @Test
+    public void binarize_reusesBitmapForSameSize() throws Exception {
+        byte[] frame = createFrame();
+        FrameBinarizer frameBinarizer = new FrameBinarizer();
+        BinaryBitmap first = frameBinarizer.binarize(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, HYBRID);
+        BitMatrix matrix = first.getBlackMatrix();
+        BinaryBitmap second = frameBinarizer.binarize(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT, HYBRID);
+        assertSame(first, second);
+        assertSame(matrix, second.getBlackMatrix());
+
+        Result result = new QRCodeReader().decode(second);
+        assertNotNull(result);
+        assertEquals(CONTENT, result.getText());
+    }
+
+    @Test
+    public void binarize_steadyStateAllocatesNothing() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        byte[][] frames = {createFrame(), createFrame()};
+        FrameBinarizer frameBinarizer = new FrameBinarizer();
+        // 预热，让尺寸相关的对象都创建出来
+        for (int i = 0; i < 200; ++i) {
+            frameBinarizer.binarize(frames[i & 1], WIDTH, HEIGHT, 100, 60, 300, 300, HYBRID).getBlackMatrix();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100; ++i) {
+            frameBinarizer.binarize(frames[i & 1], WIDTH, HEIGHT, 100, 60, 300, 300, HYBRID).getBlackMatrix();
+        }
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+        // 只覆盖二值化，整帧解码见decodeFrame_steadyStateAllocationBounded
+        assertEquals(0, after - before);
+    }
+
+    @Test
+    public void decodeFrame_steadyStateAllocationBounded() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        ScanDispatcher dispatcher = new ScanDispatcher(null, new ScanCallback() {
+            @Override
+            public void decodeSuccess(Result rawResult, long timestampNanos) {
+            }
+
+            @Override
+            public void decodeBatchSuccess() {
+            }
+
+            @Override
+            public void framesSkipped(int reason, int skippedFrames, int totalFrames) {
+            }
+        }, 1, new ScanWorker.Factory() {
+            @Override
+            public ScanWorker create(ScanDispatcher dispatcher, int index) {
+                return new ScanWorker() {
+                    @Override
+                    public void decode(byte[] data, int width, int height, int stride, int[] scanRect,
+                                       long timestampNanos, long sequence, long generation) {
+                    }
+
+                    @Override
+                    public void quit() {
+                    }
+                };
+            }
+        });
+        FrameDecoder decoder = new FrameDecoder(dispatcher);
+        dispatcher.start();
+        // 两帧交替，画面一直在变化，每一帧都会经过降采样、二值化和定位，并且都识别失败
+        byte[][] frames = {createBlockFrame(1), createBlockFrame(2)};
+        long timestamp = 0;
+        for (int i = 0; i < 200; ++i) {
+            timestamp += 33333333L;
+            decoder.decode(frames[i & 1], WIDTH, HEIGHT, WIDTH, null, timestamp, 0);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100; ++i) {
+            timestamp += 33333333L;
+            decoder.decode(frames[i & 1], WIDTH, HEIGHT, WIDTH, null, timestamp, 0);
+        }
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+        // 亮度数据、二值化和定位器都已经复用，剩下的是ZXing定位过程内部每次创建的FinderPatternFinder等对象
+        // 每次定位几百字节，和画面尺寸无关，一帧的亮度数据就有300KB
+        assertTrue("allocated " + (after - before) / 100 + " bytes per frame", after - before < 100 * 1024);
+    }
+
+    /**
+     * 生成一帧随机黑白方块组成的NV21数据，没有二维码
+     */
+    private static byte[] createBlockFrame(int seed) {
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        Random random = new Random(seed);
+        for (int by = 0; by < HEIGHT; by += 8) {
+            for (int bx = 0; bx < WIDTH; bx += 8) {
+                byte value = (byte) (random.nextBoolean() ? 40 : 210);
+                for (int y = by; y < by + 8; ++y) {
+                    for (int x = bx; x < bx + 8; ++x) {
+                        frame[y * WIDTH + x] = value;
+                    }
+                }
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * 生成一帧带有二维码的NV21数据，背景带有光照渐变和噪声
+     */
+    private static byte[] createFrame() throws Exception {
+        BitMatrix code = new QRCodeWriter().encode(CONTENT, BarcodeFormat.QR_CODE, 240, 240);
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        Random random = new Random(WIDTH);
+        int left = 180;
+        int top = 100;
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int luminance = 150 + x * 80 / WIDTH + random.nextInt(16);
+                int codeX = x - left;
+                int codeY = y - top;
+                if (codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()
+                        && code.get(codeX, codeY)) {
+                    luminance = 30 + random.nextInt(16);
+                }
+                frame[y * WIDTH + x] = (byte) luminance;
+            }
+        }
+        return frame;
+    }
+
+}
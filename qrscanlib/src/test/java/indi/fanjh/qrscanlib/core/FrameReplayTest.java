@@ -0,0 +1,157 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 预览帧录制和回放
+ */
+public class FrameReplayTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int STRIDE = 672;
+    private static final String CONTENT = "https://github.com/dda135/QRScanner";
+    /**
+     * 30fps
+     */
+    private static final long INTERVAL_NANOS = 33333333L;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("frames", ".qrfr");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void record_storesLuminanceWithoutRowPadding() throws Exception {
+        byte[] frame = createFrame(true);
+        FrameRecorder recorder = FrameRecorder.open(file, 0, 2);
+        for (int i = 0; i < 3; ++i) {
+            recorder.record(frame, WIDTH, HEIGHT, STRIDE, 1000L + i * INTERVAL_NANOS, null);
+            // 等待写入，保证不会因为缓冲不足而丢帧
+            while (recorder.getRecordedCount() <= i) {
+                Thread.sleep(1);
+            }
+        }
+        recorder.close();
+        assertEquals(0, recorder.getDroppedCount());
+        assertEquals(FrameRecording.FILE_HEADER_SIZE + 3 * (FrameRecording.FRAME_HEADER_SIZE + WIDTH * HEIGHT),
+                file.length());
+
+        FrameRecording recording = FrameRecording.open(file);
+        assertEquals(3, recording.getFrameCount());
+        assertEquals(WIDTH, recording.getWidth(2));
+        assertEquals(HEIGHT, recording.getHeight(2));
+        assertEquals(1000L + 2 * INTERVAL_NANOS, recording.getTimestampNanos(2));
+        assertFalse(recording.getCrop(2, new int[4]));
+        byte[] plane = new byte[WIDTH * HEIGHT];
+        recording.readFrame(1, plane);
+        byte[] expectedRow = new byte[WIDTH];
+        byte[] actualRow = new byte[WIDTH];
+        for (int y = 0; y < HEIGHT; y += 37) {
+            System.arraycopy(frame, y * STRIDE, expectedRow, 0, WIDTH);
+            System.arraycopy(plane, y * WIDTH, actualRow, 0, WIDTH);
+            assertArrayEquals(expectedRow, actualRow);
+        }
+    }
+
+    @Test
+    public void open_ignoresTruncatedLastFrame() throws Exception {
+        writeRecording(createFrame(true), createFrame(true));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(randomAccessFile.length() - 100);
+        randomAccessFile.close();
+
+        assertEquals(1, FrameRecording.open(file).getFrameCount());
+    }
+
+    @Test
+    public void replay_maxSpeedDecodesEveryFrame() throws Exception {
+        byte[] code = createFrame(true);
+        byte[] blank = createFrame(false);
+        writeRecording(blank, code, code, blank, code);
+
+        FrameReplayer.Report report = new FrameReplayer(FrameRecording.open(file)).replay(FrameReplayer.SPEED_MAX);
+        System.out.println("FrameReplayTest: " + report);
+
+        assertEquals(5, report.getFrameCount());
+        assertEquals(0, report.getDroppedCount());
+        assertEquals(FrameReplayer.STATUS_NOT_FOUND, report.getStatus(0));
+        assertNull(report.getText(0));
+        assertEquals(FrameReplayer.STATUS_DECODED, report.getStatus(1));
+        assertEquals(CONTENT, report.getText(1));
+        // 识别成功之后重新开始，相同的画面再次识别
+        assertEquals(FrameReplayer.STATUS_DECODED, report.getStatus(2));
+        assertEquals(FrameReplayer.STATUS_DECODED, report.getStatus(4));
+        assertEquals(3, report.getDecodedCount());
+    }
+
+    @Test
+    public void replay_originalSpeedKeepsRecordedPace() throws Exception {
+        byte[] code = createFrame(true);
+        writeRecording(code, code, code, code);
+
+        FrameReplayer.Report report = new FrameReplayer(FrameRecording.open(file))
+                .replay(FrameReplayer.SPEED_ORIGINAL);
+
+        assertEquals(4, report.getFrameCount());
+        // 最后一帧总是会解码
+        assertEquals(FrameReplayer.STATUS_DECODED, report.getStatus(3));
+        assertEquals(4, report.getDecodedCount() + report.getDroppedCount());
+        assertTrue(report.getElapsedNanos() >= 3 * INTERVAL_NANOS);
+    }
+
+    private void writeRecording(byte[]... frames) throws Exception {
+        FrameRecorder recorder = FrameRecorder.open(file, 0, frames.length);
+        for (int i = 0; i < frames.length; ++i) {
+            recorder.record(frames[i], WIDTH, HEIGHT, STRIDE, i * INTERVAL_NANOS, null);
+        }
+        recorder.close();
+        assertEquals(frames.length, recorder.getRecordedCount());
+    }
+
+    /**
+     * 生成一帧亮度平面，行尾的填充字节为随机值
+     */
+    private static byte[] createFrame(boolean withCode) throws Exception {
+        BitMatrix code = new QRCodeWriter().encode(CONTENT, BarcodeFormat.QR_CODE, 240, 240);
+        byte[] frame = new byte[STRIDE * HEIGHT];
+        Random random = new Random(withCode ? WIDTH : HEIGHT);
+        random.nextBytes(frame);
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int luminance = 150 + x * 80 / WIDTH + random.nextInt(16);
+                int codeX = x - 180;
+                int codeY = y - 100;
+                if (withCode && codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()
+                        && code.get(codeX, codeY)) {
+                    luminance = 30 + random.nextInt(16);
+                }
+                frame[y * STRIDE + x] = (byte) luminance;
+            }
+        }
+        return frame;
+    }
+
+}
@@ -0,0 +1,128 @@
+package indi.fanjh.qrscanlib.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author agent
+ * @date 2026/10/18
+ * @description 内存中的跟踪者
+ * @note 记录每一段跟踪的名称、线程、嵌套深度和起止时间，用于在JVM中检查各个阶段是否成对出现以及耗时
+ * 每个线程有自己的栈，结束的一段加入共享的列表，记录的段数达到上限之后不再记录
+ **/
+final class MemoryTracer implements ScanTracer {
+    static final int DEFAULT_MAX_SPANS = 4096;
+
+    /**
+     * 一段跟踪
+     */
+    static final class Span {
+        final String name;
+        final String thread;
+        /**
+         * 嵌套深度，最外层为0
+         */
+        final int depth;
+        final long startNanos;
+        long endNanos;
+
+        Span(String name, String thread, int depth, long startNanos) {
+            this.name = name;
+            this.thread = thread;
+            this.depth = depth;
+            this.startNanos = startNanos;
+        }
+
+        long getDurationNanos() {
+            return endNanos - startNanos;
+        }
+    }
+
+    private final int maxSpans;
+    private final List<Span> spans = new ArrayList<>();
+    private final ThreadLocal<List<Span>> openSpans = new ThreadLocal<List<Span>>() {
+        @Override
+        protected List<Span> initialValue() {
+            return new ArrayList<>();
+        }
+    };
+    private int unbalancedCount;
+
+    MemoryTracer(int maxSpans) {
+        this.maxSpans = maxSpans;
+    }
+
+    @Override
+    public void beginSection(String name) {
+        List<Span> stack = openSpans.get();
+        stack.add(new Span(name, Thread.currentThread().getName(), stack.size(), System.nanoTime()));
+    }
+
+    @Override
+    public void endSection() {
+        long now = System.nanoTime();
+        List<Span> stack = openSpans.get();
+        if (stack.isEmpty()) {
+            synchronized (spans) {
+                unbalancedCount++;
+            }
+            return;
+        }
+        Span span = stack.remove(stack.size() - 1);
+        span.endNanos = now;
+        synchronized (spans) {
+            if (spans.size() < maxSpans) {
+                spans.add(span);
+            }
+        }
+    }
+
+    /**
+     * @return 已经结束的各段，按照结束的先后排列
+     */
+    List<Span> getSpans() {
+        synchronized (spans) {
+            return new ArrayList<>(spans);
+        }
+    }
+
+    /**
+     * @param name 名称
+     * @return 已经结束的该名称的段数
+     */
+    int count(String name) {
+        int count = 0;
+        synchronized (spans) {
+            for (Span span : spans) {
+                if (span.name.equals(name)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 没有对应的beginSection的endSection次数，正常情况下为0
+     */
+    int getUnbalancedCount() {
+        synchronized (spans) {
+            return unbalancedCount;
+        }
+    }
+
+    /**
+     * @return 当前线程中还没有结束的段数
+     */
+    int getOpenCount() {
+        return openSpans.get().size();
+    }
+
+    void clear() {
+        synchronized (spans) {
+            spans.clear();
+            unbalancedCount = 0;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package indi.fanjh.qrscanlib.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 连续扫描的结果去重测试
+ */
+public class RecentResultCacheTest {
+
+    @Test
+    public void offer_suppressesWithinCooldown() {
+        RecentResultCache cache = new RecentResultCache(8);
+        cache.setCooldownMillis(1000);
+
+        assertTrue(cache.offer("a", 0));
+        assertFalse(cache.offer("a", 500));
+        assertFalse(cache.offer("a", 999));
+        assertTrue(cache.offer("b", 999));
+    }
+
+    @Test
+    public void offer_reportsAgainAfterCooldown() {
+        RecentResultCache cache = new RecentResultCache(8);
+        cache.setCooldownMillis(1000);
+
+        assertTrue(cache.offer("a", 0));
+        assertTrue(cache.offer("b", 600));
+        assertTrue(cache.offer("a", 1000));
+        // 冷却时间从上一次通知开始计算，中间被压制的识别不会延长冷却
+        assertFalse(cache.offer("b", 1500));
+        assertTrue(cache.offer("b", 1600));
+    }
+
+    @Test
+    public void offer_boundedByCapacity() {
+        RecentResultCache cache = new RecentResultCache(4);
+        cache.setCooldownMillis(Long.MAX_VALUE);
+
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(cache.offer("code" + i, i));
+        }
+        assertEquals(4, cache.size());
+        // 最早的已经被丢弃，最近的仍然压制
+        assertTrue(cache.offer("code0", 100));
+        assertFalse(cache.offer("code99", 100));
+    }
+
+    @Test
+    public void clear_forgetsReportedResults() {
+        RecentResultCache cache = new RecentResultCache(8);
+
+        assertTrue(cache.offer("a", 0));
+        cache.clear();
+        assertTrue(cache.offer("a", 1));
+    }
+
+}
@@ -0,0 +1,165 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 不依赖相机的完整解码流程测试
+ * 帧来自{@link MemoryFrameSource}，解码线程使用{@link ThreadScanWorker}，测量从帧到达到得到结果的耗时
+ */
+public class ScanLoopTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    /**
+     * 行跨度大于宽度，和camera2的Y平面一样
+     */
+    private static final int STRIDE = 704;
+    private static final String CONTENT = "https://github.com/dda135/QRScanner";
+    private static final int SCANS = 30;
+
+    @Test
+    public void loop_decodesEveryScanAndReturnsAllFrames() throws Exception {
+        MemoryFrameSource source = new MemoryFrameSource(
+                Collections.singletonList(createFrame(true)), 0, 4);
+        final RestartingCallback callback = new RestartingCallback(source, SCANS);
+        ScanDispatcher dispatcher = new ScanDispatcher(source, callback, 2, ThreadScanWorker.FACTORY);
+        callback.dispatcher = dispatcher;
+
+        long start = System.nanoTime();
+        dispatcher.start();
+        source.setFrameConsumer(dispatcher);
+        source.start();
+        boolean finished = callback.done.await(30, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        stopAndDrain(source, dispatcher);
+
+        assertTrue("only " + callback.latencies.size() + " scans finished", finished);
+        for (String text : callback.texts) {
+            assertEquals(CONTENT, text);
+        }
+        assertEquals(0, source.getInFlightCount());
+
+        long[] latencies = callback.sortedLatencies();
+        System.out.println("ScanLoopTest: " + SCANS + " scans from " + source.getDeliveredCount() + " frames in "
+                + elapsed / 1000000 + "ms, " + SCANS * 1000000000L / elapsed + " scans/s"
+                + ", latency p50 " + latencies[latencies.length / 2] / 1000 + "us"
+                + ", max " + latencies[latencies.length - 1] / 1000 + "us");
+    }
+
+    @Test
+    public void loop_framesWithoutCodeAreAllReturned() throws Exception {
+        MemoryFrameSource source = new MemoryFrameSource(
+                Arrays.asList(createFrame(false), createFrame(false)), 0, 3);
+        RestartingCallback callback = new RestartingCallback(source, 1);
+        ScanDispatcher dispatcher = new ScanDispatcher(source, callback, 2, ThreadScanWorker.FACTORY);
+        callback.dispatcher = dispatcher;
+
+        dispatcher.start();
+        source.setFrameConsumer(dispatcher);
+        source.start();
+        while (source.getDeliveredCount() < 200) {
+            Thread.sleep(10);
+        }
+        stopAndDrain(source, dispatcher);
+
+        assertEquals(0, callback.latencies.size());
+        assertEquals(0, source.getInFlightCount());
+    }
+
+    /**
+     * 停止输出和分发，正在解码的帧完成之后也会归还，等待全部归还之后再终止解码线程
+     */
+    private static void stopAndDrain(MemoryFrameSource source, ScanDispatcher dispatcher) throws Exception {
+        source.setFrameConsumer(null);
+        source.stop();
+        dispatcher.stop();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (source.getInFlightCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        dispatcher.quit();
+    }
+
+    /**
+     * 单码模式下每次成功之后立即重新开始，相当于在回调中调用restartDecode
+     */
+    private static final class RestartingCallback implements ScanCallback {
+        final MemoryFrameSource source;
+        final CountDownLatch done;
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+        final List<String> texts = Collections.synchronizedList(new ArrayList<String>());
+        volatile ScanDispatcher dispatcher;
+
+        RestartingCallback(MemoryFrameSource source, int scans) {
+            this.source = source;
+            done = new CountDownLatch(scans);
+        }
+
+        @Override
+        public void decodeSuccess(Result rawResult, long timestampNanos) {
+            latencies.add(System.nanoTime() - timestampNanos);
+            texts.add(rawResult.getText());
+            done.countDown();
+            dispatcher.start();
+            source.setFrameConsumer(dispatcher);
+        }
+
+        @Override
+        public void decodeBatchSuccess() {
+        }
+
+        @Override
+        public void framesSkipped(int reason, int skippedFrames, int totalFrames) {
+        }
+
+        long[] sortedLatencies() {
+            long[] values = new long[latencies.size()];
+            for (int i = 0; i < values.length; ++i) {
+                values[i] = latencies.get(i);
+            }
+            Arrays.sort(values);
+            return values;
+        }
+    }
+
+    /**
+     * 生成一帧亮度平面，行尾的填充字节为随机值
+     */
+    private static MemoryFrameSource.Frame createFrame(boolean withCode) throws Exception {
+        BitMatrix code = new QRCodeWriter().encode(CONTENT, BarcodeFormat.QR_CODE, 240, 240);
+        byte[] frame = new byte[STRIDE * HEIGHT];
+        Random random = new Random(withCode ? WIDTH : HEIGHT);
+        random.nextBytes(frame);
+        int left = 180;
+        int top = 100;
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int luminance = 150 + x * 80 / WIDTH + random.nextInt(16);
+                int codeX = x - left;
+                int codeY = y - top;
+                if (withCode && codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()
+                        && code.get(codeX, codeY)) {
+                    luminance = 30 + random.nextInt(16);
+                }
+                frame[y * STRIDE + x] = (byte) luminance;
+            }
+        }
+        return new MemoryFrameSource.Frame(frame, WIDTH, HEIGHT, STRIDE);
+    }
+
+}
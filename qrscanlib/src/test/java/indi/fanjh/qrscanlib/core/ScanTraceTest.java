@@ -0,0 +1,144 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 解码流程中的跟踪
+ */
+public class ScanTraceTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final String CONTENT = "https://github.com/dda135/QRScanner";
+
+    private ScanDispatcher dispatcher;
+    private FrameDecoder decoder;
+    private MemoryTracer tracer;
+
+    @Before
+    public void setUp() {
+        dispatcher = new ScanDispatcher(null, new ScanCallback() {
+            @Override
+            public void decodeSuccess(Result rawResult, long timestampNanos) {
+            }
+
+            @Override
+            public void decodeBatchSuccess() {
+            }
+
+            @Override
+            public void framesSkipped(int reason, int skippedFrames, int totalFrames) {
+            }
+        }, 1, new ScanWorker.Factory() {
+            @Override
+            public ScanWorker create(ScanDispatcher dispatcher, int index) {
+                return new ScanWorker() {
+                    @Override
+                    public void decode(byte[] data, int width, int height, int stride, int[] scanRect,
+                                       long timestampNanos, long sequence, long generation) {
+                    }
+
+                    @Override
+                    public void quit() {
+                    }
+                };
+            }
+        });
+        decoder = new FrameDecoder(dispatcher);
+        tracer = new MemoryTracer(MemoryTracer.DEFAULT_MAX_SPANS);
+    }
+
+    @After
+    public void tearDown() {
+        ScanTrace.setTracer(null);
+    }
+
+    @Test
+    public void decode_tracesEachStageInsideFrame() throws Exception {
+        ScanTrace.setTracer(tracer);
+        dispatcher.start();
+        assertNotNull(decoder.decode(createFrame(true), WIDTH, HEIGHT, WIDTH, null, System.nanoTime(), 0));
+
+        assertEquals(0, tracer.getUnbalancedCount());
+        assertEquals(0, tracer.getOpenCount());
+        assertEquals(1, tracer.count(ScanTrace.DECODE_FRAME));
+        assertEquals(1, tracer.count(ScanTrace.PREPARE));
+        assertTrue(tracer.count(ScanTrace.BINARIZE) >= 1);
+        assertEquals(tracer.count(ScanTrace.BINARIZE), tracer.count(ScanTrace.DETECT));
+        assertTrue(tracer.count(ScanTrace.DECODE) >= 1);
+        List<MemoryTracer.Span> spans = tracer.getSpans();
+        MemoryTracer.Span frame = spans.get(spans.size() - 1);
+        assertEquals(ScanTrace.DECODE_FRAME, frame.name);
+        assertEquals(0, frame.depth);
+        for (MemoryTracer.Span span : spans) {
+            if (span != frame) {
+                assertEquals(1, span.depth);
+                assertTrue(span.startNanos >= frame.startNanos && span.endNanos <= frame.endNanos);
+            }
+        }
+    }
+
+    @Test
+    public void skippedFrame_closesPrepareSection() throws Exception {
+        ScanTrace.setTracer(tracer);
+        dispatcher.start();
+        byte[] blank = createFrame(false);
+        long now = System.nanoTime();
+        decoder.decode(blank, WIDTH, HEIGHT, WIDTH, null, now, 0);
+        int binarizeCount = tracer.count(ScanTrace.BINARIZE);
+        assertTrue(binarizeCount >= 1);
+        // 同样的画面紧接着再来一帧，会因为画面静止而跳过
+        decoder.decode(blank, WIDTH, HEIGHT, WIDTH, null, now + 33333333L, 0);
+
+        assertEquals(0, tracer.getUnbalancedCount());
+        assertEquals(0, tracer.getOpenCount());
+        assertEquals(2, tracer.count(ScanTrace.DECODE_FRAME));
+        assertEquals(2, tracer.count(ScanTrace.PREPARE));
+        assertEquals(binarizeCount, tracer.count(ScanTrace.BINARIZE));
+    }
+
+    @Test
+    public void multiCode_tracesDecodeMultiple() throws Exception {
+        ScanTrace.setTracer(tracer);
+        dispatcher.setMultiCodeEnabled(true);
+        dispatcher.start();
+        decoder.decode(createFrame(true), WIDTH, HEIGHT, WIDTH, null, System.nanoTime(), 0);
+
+        assertEquals(0, tracer.getUnbalancedCount());
+        assertEquals(1, tracer.count(ScanTrace.DECODE_MULTIPLE));
+        assertEquals(0, tracer.count(ScanTrace.DETECT));
+    }
+
+    private static byte[] createFrame(boolean withCode) throws Exception {
+        BitMatrix code = new QRCodeWriter().encode(CONTENT, BarcodeFormat.QR_CODE, 240, 240);
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        Random random = new Random(WIDTH);
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int luminance = 150 + x * 80 / WIDTH + random.nextInt(16);
+                int codeX = x - 200;
+                int codeY = y - 120;
+                if (withCode && codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()
+                        && code.get(codeX, codeY)) {
+                    luminance = 30 + random.nextInt(16);
+                }
+                frame[y * WIDTH + x] = (byte) luminance;
+            }
+        }
+        return frame;
+    }
+
+}
@@ -0,0 +1,195 @@
+package indi.fanjh.qrscanlib.core;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 耗时分布和各阶段的耗时统计
+ */
+public class StageMetricsTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final String CONTENT = "https://github.com/dda135/QRScanner";
+    private static final long INTERVAL_NANOS = 33333333L;
+
+    private ScanDispatcher dispatcher;
+    private FrameDecoder decoder;
+
+    @Before
+    public void setUp() {
+        dispatcher = new ScanDispatcher(null, new ScanCallback() {
+            @Override
+            public void decodeSuccess(Result rawResult, long timestampNanos) {
+            }
+
+            @Override
+            public void decodeBatchSuccess() {
+            }
+
+            @Override
+            public void framesSkipped(int reason, int skippedFrames, int totalFrames) {
+            }
+        }, 1, new ScanWorker.Factory() {
+            @Override
+            public ScanWorker create(ScanDispatcher dispatcher, int index) {
+                return new ScanWorker() {
+                    @Override
+                    public void decode(byte[] data, int width, int height, int stride, int[] scanRect,
+                                       long timestampNanos, long sequence, long generation) {
+                    }
+
+                    @Override
+                    public void quit() {
+                    }
+                };
+            }
+        });
+        decoder = new FrameDecoder(dispatcher);
+    }
+
+    @Test
+    public void histogram_percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; ++i) {
+            histogram.record(i * 10000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(10000L, histogram.getMinNanos());
+        assertEquals(10000000L, histogram.getMaxNanos());
+        assertEquals(5005000L, histogram.getMeanNanos());
+        assertWithin(5000000L, histogram.getPercentileNanos(50));
+        assertWithin(9900000L, histogram.getPercentileNanos(99));
+        assertEquals(10000000L, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void histogram_bucketsAreContiguous() {
+        for (int bucket = 1; bucket < LatencyHistogram.BUCKET_COUNT; ++bucket) {
+            long lower = LatencyHistogram.lowerBoundMicros(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(lower));
+            assertEquals(bucket - 1, LatencyHistogram.bucketOf(lower - 1));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    public void disabled_recordsNoStages() throws Exception {
+        byte[] frame = createFrame();
+        dispatcher.start();
+        assertNotNull(decoder.decode(frame, WIDTH, HEIGHT, WIDTH, null, System.nanoTime(), 0));
+
+        DecodeMetrics metrics = new DecodeMetrics();
+        dispatcher.snapshotMetrics(metrics);
+        for (int stage = 0; stage < DecodeMetrics.STAGE_COUNT; ++stage) {
+            assertEquals(0, metrics.getStageHistogram(stage).getCount());
+        }
+    }
+
+    @Test
+    public void enabled_recordsEachDecodeStage() throws Exception {
+        byte[] frame = createFrame();
+        dispatcher.setStageMetricsEnabled(true);
+        dispatcher.start();
+        long arrival = System.nanoTime();
+        Result result = decoder.decode(frame, WIDTH, HEIGHT, WIDTH, null, arrival, 0);
+        assertNotNull(result);
+        assertEquals(CONTENT, result.getText());
+        assertEquals(4, result.getResultPoints().length);
+
+        DecodeMetrics metrics = new DecodeMetrics();
+        dispatcher.snapshotMetrics(metrics);
+        assertEquals(1, metrics.getStageHistogram(DecodeMetrics.STAGE_QUEUE_WAIT).getCount());
+        assertEquals(1, metrics.getStageHistogram(DecodeMetrics.STAGE_LUMINANCE).getCount());
+        int binarizeCount = metrics.getStageHistogram(DecodeMetrics.STAGE_BINARIZE).getCount();
+        assertTrue(binarizeCount >= 1);
+        assertEquals(binarizeCount, metrics.getStageHistogram(DecodeMetrics.STAGE_DETECT).getCount());
+        assertTrue(metrics.getStageHistogram(DecodeMetrics.STAGE_DECODE).getCount() >= 1);
+        assertEquals(0, metrics.getStageHistogram(DecodeMetrics.STAGE_FRAME_INTERVAL).getCount());
+
+        // 重新开始之后从零统计
+        dispatcher.start();
+        dispatcher.snapshotMetrics(metrics);
+        assertEquals(0, metrics.getStageHistogram(DecodeMetrics.STAGE_QUEUE_WAIT).getCount());
+    }
+
+    @Test
+    public void frames_countIntervalsAndDrops() {
+        final int[] released = new int[1];
+        ScanDispatcher busyDispatcher = new ScanDispatcher(new FrameSource() {
+            @Override
+            public void setFrameConsumer(FrameConsumer consumer) {
+            }
+
+            @Override
+            public void releaseFrame(byte[] data) {
+                released[0]++;
+            }
+        }, null, 1, new ScanWorker.Factory() {
+            @Override
+            public ScanWorker create(ScanDispatcher dispatcher, int index) {
+                // 一直不完成，后面的帧只能等待或者被替换
+                return new ScanWorker() {
+                    @Override
+                    public void decode(byte[] data, int width, int height, int stride, int[] scanRect,
+                                       long timestampNanos, long sequence, long generation) {
+                    }
+
+                    @Override
+                    public void quit() {
+                    }
+                };
+            }
+        });
+        busyDispatcher.setStageMetricsEnabled(true);
+        busyDispatcher.start();
+        for (int i = 0; i < 5; ++i) {
+            busyDispatcher.onFrame(new byte[WIDTH * HEIGHT], WIDTH, HEIGHT, WIDTH, null, 1000L + i * INTERVAL_NANOS);
+        }
+
+        DecodeMetrics metrics = new DecodeMetrics();
+        busyDispatcher.snapshotMetrics(metrics);
+        assertEquals(5, metrics.getFrameCount());
+        // 第一帧在解码，第二帧等待，之后每一帧替换掉等待的帧
+        assertEquals(3, metrics.getDroppedFrameCount());
+        assertEquals(3, released[0]);
+        LatencyHistogram interval = metrics.getStageHistogram(DecodeMetrics.STAGE_FRAME_INTERVAL);
+        assertEquals(4, interval.getCount());
+        assertWithin(INTERVAL_NANOS, interval.getPercentileNanos(50));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 8);
+    }
+
+    private static byte[] createFrame() throws Exception {
+        BitMatrix code = new QRCodeWriter().encode(CONTENT, BarcodeFormat.QR_CODE, 240, 240);
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        Random random = new Random(WIDTH);
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int luminance = 150 + x * 80 / WIDTH + random.nextInt(16);
+                int codeX = x - 200;
+                int codeY = y - 120;
+                if (codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()
+                        && code.get(codeX, codeY)) {
+                    luminance = 30 + random.nextInt(16);
+                }
+                frame[y * WIDTH + x] = (byte) luminance;
+            }
+        }
+        return frame;
+    }
+
+}